@@ -0,0 +1,83 @@
+package net.e175.klaus.formatter;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import net.e175.klaus.solarpos.util.TimeFormats;
+import org.openjdk.jmh.annotations.*;
+
+/** Each {@link StreamingFormatter} per row of a typical position result, written to a byte sink. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatterBenchmark {
+  private static final int ROWS = 1024;
+
+  record Row(
+      double latitude,
+      double longitude,
+      ZonedDateTime dateTime,
+      double deltaT,
+      double azimuth,
+      double zenith) {}
+
+  @Param({"human", "csv", "json", "binary"})
+  public String format;
+
+  private StreamingFormatter<Row> formatter;
+  private List<FieldDescriptor<Row>> fields;
+  private List<String> fieldNames;
+  private Row[] rows;
+  private ByteSink sink;
+
+  @Setup
+  public void setup() {
+    formatter =
+        switch (format) {
+          case "human" -> new SimpleTextFormatter<>(SerializerRegistry.forText(), Map.of());
+          case "csv" -> new CsvFormatter<>(SerializerRegistry.forCsv(), true);
+          case "json" -> new JsonFormatter<>(SerializerRegistry.forJson(), "\n");
+          case "binary" -> new BinaryFormatter<>();
+          default -> throw new IllegalArgumentException(format);
+        };
+    fields =
+        List.of(
+            FieldDescriptor.decimal("latitude", Row::latitude, 5),
+            FieldDescriptor.decimal("longitude", Row::longitude, 5),
+            FieldDescriptor.dateTime(
+                "dateTime", Row::dateTime, TimeFormats.OUTPUT_DATE_TIME_ISO_PATTERN),
+            FieldDescriptor.decimal("deltaT", Row::deltaT, 3),
+            FieldDescriptor.decimal("azimuth", Row::azimuth, 5),
+            FieldDescriptor.decimal("zenith", Row::zenith, 5));
+    fieldNames = fields.stream().map(FieldDescriptor::name).toList();
+
+    var start = ZonedDateTime.parse("2024-06-21T00:00:00+02:00");
+    rows =
+        IntStream.range(0, ROWS)
+            .mapToObj(
+                i ->
+                    new Row(
+                        52.0 + i * 0.01,
+                        13.4,
+                        start.plusMinutes(i),
+                        69.184,
+                        i * 0.35 % 360.0,
+                        20.0 + i * 0.07 % 70.0))
+            .toArray(Row[]::new);
+    sink = ByteSink.of((bytes, length) -> {}, ByteSink.DEFAULT_CAPACITY);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void formatRow() throws IOException {
+    formatter.format(fields, fieldNames, Arrays.stream(rows), sink);
+    sink.flush();
+  }
+}
@@ -0,0 +1,13 @@
+package net.e175.klaus.solarpos;
+
+/** Builds subcommands the way the CLI does, with their parent options and inputs in place. */
+final class Commands {
+  private Commands() {}
+
+  /** Parses {@code args} like the command line and returns the matched subcommand object. */
+  static <T> T parse(String... args) {
+    var commandLine = Main.createCommandLine();
+    var parseResult = commandLine.parseArgs(Main.preprocessCoordinateFileArgs(args));
+    return parseResult.subcommand().commandSpec().commandLine().getCommand();
+  }
+}
@@ -0,0 +1,64 @@
+package net.e175.klaus.solarpos;
+
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import net.e175.klaus.solarpositioning.Grena3;
+import net.e175.klaus.solarpositioning.SPA;
+import net.e175.klaus.solarpositioning.SolarPosition;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Single-point SPA and Grena3 against the library, and the shared time-dependent parts path of the
+ * {@code position} command over a grid of {@code side} x {@code side} points per timestamp.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PositionBenchmark {
+  @Param({"1", "10", "100"})
+  public int side;
+
+  double latitude = 52.0;
+  double longitude = 13.4;
+  double elevation = 100.0;
+  double deltaT = 69.0;
+  ZonedDateTime dateTime = ZonedDateTime.parse("2024-06-21T12:00:00+02:00");
+
+  private PositionCommand command;
+  private GridGeometry grid;
+
+  @Setup
+  public void setup() {
+    var range = side == 1 ? "0" : "0:" + (side - 1) * 0.5 + ":0.5";
+    command = Commands.parse("--deltat=69", range, range, dateTime.toString(), "position");
+    grid = command.parent.getGridGeometry(command.elevation);
+  }
+
+  @Benchmark
+  public SolarPosition spaSinglePoint() {
+    return SPA.calculateSolarPosition(
+        dateTime, latitude, longitude, elevation, deltaT, 1013.0, 15.0);
+  }
+
+  @Benchmark
+  public SolarPosition grena3SinglePoint() {
+    return Grena3.calculateSolarPosition(dateTime, latitude, longitude, deltaT, 1013.0, 15.0);
+  }
+
+  @Benchmark
+  public SolarPosition spaTimeContextSinglePoint() {
+    return new TimeContext(PositionCommand.Algorithm.SPA, dateTime, deltaT)
+        .position(latitude, longitude, elevation, 1013.0, 15.0);
+  }
+
+  @Benchmark
+  public void spaGridPerTimestamp(Blackhole blackhole) {
+    command
+        .createOptimizedSpaResultsForDateTime(dateTime, grid)
+        .forEach(row -> blackhole.consume(row.get()));
+  }
+}
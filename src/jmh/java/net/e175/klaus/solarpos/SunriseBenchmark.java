@@ -0,0 +1,48 @@
+package net.e175.klaus.solarpos;
+
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import net.e175.klaus.solarpositioning.SPA;
+import org.openjdk.jmh.annotations.*;
+
+/** {@link SunriseCommand#calculateSunriseData} for one coordinate and day. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SunriseBenchmark {
+  @Param({"false", "true"})
+  public boolean twilight;
+
+  /** Mid-latitudes, and the polar day where every horizon is a special case. */
+  @Param({"52.0", "78.2"})
+  public double latitude;
+
+  ZonedDateTime dateTime = ZonedDateTime.parse("2024-06-21T00:00:00+02:00");
+
+  private SunriseCommand command;
+  private CoordinatePair coordinates;
+  private SPA.Horizon[] horizons;
+  private SunriseDay day;
+
+  @Setup
+  public void setup() {
+    command = Commands.parse("--deltat=69", "0", "0", "2024-06-21", "sunrise");
+    coordinates = new CoordinatePair(latitude, 13.4);
+    horizons = twilight ? SunriseCommand.TWILIGHT_HORIZONS : SunriseCommand.BASIC_HORIZONS;
+    day = new SunriseDay(dateTime, 69);
+  }
+
+  @Benchmark
+  public SunriseCommand.SunriseData calculateSunriseData() {
+    return command.calculateSunriseData(dateTime, coordinates, horizons);
+  }
+
+  /** The same with the terms of the day already computed, as in a sweep with many coordinates. */
+  @Benchmark
+  public SunriseCommand.SunriseData calculateSunriseDataSharedDay() {
+    return command.calculateSunriseData(day, coordinates, horizons);
+  }
+}
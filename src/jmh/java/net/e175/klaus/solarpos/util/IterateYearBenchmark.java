@@ -0,0 +1,56 @@
+package net.e175.klaus.solarpos.util;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * {@link DateTimeIterator#iterate} over a year in 1-second steps, against the {@link
+ * Stream#iterate} it replaced, consumed sequentially and in parallel. Each step still creates a
+ * {@link ZonedDateTime}, which costs about as much as the old iteration did in total.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class IterateYearBenchmark {
+  private static final Year YEAR = Year.of(2024);
+  private static final Duration STEP = Duration.ofSeconds(1);
+
+  @Param({"Europe/Berlin", "UTC"})
+  public String timezone;
+
+  @Param({"false", "true"})
+  public boolean parallel;
+
+  private ZoneId zoneId;
+
+  @Setup
+  public void setup() {
+    zoneId = ZoneId.of(timezone);
+  }
+
+  @Benchmark
+  public long iterate() {
+    return sum(DateTimeIterator.iterate(YEAR, Optional.of(zoneId), STEP));
+  }
+
+  @Benchmark
+  public long streamIterate() {
+    var start = ZonedDateTime.of(LocalDate.of(YEAR.getValue(), 1, 1), LocalTime.MIDNIGHT, zoneId);
+    return sum(Stream.iterate(start, i -> i.getYear() == YEAR.getValue(), i -> i.plus(STEP)));
+  }
+
+  private long sum(Stream<ZonedDateTime> dateTimes) {
+    return (parallel ? dateTimes.parallel() : dateTimes).mapToLong(ZonedDateTime::getHour).sum();
+  }
+}
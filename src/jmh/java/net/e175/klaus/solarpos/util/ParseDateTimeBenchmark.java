@@ -0,0 +1,48 @@
+package net.e175.klaus.solarpos.util;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * {@link DateTimeIterator#parseDateTime} per input shape, covering the {@link IsoDateTimeScanner}
+ * fast path and the formatter fallback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseDateTimeBenchmark {
+  @Param({
+    "2024-06-21",
+    "2024-06-21T12:30",
+    "2024-06-21T12:30:45",
+    "2024-06-21 12:30:45",
+    "2024-06-21T12:30:45.123",
+    "2024-06-21T12:30:45Z",
+    "2024-06-21T12:30:45+02:00",
+    "2024-06-21T12:30:45+02:00[Europe/Berlin]",
+    "12:30:45"
+  })
+  public String input;
+
+  @Param({"", "Europe/Berlin"})
+  public String timezone;
+
+  private Optional<ZoneId> zoneId;
+
+  @Setup
+  public void setup() {
+    zoneId = timezone.isEmpty() ? Optional.empty() : Optional.of(ZoneId.of(timezone));
+  }
+
+  @Benchmark
+  public ZonedDateTime parseDateTime() {
+    return DateTimeIterator.parseDateTime(
+        input, zoneId, DateTimeIterator.TimePrecision.DATE_SUFFICIENT);
+  }
+}
@@ -0,0 +1,169 @@
+package net.e175.klaus.formatter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes rows as fixed-width little-endian records, so that results can be memory-mapped instead of
+ * parsed. A header describes the columns with numpy dtype codes:
+ *
+ * <pre>
+ * "SOLROWS1", uint32 header size, uint32 row size,
+ * "name:dtype,name:dtype,...\n" in UTF-8, padded with spaces to a multiple of 8 bytes
+ * </pre>
+ *
+ * Decimals are {@code <f8} and NaN if missing, integers {@code <i8}, timestamps {@code <M8[ms]} in
+ * milliseconds since the epoch and {@link Long#MIN_VALUE} (numpy's NaT) if missing. Other values
+ * are written as {@code S16}, UTF-8 padded with NUL bytes. Needs a {@link ByteSink} to write to.
+ */
+public final class BinaryFormatter<T> implements BlockFormatter<T> {
+  static final int TEXT_WIDTH = 16;
+  private static final byte[] MAGIC = "SOLROWS1".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] PADDING = new byte[TEXT_WIDTH];
+  private static final byte[] EMPTY = new byte[0];
+
+  private enum Column {
+    DECIMAL("<f8", Double.BYTES),
+    INTEGER("<i8", Long.BYTES),
+    TIMESTAMP("<M8[ms]", Long.BYTES),
+    TEXT("S" + TEXT_WIDTH, TEXT_WIDTH);
+
+    final String dtype;
+    final int size;
+
+    Column(String dtype, int size) {
+      this.dtype = dtype;
+      this.size = size;
+    }
+
+    static Column of(FieldDescriptor<?> field) {
+      if (field.doubleExtractor() != null) return DECIMAL;
+      if (field.longExtractor() != null) return INTEGER;
+      if (field.hints().get("type") == ZonedDateTime.class) return TIMESTAMP;
+      if (field.hints().containsKey("precision")) return DECIMAL;
+      return TEXT;
+    }
+  }
+
+  @Override
+  public void format(
+      List<FieldDescriptor<T>> allFields, List<String> subset, Stream<T> items, Appendable out)
+      throws IOException {
+    validateInputs(allFields, subset, items, out);
+    var sink = byteSink(out);
+
+    var row = startRows(allFields, subset, sink);
+    var counter = new RowsComputedEvent.Counter(sink);
+    try {
+      items.forEachOrdered(
+          item -> {
+            try {
+              row.write(item, false, sink);
+              counter.row();
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    counter.end();
+  }
+
+  /** Writes the header, also for no fields, and returns the writer for the rows. */
+  @Override
+  public RowWriter<T> startRows(
+      List<FieldDescriptor<T>> allFields, List<String> subset, Appendable out) throws IOException {
+    var fields = filterFields(allFields, subset);
+    writeHeader(fields, byteSink(out));
+    return compileRow(fields);
+  }
+
+  private static ByteSink byteSink(Appendable out) {
+    if (out instanceof ByteSink sink) {
+      return sink;
+    }
+    throw new IllegalArgumentException("Binary output needs a byte sink, not a character stream");
+  }
+
+  private void writeHeader(List<FieldDescriptor<T>> fields, ByteSink out) throws IOException {
+    var columns =
+        fields.stream()
+                .map(field -> field.name() + ":" + Column.of(field).dtype)
+                .collect(Collectors.joining(","))
+            + "\n";
+    var text = columns.getBytes(StandardCharsets.UTF_8);
+    int headerSize = (MAGIC.length + 2 * Integer.BYTES + text.length + 7) & ~7;
+    int rowSize = fields.stream().mapToInt(field -> Column.of(field).size).sum();
+
+    var header =
+        ByteBuffer.allocate(headerSize)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .put(MAGIC)
+            .putInt(headerSize)
+            .putInt(rowSize)
+            .put(text);
+    while (header.hasRemaining()) {
+      header.put((byte) ' ');
+    }
+    out.write(header.array(), 0, headerSize);
+  }
+
+  private RowWriter<T> compileRow(List<FieldDescriptor<T>> fields) {
+    FieldWriter<T>[] row = FieldWriter.newArray(fields.size());
+    for (int i = 0; i < row.length; i++) {
+      row[i] = compileField(fields.get(i));
+    }
+    return (item, first, out) -> {
+      for (var field : row) {
+        field.write(item, out);
+      }
+    };
+  }
+
+  private FieldWriter<T> compileField(FieldDescriptor<T> field) {
+    var extractor = field.extractor();
+    return switch (Column.of(field)) {
+      case DECIMAL -> {
+        var doubleExtractor = field.doubleExtractor();
+        if (doubleExtractor != null) {
+          yield (item, out) -> ((ByteSink) out).writeDoubleLE(doubleExtractor.applyAsDouble(item));
+        }
+        yield (item, out) ->
+            ((ByteSink) out)
+                .writeDoubleLE(
+                    extractor.apply(item) instanceof Number n ? n.doubleValue() : Double.NaN);
+      }
+      case INTEGER -> {
+        var longExtractor = field.longExtractor();
+        yield (item, out) -> ((ByteSink) out).writeLongLE(longExtractor.applyAsLong(item));
+      }
+      case TIMESTAMP ->
+          (item, out) ->
+              ((ByteSink) out)
+                  .writeLongLE(
+                      extractor.apply(item) instanceof ZonedDateTime zdt
+                          ? zdt.toInstant().toEpochMilli()
+                          : Long.MIN_VALUE);
+      case TEXT ->
+          (item, out) -> {
+            var value = extractor.apply(item);
+            var bytes = value == null ? EMPTY : value.toString().getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > TEXT_WIDTH) {
+              throw new IllegalArgumentException(
+                  "Value of " + field.name() + " too long for binary output: " + value);
+            }
+            var sink = (ByteSink) out;
+            sink.write(bytes, 0, bytes.length);
+            sink.write(PADDING, 0, TEXT_WIDTH - bytes.length);
+          };
+    };
+  }
+}
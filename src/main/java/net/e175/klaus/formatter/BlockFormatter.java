@@ -0,0 +1,73 @@
+package net.e175.klaus.formatter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A formatter whose rows compile into a {@link RowWriter}, so that {@link BlockPipeline} can
+ * compute and format blocks of them on worker threads. Formatters only write what precedes the rows
+ * and compile the rows in {@link #startRows}.
+ */
+interface BlockFormatter<T> extends StreamingFormatter<T> {
+
+  /**
+   * Writes whatever precedes the rows, such as a header, to {@code out} and returns the writer for
+   * the rows, or null if no fields are selected and nothing is written at all.
+   */
+  RowWriter<T> startRows(List<FieldDescriptor<T>> allFields, List<String> subset, Appendable out)
+      throws IOException;
+
+  @Override
+  default <S> void formatParallel(
+      List<FieldDescriptor<T>> allFields,
+      List<String> subset,
+      Stream<S> sources,
+      Function<? super S, ? extends T> compute,
+      Appendable out,
+      int parallelism,
+      boolean ordered)
+      throws IOException {
+    validateInputs(allFields, subset, sources, out);
+    var pipeline = pipeline(allFields, subset, compute, out, parallelism, ordered);
+    if (pipeline != null) {
+      pipeline.run(sources, out);
+    }
+  }
+
+  @Override
+  default <S> void formatParallelChunks(
+      List<FieldDescriptor<T>> allFields,
+      List<String> subset,
+      Stream<? extends Stream<S>> chunks,
+      Function<? super S, ? extends T> compute,
+      Appendable out,
+      int parallelism,
+      boolean ordered)
+      throws IOException {
+    validateInputs(allFields, subset, chunks, out);
+    var pipeline = pipeline(allFields, subset, compute, out, parallelism, ordered);
+    if (pipeline != null) {
+      pipeline.runChunks(chunks, out);
+    }
+  }
+
+  /** Starts the rows and returns a pipeline for them, or null if no fields are selected. */
+  private <S> BlockPipeline<S, T> pipeline(
+      List<FieldDescriptor<T>> allFields,
+      List<String> subset,
+      Function<? super S, ? extends T> compute,
+      Appendable out,
+      int parallelism,
+      boolean ordered)
+      throws IOException {
+    Objects.requireNonNull(compute, "Compute function must not be null");
+
+    var rows = startRows(allFields, subset, out);
+    if (rows == null) return null;
+
+    return new BlockPipeline<>(compute, rows, parallelism, BlockPipeline.BLOCK_SIZE, ordered);
+  }
+}
@@ -0,0 +1,307 @@
+package net.e175.klaus.formatter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Computes and formats rows on worker threads, writing finished blocks of rows to the output.
+ *
+ * <p>Work comes either as a stream of sources, which the calling thread groups into blocks of
+ * {@link #BLOCK_SIZE}, or as a stream of chunks, such as byte ranges of an input file, which
+ * workers also read themselves. Each block is formatted into a private byte buffer. When {@code
+ * ordered}, the calling thread writes blocks strictly in submission order, otherwise as soon as
+ * they are finished. At most {@code 2 * parallelism} blocks are in flight, so memory use does not
+ * depend on the size of the input.
+ */
+final class BlockPipeline<S, T> {
+  static final int BLOCK_SIZE = 2048;
+
+  private static final int INITIAL_BLOCK_CAPACITY = 1 << 16;
+  private static final int SINK_CAPACITY = 1 << 13;
+  private static final int HEAD_SINK_CAPACITY = 1 << 10;
+  private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+  private final Function<? super S, ? extends T> compute;
+  private final RowWriter<T> rows;
+  private final int parallelism;
+  private final int blockSize;
+  private final boolean ordered;
+  private final ConcurrentLinkedQueue<Block> freeBlocks = new ConcurrentLinkedQueue<>();
+
+  BlockPipeline(
+      Function<? super S, ? extends T> compute,
+      RowWriter<T> rows,
+      int parallelism,
+      int blockSize,
+      boolean ordered) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("blockSize must be at least 1");
+    }
+    this.compute = Objects.requireNonNull(compute, "Compute function must not be null");
+    this.rows = Objects.requireNonNull(rows, "Row writer must not be null");
+    this.parallelism = parallelism;
+    this.blockSize = blockSize;
+    this.ordered = ordered;
+  }
+
+  /**
+   * Formats all {@code sources} to {@code out} and returns the number of rows written. Sources are
+   * pushed through {@link Stream#forEachOrdered} rather than pulled through an iterator, which
+   * would buffer the whole inner stream of each {@code flatMap} step.
+   */
+  long run(Stream<? extends S> sources, Appendable out) throws IOException {
+    try (var run = new Run(out)) {
+      var batch = new Object[blockSize];
+      int[] size = {0};
+      sources
+          .sequential()
+          .forEachOrdered(
+              source -> {
+                batch[size[0]++] = source;
+                if (size[0] == blockSize) {
+                  run.submitUnchecked(batch(batch, blockSize));
+                  size[0] = 0;
+                }
+              });
+      if (size[0] > 0) {
+        run.submit(batch(batch, size[0]));
+      }
+      return run.finish();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Formats the sources of all {@code chunks} to {@code out}, one block per chunk, and returns the
+   * number of rows written. Chunks are read on the worker threads and closed there.
+   */
+  long runChunks(Stream<? extends Stream<? extends S>> chunks, Appendable out) throws IOException {
+    try (var run = new Run(out)) {
+      chunks.sequential().forEachOrdered(run::submitUnchecked);
+      return run.finish();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Stream<S> batch(Object[] batch, int size) {
+    return Arrays.stream((S[]) Arrays.copyOf(batch, size));
+  }
+
+  /**
+   * Starts the workers of one run, shut down when it ends. Runs do not share a pool: the server
+   * commands answer requests concurrently, and with a shared pool one request's blocks would wait
+   * behind another's. Concurrent parallel requests therefore each start {@code parallelism}
+   * threads.
+   */
+  private ExecutorService newExecutor() {
+    var prefix = "solarpos-worker-" + POOL_COUNTER.incrementAndGet() + "-";
+    var threads = new AtomicInteger();
+    return Executors.newFixedThreadPool(
+        parallelism,
+        r -> {
+          var thread = new Thread(r, prefix + threads.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * Computes and formats {@code items} into a block. The first row is also formatted as the first
+   * row of the whole output, which is used if this block turns out to be the first one written.
+   */
+  private Block formatBlock(Stream<? extends S> items) throws IOException {
+    var block = freeBlocks.poll();
+    if (block == null) {
+      block = new Block();
+    }
+    block.clear();
+
+    var event = new RowsComputedEvent();
+    event.begin();
+    var current = block;
+    try (items;
+        var sink = ByteSink.of(block.body, SINK_CAPACITY);
+        var head = ByteSink.of(block.head, HEAD_SINK_CAPACITY)) {
+      items
+          .sequential()
+          .forEachOrdered(
+              source -> {
+                T item = compute.apply(source);
+                try {
+                  rows.write(item, false, sink);
+                  if (current.rows++ == 0) {
+                    rows.write(item, true, head);
+                    sink.flush();
+                    current.firstRowEnd = current.body.length;
+                  }
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    if (event.shouldCommit()) {
+      event.rows = block.rows;
+      event.bytes = block.body.length;
+      event.commit();
+    }
+    return block;
+  }
+
+  private static Block await(Future<Block> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Interrupted while waiting for formatted rows");
+    } catch (ExecutionException e) {
+      var cause = e.getCause();
+      if (cause instanceof RuntimeException re) throw re;
+      if (cause instanceof Error err) throw err;
+      if (cause instanceof IOException io) throw io;
+      throw new IllegalStateException("Formatting rows failed", cause);
+    }
+  }
+
+  private static void write(Bytes bytes, int offset, Appendable out) throws IOException {
+    if (out instanceof ByteSink sink) {
+      sink.write(bytes.bytes, offset, bytes.length - offset);
+    } else {
+      out.append(new String(bytes.bytes, offset, bytes.length - offset, StandardCharsets.UTF_8));
+    }
+  }
+
+  /** State of one run: the workers, the blocks in flight and what has been written so far. */
+  private final class Run implements AutoCloseable {
+    private final Appendable out;
+    private final ExecutorService executor = newExecutor();
+    private final CompletionService<Block> completed = new ExecutorCompletionService<>(executor);
+    private final ArrayDeque<Future<Block>> pending = new ArrayDeque<>(2 * parallelism);
+    private long count;
+
+    Run(Appendable out) {
+      this.out = out;
+    }
+
+    void submit(Stream<? extends S> items) throws IOException {
+      // only unordered runs take blocks from the completion queue, so only they fill it
+      pending.add(
+          ordered
+              ? executor.submit(() -> formatBlock(items))
+              : completed.submit(() -> formatBlock(items)));
+      if (pending.size() >= 2 * parallelism) {
+        emitNext();
+      }
+    }
+
+    void submitUnchecked(Stream<? extends S> items) {
+      try {
+        submit(items);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    long finish() throws IOException {
+      while (!pending.isEmpty()) {
+        emitNext();
+      }
+      return count;
+    }
+
+    private void emitNext() throws IOException {
+      Future<Block> next;
+      if (ordered) {
+        next = pending.poll();
+      } else {
+        next = takeCompleted();
+        pending.remove(next);
+      }
+      emit(await(next));
+    }
+
+    private Future<Block> takeCompleted() {
+      try {
+        return completed.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CancellationException("Interrupted while waiting for formatted rows");
+      }
+    }
+
+    private void emit(Block block) throws IOException {
+      if (block.rows > 0) {
+        if (count == 0) {
+          write(block.head, 0, out);
+          write(block.body, block.firstRowEnd, out);
+        } else {
+          write(block.body, 0, out);
+        }
+        count += block.rows;
+      }
+      freeBlocks.add(block);
+    }
+
+    @Override
+    public void close() {
+      pending.forEach(f -> f.cancel(true));
+      executor.shutdownNow();
+    }
+  }
+
+  /** Formatted rows of one block; recycled after writing. */
+  private static final class Block {
+    final Bytes body = new Bytes(INITIAL_BLOCK_CAPACITY);
+    final Bytes head = new Bytes(HEAD_SINK_CAPACITY);
+    long rows;
+    int firstRowEnd;
+
+    void clear() {
+      body.length = 0;
+      head.length = 0;
+      rows = 0;
+      firstRowEnd = 0;
+    }
+  }
+
+  /** Growable byte buffer that a worker formats into. */
+  private static final class Bytes implements ByteSink.Drain {
+    byte[] bytes;
+    int length;
+
+    Bytes(int capacity) {
+      bytes = new byte[capacity];
+    }
+
+    @Override
+    public void write(byte[] chunk, int chunkLength) {
+      if (length + chunkLength > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + chunkLength));
+      }
+      System.arraycopy(chunk, 0, bytes, length, chunkLength);
+      length += chunkLength;
+    }
+  }
+}
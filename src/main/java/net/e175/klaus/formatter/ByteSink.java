@@ -0,0 +1,264 @@
+package net.e175.klaus.formatter;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * An {@link Appendable} that encodes text as UTF-8 into a large reusable byte buffer and hands it
+ * to a {@link Drain} in big chunks. ASCII is copied byte by byte without going through a {@link
+ * java.nio.charset.CharsetEncoder}. Not thread-safe.
+ */
+public final class ByteSink implements Appendable, Flushable, Closeable {
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+
+  /** Longest UTF-8 encoding of a single code point; chunks never split one. */
+  private static final int MAX_BYTES_PER_CODE_POINT = 4;
+
+  private static final VarHandle LONG_LE =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  /** Receives filled chunks of the buffer. */
+  @FunctionalInterface
+  public interface Drain {
+    void write(byte[] bytes, int length) throws IOException;
+  }
+
+  private final Drain drain;
+  private final Flushable flushAction;
+  private final Closeable closeAction;
+  private final byte[] buffer;
+  private final boolean destination;
+  private int position;
+  private long drained;
+  private char pendingHighSurrogate;
+
+  private ByteSink(
+      Drain drain,
+      Flushable flushAction,
+      Closeable closeAction,
+      int capacity,
+      boolean destination) {
+    if (capacity < MAX_BYTES_PER_CODE_POINT) {
+      throw new IllegalArgumentException("capacity must be at least " + MAX_BYTES_PER_CODE_POINT);
+    }
+    this.drain = Objects.requireNonNull(drain, "Drain must not be null");
+    this.flushAction = flushAction;
+    this.closeAction = closeAction;
+    this.buffer = new byte[capacity];
+    this.destination = destination;
+  }
+
+  /** Writes to a channel, e.g. a {@link java.nio.channels.FileChannel}. */
+  public static ByteSink of(WritableByteChannel channel, boolean closeChannel) {
+    Objects.requireNonNull(channel, "Channel must not be null");
+    return new ByteSink(
+        (bytes, length) -> {
+          var chunk = ByteBuffer.wrap(bytes, 0, length);
+          while (chunk.hasRemaining()) {
+            channel.write(chunk);
+          }
+        },
+        () -> {},
+        closeChannel ? channel : () -> {},
+        DEFAULT_CAPACITY,
+        true);
+  }
+
+  /** Writes decoded text to a {@link Writer}, for callers that only offer a character stream. */
+  public static ByteSink of(Writer writer) {
+    Objects.requireNonNull(writer, "Writer must not be null");
+    return new ByteSink(
+        (bytes, length) -> writer.write(new String(bytes, 0, length, StandardCharsets.UTF_8)),
+        writer,
+        () -> {},
+        DEFAULT_CAPACITY,
+        true);
+  }
+
+  /** Writes to an arbitrary drain with the given buffer capacity. */
+  public static ByteSink of(Drain drain, int capacity) {
+    return new ByteSink(drain, () -> {}, () -> {}, capacity, false);
+  }
+
+  /** Number of bytes written so far, including those still buffered. */
+  public long bytesWritten() {
+    return drained + position;
+  }
+
+  @Override
+  public ByteSink append(char c) throws IOException {
+    if (c < 0x80 && pendingHighSurrogate == 0) {
+      if (position == buffer.length) {
+        drainBuffer();
+      }
+      buffer[position++] = (byte) c;
+    } else {
+      appendNonAscii(c);
+    }
+    return this;
+  }
+
+  @Override
+  public ByteSink append(CharSequence csq) throws IOException {
+    return append(csq, 0, csq == null ? 4 : csq.length());
+  }
+
+  @Override
+  public ByteSink append(CharSequence csq, int start, int end) throws IOException {
+    if (csq == null) {
+      csq = "null";
+    }
+    Objects.checkFromToIndex(start, end, csq.length());
+
+    int i = start;
+    while (i < end) {
+      // ASCII run: copy as much as fits before checking anything else again
+      if (pendingHighSurrogate == 0) {
+        int limit = Math.min(end, i + buffer.length - position);
+        while (i < limit) {
+          char c = csq.charAt(i);
+          if (c >= 0x80) break;
+          buffer[position++] = (byte) c;
+          i++;
+        }
+        if (i == limit && position == buffer.length) {
+          drainBuffer();
+          continue;
+        }
+      }
+      if (i < end) {
+        append(csq.charAt(i++));
+      }
+    }
+    return this;
+  }
+
+  /** Writes already encoded UTF-8 bytes, e.g. a block formatted into another sink. */
+  public void write(byte[] bytes, int offset, int length) throws IOException {
+    Objects.checkFromIndexSize(offset, length, bytes.length);
+    if (pendingHighSurrogate != 0) {
+      pendingHighSurrogate = 0;
+      append('?');
+    }
+
+    while (length > 0) {
+      if (position == buffer.length) {
+        drainBuffer();
+      }
+      int n = Math.min(length, buffer.length - position);
+      System.arraycopy(bytes, offset, buffer, position, n);
+      position += n;
+      offset += n;
+      length -= n;
+    }
+  }
+
+  /** Writes {@code value} as eight little-endian bytes, for binary output. */
+  public void writeLongLE(long value) throws IOException {
+    if (buffer.length - position < Long.BYTES) {
+      drainBuffer();
+    }
+    if (pendingHighSurrogate != 0 || buffer.length < Long.BYTES) {
+      var bytes = new byte[Long.BYTES];
+      LONG_LE.set(bytes, 0, value);
+      write(bytes, 0, Long.BYTES);
+      return;
+    }
+    LONG_LE.set(buffer, position, value);
+    position += Long.BYTES;
+  }
+
+  /** Writes the bits of {@code value} as eight little-endian bytes, for binary output. */
+  public void writeDoubleLE(double value) throws IOException {
+    writeLongLE(Double.doubleToRawLongBits(value));
+  }
+
+  private void appendNonAscii(char c) throws IOException {
+    if (buffer.length - position < MAX_BYTES_PER_CODE_POINT) {
+      drainBuffer();
+    }
+
+    if (pendingHighSurrogate != 0) {
+      char high = pendingHighSurrogate;
+      pendingHighSurrogate = 0;
+      if (Character.isLowSurrogate(c)) {
+        putCodePoint(Character.toCodePoint(high, c));
+        return;
+      }
+      buffer[position++] = '?'; // unpaired high surrogate, as the JDK encoder replaces it
+      if (c < 0x80) {
+        buffer[position++] = (byte) c;
+        return;
+      }
+    }
+
+    if (Character.isHighSurrogate(c)) {
+      pendingHighSurrogate = c;
+    } else if (Character.isLowSurrogate(c)) {
+      buffer[position++] = '?';
+    } else {
+      putCodePoint(c);
+    }
+  }
+
+  private void putCodePoint(int cp) {
+    if (cp < 0x800) {
+      buffer[position++] = (byte) (0xC0 | (cp >> 6));
+      buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+    } else if (cp < 0x10000) {
+      buffer[position++] = (byte) (0xE0 | (cp >> 12));
+      buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+      buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+    } else {
+      buffer[position++] = (byte) (0xF0 | (cp >> 18));
+      buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+      buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+      buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+    }
+  }
+
+  private void drainBuffer() throws IOException {
+    if (position > 0) {
+      // a channel or writer is the final destination; other drains are intermediate buffers
+      var event = destination ? new OutputFlushedEvent() : null;
+      if (event != null) {
+        event.begin();
+      }
+      drain.write(buffer, position);
+      if (event != null && event.shouldCommit()) {
+        event.bytes = position;
+        event.commit();
+      }
+      drained += position;
+      position = 0;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    drainBuffer();
+    flushAction.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (pendingHighSurrogate != 0) {
+      pendingHighSurrogate = 0;
+      append('?');
+    }
+    try {
+      flush();
+    } finally {
+      closeAction.close();
+    }
+  }
+}
@@ -1,13 +1,14 @@
 package net.e175.klaus.formatter;
 
 import java.io.IOException;
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
 
 public record CsvFormatter<T>(
     SerializerRegistry registry, boolean withHeaders, String delimiter, String lineSeparator)
-    implements StreamingFormatter<T> {
+    implements BlockFormatter<T> {
   private static final char QUOTE = '"';
   private static final String ESCAPED_QUOTE = "\"\"";
 
@@ -29,14 +30,22 @@ public record CsvFormatter<T>(
       throws IOException {
     validateInputs(allFields, subset, items, out);
 
+    var row = startRows(allFields, subset, out);
+    if (row == null) return;
+
+    formatItems(items, row, out);
+  }
+
+  @Override
+  public RowWriter<T> startRows(
+      List<FieldDescriptor<T>> allFields, List<String> subset, Appendable out) throws IOException {
     var fields = filterFields(allFields, subset);
-    if (fields.isEmpty()) return;
+    if (fields.isEmpty()) return null;
 
     if (withHeaders) {
       writeHeaders(fields, out);
     }
-
-    formatItems(items, fields, out, withHeaders);
+    return compileRow(fields);
   }
 
   private void writeHeaders(List<FieldDescriptor<T>> fields, Appendable out) throws IOException {
@@ -49,40 +58,67 @@ public record CsvFormatter<T>(
     out.append(lineSeparator);
   }
 
-  private void formatItems(
-      Stream<T> items, List<FieldDescriptor<T>> fields, Appendable out, boolean hasHeaders) {
+  private void formatItems(Stream<T> items, RowWriter<T> row, Appendable out) {
+    var counter = new RowsComputedEvent.Counter(out);
 
     items.forEachOrdered(
         item -> {
           try {
-            formatRow(item, fields, out);
-            out.append(lineSeparator);
+            row.write(item, false, out);
+            counter.row();
           } catch (IOException e) {
             throw new java.io.UncheckedIOException(e);
           }
         });
+    counter.end();
   }
 
-  private void formatRow(T item, List<FieldDescriptor<T>> fields, Appendable out)
-      throws IOException {
-    var firstField = true;
-    for (var field : fields) {
-      if (!firstField) out.append(delimiter);
-      firstField = false;
+  private RowWriter<T> compileRow(List<FieldDescriptor<T>> fields) {
+    FieldWriter<T>[] row = FieldWriter.newArray(fields.size());
+    for (int i = 0; i < row.length; i++) {
+      row[i] = compileField(fields.get(i), i == 0 ? "" : delimiter);
+    }
+    return RowWriter.of(row, "", lineSeparator);
+  }
 
-      var value = field.extractor().apply(item);
+  private FieldWriter<T> compileField(FieldDescriptor<T> field, String prefix) {
+    var extractor = field.extractor();
+    var precision = registry.getPrecision(field);
 
-      switch (value) {
-        case null -> out.append("");
-        case Double d -> registry.appendDouble(d, registry.getPrecision(field), out);
-        case Float f -> registry.appendFloat(f, registry.getPrecision(field), out);
+    if (field.doubleExtractor() != null) {
+      var doubleExtractor = field.doubleExtractor();
+      return (item, out) -> {
+        out.append(prefix);
+        registry.appendDouble(doubleExtractor.applyAsDouble(item), precision, out);
+      };
+    }
+    if (field.longExtractor() != null) {
+      var longExtractor = field.longExtractor();
+      return (item, out) -> {
+        out.append(prefix);
+        registry.appendLong(longExtractor.applyAsLong(item), out);
+      };
+    }
+
+    var timestamps = registry.timestampWriter(field);
+
+    return (item, out) -> {
+      out.append(prefix);
+      switch (extractor.apply(item)) {
+        case null -> {}
+        case Double d -> registry.appendDouble(d, precision, out);
+        case Float f -> registry.appendFloat(f, precision, out);
         case Number n -> out.append(n.toString());
-        default -> {
-          var serialized = registry.serialize(value, field);
-          appendEscapedIfNecessary(serialized, out);
+        case ZonedDateTime zdt -> {
+          if (timestamps != null) {
+            timestamps.append(zdt, out);
+          } else {
+            appendEscapedIfNecessary(registry.serialize(zdt, field), out);
+          }
         }
+        case Object value -> appendEscapedIfNecessary(registry.serialize(value, field), out);
       }
-    }
+    };
   }
 
   private void appendEscapedIfNecessary(String value, Appendable out) throws IOException {
@@ -0,0 +1,131 @@
+package net.e175.klaus.formatter;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Fixed-precision decimal rendering that appends digits directly to an {@link Appendable}.
+ *
+ * <p>Output is identical to {@code String.format(Locale.US, "%.Nf", value)}. Values that cannot be
+ * rendered exactly by the integer fast path (non-finite, very large, or within rounding noise of a
+ * half-way tie) fall back to {@link String#format}.
+ */
+final class DecimalWriter {
+  private static final long[] POW10 = {
+    1L,
+    10L,
+    100L,
+    1_000L,
+    10_000L,
+    100_000L,
+    1_000_000L,
+    10_000_000L,
+    100_000_000L,
+    1_000_000_000L,
+    10_000_000_000L,
+    100_000_000_000L,
+    1_000_000_000_000L,
+    10_000_000_000_000L,
+    100_000_000_000_000L,
+    1_000_000_000_000_000L,
+    10_000_000_000_000_000L,
+    100_000_000_000_000_000L,
+    1_000_000_000_000_000_000L
+  };
+
+  /**
+   * Largest magnitude handled by the fast path; the integer part must fit comfortably in a long.
+   */
+  private static final double FAST_PATH_LIMIT = 1e15;
+
+  /** Slack for the error introduced by scaling the fractional part with a double multiplication. */
+  private static final double TIE_TOLERANCE = 1e-6;
+
+  private DecimalWriter() {}
+
+  static void append(double value, int precision, Appendable out) throws IOException {
+    if (!tryAppendFast(value, precision, out)) {
+      out.append(String.format(Locale.US, SerializerRegistry.FORMAT_SPECS[precision], value));
+    }
+  }
+
+  static String toString(double value, int precision) {
+    var sb = new StringBuilder(24);
+    try {
+      append(value, precision, sb);
+    } catch (IOException e) {
+      throw new AssertionError("StringBuilder does not throw IOException", e);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Appends {@code value} rounded half-up to {@code precision} fraction digits, unless the result
+   * might differ from {@link java.util.Formatter}, which rounds the shortest decimal representation
+   * rather than the exact binary value. Nothing is written if this returns false.
+   */
+  static boolean tryAppendFast(double value, int precision, Appendable out) throws IOException {
+    double scale = POW10[precision];
+    double abs = Math.abs(value);
+    if (!(abs < FAST_PATH_LIMIT)) {
+      return false; // NaN, infinities and huge values
+    }
+
+    long intPart = (long) abs;
+    double scaledFraction = (abs - intPart) * scale;
+    long fraction = (long) scaledFraction;
+    double remainder = scaledFraction - fraction;
+
+    // The shortest repr may sit up to half an ulp away from the binary value; near a tie that is
+    // enough to flip the rounding direction, so leave those to the formatter.
+    double tolerance = Math.ulp(abs) * scale + TIE_TOLERANCE;
+    if (Math.abs(remainder - 0.5) <= tolerance) {
+      return false;
+    }
+
+    if (remainder > 0.5) {
+      fraction++;
+      if (fraction == POW10[precision]) {
+        fraction = 0;
+        intPart++;
+      }
+    }
+
+    if (Double.doubleToRawLongBits(value) < 0) {
+      out.append('-'); // includes -0.0 and negatives rounding to zero, as %f does
+    }
+    appendDigits(intPart, digitCount(intPart), out);
+    if (precision > 0) {
+      out.append('.');
+      appendDigits(fraction, precision, out);
+    }
+    return true;
+  }
+
+  static void appendLong(long value, Appendable out) throws IOException {
+    if (value == Long.MIN_VALUE) {
+      out.append(Long.toString(value)); // cannot be negated
+      return;
+    }
+    if (value < 0) {
+      out.append('-');
+      value = -value;
+    }
+    appendDigits(value, digitCount(value), out);
+  }
+
+  /** Appends exactly {@code width} digits of a non-negative value, zero-padded on the left. */
+  static void appendDigits(long value, int width, Appendable out) throws IOException {
+    for (int i = width - 1; i >= 0; i--) {
+      out.append((char) ('0' + (value / POW10[i]) % 10));
+    }
+  }
+
+  private static int digitCount(long value) {
+    int count = 1;
+    while (count < POW10.length && value >= POW10[count]) {
+      count++;
+    }
+    return count;
+  }
+}
@@ -5,16 +5,32 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 
-public record FieldDescriptor<T>(String name, Function<T, ?> extractor, Map<String, Object> hints) {
+/**
+ * Describes one output field. Besides the generic {@code extractor}, a descriptor may carry a
+ * primitive {@code doubleExtractor} or {@code longExtractor}; formatters prefer those so that
+ * numeric values are written without boxing. The generic extractor always works as well.
+ */
+public record FieldDescriptor<T>(
+    String name,
+    Function<T, ?> extractor,
+    Map<String, Object> hints,
+    ToDoubleFunction<T> doubleExtractor,
+    ToLongFunction<T> longExtractor) {
   public FieldDescriptor(String name, Function<T, ?> extractor) {
     this(name, extractor, Map.of());
   }
 
   public FieldDescriptor(String name, Function<T, ?> extractor, Map<String, Object> hints) {
-    this.name = Objects.requireNonNull(name, "Field name must not be null");
-    this.extractor = Objects.requireNonNull(extractor, "Field extractor must not be null");
-    this.hints = Map.copyOf(hints);
+    this(name, extractor, hints, null, null);
+  }
+
+  public FieldDescriptor {
+    Objects.requireNonNull(name, "Field name must not be null");
+    Objects.requireNonNull(extractor, "Field extractor must not be null");
+    hints = Map.copyOf(hints);
   }
 
   public static <T> FieldDescriptor<T> numeric(
@@ -22,15 +38,37 @@ public record FieldDescriptor<T>(String name, Function<T, ?> extractor, Map<Stri
     return new FieldDescriptor<>(name, extractor, Map.of("precision", precision));
   }
 
+  /** A double-valued field read through a primitive extractor. */
+  public static <T> FieldDescriptor<T> decimal(
+      String name, ToDoubleFunction<T> extractor, int precision) {
+    Objects.requireNonNull(extractor, "Field extractor must not be null");
+    return new FieldDescriptor<>(
+        name, extractor::applyAsDouble, Map.of("precision", precision), extractor, null);
+  }
+
+  /** A long-valued field read through a primitive extractor. */
+  public static <T> FieldDescriptor<T> integer(String name, ToLongFunction<T> extractor) {
+    Objects.requireNonNull(extractor, "Field extractor must not be null");
+    return new FieldDescriptor<>(name, extractor::applyAsLong, Map.of(), null, extractor);
+  }
+
   public static <T> FieldDescriptor<T> dateTime(
       String name, Function<T, ZonedDateTime> extractor, String pattern) {
-    return new FieldDescriptor<>(name, extractor, Map.of("pattern", pattern));
+    return new FieldDescriptor<>(
+        name, extractor, Map.of("pattern", pattern, "type", ZonedDateTime.class));
+  }
+
+  /** A timestamp field written in each formatter's default style; values may be null. */
+  public static <T> FieldDescriptor<T> timestamp(
+      String name, Function<T, ZonedDateTime> extractor) {
+    return new FieldDescriptor<>(name, extractor, Map.of("type", ZonedDateTime.class));
   }
 
   public FieldDescriptor<T> withHint(String key, Object value) {
     var newHints = new HashMap<>(this.hints);
     newHints.put(key, value);
-    return new FieldDescriptor<>(this.name, this.extractor, newHints);
+    return new FieldDescriptor<>(
+        this.name, this.extractor, newHints, this.doubleExtractor, this.longExtractor);
   }
 
   public FieldDescriptor<T> withPrecision(int precision) {
@@ -0,0 +1,18 @@
+package net.e175.klaus.formatter;
+
+import java.io.IOException;
+
+/**
+ * Writes one field of an item, including any separator or key prefix. Formatters compile their
+ * field list into an array of these once per {@code format()} call, so that precision lookups,
+ * prefixes and null handling are resolved before the per-row loop.
+ */
+@FunctionalInterface
+interface FieldWriter<T> {
+  void write(T item, Appendable out) throws IOException;
+
+  @SuppressWarnings("unchecked")
+  static <T> FieldWriter<T>[] newArray(int size) {
+    return (FieldWriter<T>[]) new FieldWriter<?>[size];
+  }
+}
@@ -2,16 +2,13 @@ package net.e175.klaus.formatter;
 
 import java.io.IOException;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
 
 public record JsonFormatter<T>(SerializerRegistry registry, String lineSeparator)
-    implements StreamingFormatter<T> {
+    implements BlockFormatter<T> {
   private static final int INITIAL_BUFFER_SIZE = 128;
-  private static final DateTimeFormatter ISO_FORMAT =
-      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssXXX");
 
   public JsonFormatter(SerializerRegistry registry) {
     this(registry, "\n");
@@ -28,43 +25,72 @@ public record JsonFormatter<T>(SerializerRegistry registry, String lineSeparator
       throws IOException {
     validateInputs(allFields, subset, items, out);
 
-    var fields = filterFields(allFields, subset);
-    if (fields.isEmpty()) return;
+    var row = startRows(allFields, subset, out);
+    if (row == null) return;
 
+    var counter = new RowsComputedEvent.Counter(out);
     var iterator = items.iterator();
+    boolean first = true;
     while (iterator.hasNext()) {
-      formatItem(iterator.next(), fields, out);
-
-      if (iterator.hasNext()) {
-        out.append(lineSeparator);
-      }
+      row.write(iterator.next(), first, out);
+      counter.row();
+      first = false;
     }
+    counter.end();
   }
 
-  private void formatItem(T item, List<FieldDescriptor<T>> fields, Appendable out)
-      throws IOException {
-    out.append('{');
+  @Override
+  public RowWriter<T> startRows(
+      List<FieldDescriptor<T>> allFields, List<String> subset, Appendable out) {
+    var fields = filterFields(allFields, subset);
+    return fields.isEmpty() ? null : compileRow(fields);
+  }
 
-    var first = true;
-    for (var field : fields) {
-      if (!first) out.append(',');
-      first = false;
+  private RowWriter<T> compileRow(List<FieldDescriptor<T>> fields) {
+    FieldWriter<T>[] row = FieldWriter.newArray(fields.size());
+    for (int i = 0; i < row.length; i++) {
+      var key = '"' + escapeJson(fields.get(i).name()) + "\":";
+      row[i] = compileField(fields.get(i), (i == 0 ? "{" : ",") + key);
+    }
+    return RowWriter.of(row, lineSeparator, "}");
+  }
+
+  private FieldWriter<T> compileField(FieldDescriptor<T> field, String keyPrefix) {
+    var extractor = field.extractor();
+    var precision = registry.getPrecision(field);
 
-      out.append('"').append(field.name()).append('"').append(':');
+    if (field.doubleExtractor() != null) {
+      var doubleExtractor = field.doubleExtractor();
+      return (item, out) -> {
+        out.append(keyPrefix);
+        registry.appendDouble(doubleExtractor.applyAsDouble(item), precision, out);
+      };
+    }
+    if (field.longExtractor() != null) {
+      var longExtractor = field.longExtractor();
+      return (item, out) -> {
+        out.append(keyPrefix);
+        registry.appendLong(longExtractor.applyAsLong(item), out);
+      };
+    }
 
-      var value = field.extractor().apply(item);
-      switch (value) {
+    return (item, out) -> {
+      out.append(keyPrefix);
+      switch (extractor.apply(item)) {
         case null -> out.append("null");
-        case Double d -> registry.appendDouble(d, registry.getPrecision(field), out);
-        case Float f -> registry.appendFloat(f, registry.getPrecision(field), out);
+        case Double d -> registry.appendDouble(d, precision, out);
+        case Float f -> registry.appendFloat(f, precision, out);
         case Number n -> out.append(n.toString());
         case Boolean b -> out.append(b.toString());
-        case ZonedDateTime zdt -> out.append('"').append(zdt.format(ISO_FORMAT)).append('"');
-        default -> out.append('"').append(escapeJson(registry.serialize(value, field))).append('"');
+        case ZonedDateTime zdt -> {
+          out.append('"');
+          TimestampWriter.ISO.append(zdt, out);
+          out.append('"');
+        }
+        case Object value ->
+            out.append('"').append(escapeJson(registry.serialize(value, field))).append('"');
       }
-    }
-
-    out.append('}');
+    };
   }
 
   private static String escapeJson(String text) {
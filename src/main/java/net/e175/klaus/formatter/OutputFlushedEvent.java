@@ -0,0 +1,21 @@
+package net.e175.klaus.formatter;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Flight Recorder event for a buffer of output handed to the file, stdout or a connection. */
+@Name("solarpos.OutputFlushed")
+@Label("Output Flushed")
+@Category({"solarpos", "Output"})
+@Description("A chunk of encoded output written to its destination")
+@StackTrace(false)
+final class OutputFlushedEvent extends Event {
+  @Label("Bytes")
+  @DataAmount
+  long bytes;
+}
@@ -0,0 +1,26 @@
+package net.e175.klaus.formatter;
+
+import java.io.IOException;
+
+/**
+ * Writes one complete row, including whatever separates it from the previous row. Only the very
+ * first row of the output is written with {@code first} set, so rows can be formatted independently
+ * of each other and concatenated in order.
+ */
+@FunctionalInterface
+interface RowWriter<T> {
+  void write(T item, boolean first, Appendable out) throws IOException;
+
+  /** Compiles {@code fields} into a row writer with the given row prefix and suffix. */
+  static <T> RowWriter<T> of(FieldWriter<T>[] fields, String separator, String suffix) {
+    return (item, first, out) -> {
+      if (!first) {
+        out.append(separator);
+      }
+      for (var field : fields) {
+        field.write(item, out);
+      }
+      out.append(suffix);
+    };
+  }
+}
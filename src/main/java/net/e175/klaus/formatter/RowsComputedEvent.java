@@ -0,0 +1,75 @@
+package net.e175.klaus.formatter;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a block of rows computed and formatted, by a worker of {@link
+ * BlockPipeline} or, every {@link BlockPipeline#BLOCK_SIZE} rows, by a sequential formatter.
+ */
+@Name("solarpos.RowsComputed")
+@Label("Rows Computed")
+@Category({"solarpos", "Output"})
+@Description("A block of result rows computed and formatted")
+@StackTrace(false)
+final class RowsComputedEvent extends Event {
+  @Label("Rows")
+  long rows;
+
+  @Label("Formatted Bytes")
+  @DataAmount
+  long bytes;
+
+  /**
+   * Counts the rows of a sequential format call, committing an event per block. Costs an increment
+   * per row while Flight Recorder is off.
+   */
+  static final class Counter {
+    private final Appendable out;
+    private RowsComputedEvent event;
+    private long startBytes;
+    private int rows;
+
+    Counter(Appendable out) {
+      this.out = out;
+      begin();
+    }
+
+    void row() {
+      if (++rows == BlockPipeline.BLOCK_SIZE) {
+        commit();
+        begin();
+      }
+    }
+
+    void end() {
+      if (rows > 0) {
+        commit();
+      }
+    }
+
+    private void begin() {
+      event = new RowsComputedEvent();
+      event.begin();
+      startBytes = bytesWritten();
+      rows = 0;
+    }
+
+    private void commit() {
+      if (event.shouldCommit()) {
+        event.rows = rows;
+        event.bytes = bytesWritten() - startBytes;
+        event.commit();
+      }
+    }
+
+    private long bytesWritten() {
+      return out instanceof ByteSink sink ? sink.bytesWritten() : 0;
+    }
+  }
+}
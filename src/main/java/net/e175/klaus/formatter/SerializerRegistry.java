@@ -8,15 +8,22 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.BiFunction;
-import net.e175.klaus.solarpos.util.TimeFormats;
 
 public final class SerializerRegistry {
   static final String[] FORMAT_SPECS = {
     "%.0f", "%.1f", "%.2f", "%.3f", "%.4f", "%.5f", "%.6f", "%.7f", "%.8f", "%.9f"
   };
 
+  /** Serializes primitive doubles, so descriptors with a double extractor need not box. */
+  @FunctionalInterface
+  public interface DoubleSerializer {
+    String serialize(double value, Map<String, Object> hints);
+  }
+
   private final Map<Class<?>, BiFunction<Object, Map<String, Object>, String>> serializers =
       new HashMap<>();
+  private DoubleSerializer doubleSerializer;
+  private TimestampWriter dateTimeWriter;
   private String nullValue = "";
 
   private SerializerRegistry() {}
@@ -26,87 +33,94 @@ public final class SerializerRegistry {
         .register(String.class, (s, hints) -> s)
         .register(Number.class, SerializerRegistry::formatNumber)
         .register(Boolean.class, (b, hints) -> b.toString())
-        .register(ZonedDateTime.class, SerializerRegistry::formatDateTime);
+        .registerDateTime("", TimestampWriter.HUMAN, false);
   }
 
-  private static String formatDateTime(Object dt, Map<String, Object> hints) {
-    var pattern = (String) hints.getOrDefault("pattern", "yyyy-MM-dd HH:mm:ssXXX");
-    var formatter = DateTimeFormatter.ofPattern(pattern);
-    return ((ZonedDateTime) dt).format(formatter);
+  private static DoubleSerializer createDoubleFormatter(int defaultPrecision) {
+    return (d, hints) -> DecimalWriter.toString(d, precision(hints, defaultPrecision));
   }
 
-  private static <T extends Number> BiFunction<T, Map<String, Object>, String> createFloatFormatter(
+  private static DoubleSerializer createDoubleFormatterWithUnits(int defaultPrecision) {
+    var plain = createDoubleFormatter(defaultPrecision);
+    return (d, hints) -> withUnit(plain.serialize(d, hints), hints);
+  }
+
+  /** Floats keep going through the formatter, which rounds their own (float) shortest repr. */
+  private static BiFunction<Float, Map<String, Object>, String> createFloatFormatter(
       int defaultPrecision) {
-    return (num, hints) -> {
-      var precision = (int) hints.getOrDefault("precision", defaultPrecision);
-      return String.format(Locale.US, FORMAT_SPECS[precision], num);
-    };
+    return (f, hints) ->
+        String.format(Locale.US, FORMAT_SPECS[precision(hints, defaultPrecision)], f);
   }
 
-  private static <T extends Number>
-      BiFunction<T, Map<String, Object>, String> createFloatFormatterWithUnits(
-          int defaultPrecision) {
-    return (num, hints) -> {
-      var precision = (int) hints.getOrDefault("precision", defaultPrecision);
-      String result = String.format(Locale.US, FORMAT_SPECS[precision], num);
+  private static BiFunction<Float, Map<String, Object>, String> createFloatFormatterWithUnits(
+      int defaultPrecision) {
+    var plain = createFloatFormatter(defaultPrecision);
+    return (f, hints) -> withUnit(plain.apply(f, hints), hints);
+  }
 
-      var unit = (String) hints.get("unit");
-      return unit != null ? String.format("%28s%s", result, unit) : result;
-    };
+  private static int precision(Map<String, Object> hints, int defaultPrecision) {
+    return (int) hints.getOrDefault("precision", defaultPrecision);
+  }
+
+  private static String withUnit(String formatted, Map<String, Object> hints) {
+    var unit = (String) hints.get("unit");
+    return unit != null ? String.format("%28s%s", formatted, unit) : formatted;
   }
 
   private static final java.util.concurrent.ConcurrentHashMap<String, DateTimeFormatter>
       FORMATTER_CACHE = new java.util.concurrent.ConcurrentHashMap<>();
 
   private static BiFunction<ZonedDateTime, Map<String, Object>, String> createDateTimeFormatter(
-      String nullValue, DateTimeFormatter defaultFormat, boolean quoted) {
+      String nullValue, TimestampWriter defaultWriter, boolean quoted) {
     return (dt, hints) -> {
       if (dt == null) return nullValue;
 
       var pattern = (String) hints.get("pattern");
-      DateTimeFormatter formatter =
-          pattern != null
-              ? FORMATTER_CACHE.computeIfAbsent(pattern, DateTimeFormatter::ofPattern)
-              : defaultFormat;
-
-      String formatted = dt.format(formatter);
+      String formatted = pattern != null ? formatDateTime(dt, pattern) : defaultWriter.format(dt);
       return quoted ? '"' + formatted + '"' : formatted;
     };
   }
 
+  private static String formatDateTime(ZonedDateTime dt, String pattern) {
+    var writer = TimestampWriter.forPattern(pattern);
+    return writer != null
+        ? writer.format(dt)
+        : dt.format(FORMATTER_CACHE.computeIfAbsent(pattern, DateTimeFormatter::ofPattern));
+  }
+
+  private SerializerRegistry registerDateTime(
+      String nullValue, TimestampWriter defaultWriter, boolean quoted) {
+    register(ZonedDateTime.class, createDateTimeFormatter(nullValue, defaultWriter, quoted));
+    dateTimeWriter = quoted ? null : defaultWriter;
+    return this;
+  }
+
   public static SerializerRegistry forText() {
     return defaults()
-        .register(Double.class, createFloatFormatterWithUnits(2))
+        .registerDouble(createDoubleFormatterWithUnits(2))
         .register(Float.class, createFloatFormatterWithUnits(2))
-        .register(
-            ZonedDateTime.class,
-            createDateTimeFormatter("none", TimeFormats.ISO_HUMAN_LOCAL_DATE_TIME_REDUCED, false));
+        .registerDateTime("none", TimestampWriter.HUMAN_REDUCED, false);
   }
 
   public static SerializerRegistry forJson() {
     return defaults()
-        .register(Double.class, createFloatFormatter(6))
+        .registerDouble(createDoubleFormatter(6))
         .register(Float.class, createFloatFormatter(6))
-        .register(
-            ZonedDateTime.class,
-            createDateTimeFormatter(
-                "null", DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssXXX"), true));
+        .registerDateTime("null", TimestampWriter.ISO, true);
   }
 
   public static SerializerRegistry forCsv() {
     return defaults()
-        .register(Double.class, createFloatFormatter(5))
+        .registerDouble(createDoubleFormatter(5))
         .register(Float.class, createFloatFormatter(5))
-        .register(
-            ZonedDateTime.class,
-            createDateTimeFormatter("", TimeFormats.ISO_LOCAL_DATE_TIME_REDUCED, false));
+        .registerDateTime("", TimestampWriter.ISO_REDUCED, false);
   }
 
   private static String formatNumber(Object n, Map<String, Object> hints) {
     var precision = (int) hints.getOrDefault("precision", 6);
 
     return switch (n) {
-      case Double d -> String.format(Locale.US, FORMAT_SPECS[precision], d);
+      case Double d -> DecimalWriter.toString(d, precision);
       case Float f -> String.format(Locale.US, FORMAT_SPECS[precision], f);
       case Number num -> num.toString();
       default -> n.toString();
@@ -116,6 +130,19 @@ public final class SerializerRegistry {
   public <U> SerializerRegistry register(
       Class<U> type, BiFunction<U, Map<String, Object>, String> fn) {
     serializers.put(type, (obj, hints) -> fn.apply(type.cast(obj), hints));
+    if (type == Double.class) {
+      doubleSerializer = null;
+    } else if (type == ZonedDateTime.class) {
+      dateTimeWriter = null;
+    }
+    return this;
+  }
+
+  /** Registers {@code fn} for both boxed and primitive doubles. */
+  public SerializerRegistry registerDouble(DoubleSerializer fn) {
+    Objects.requireNonNull(fn, "Serializer must not be null");
+    register(Double.class, (d, hints) -> fn.serialize(d, hints));
+    doubleSerializer = fn;
     return this;
   }
 
@@ -129,13 +156,7 @@ public final class SerializerRegistry {
 
     if (obj == null) return nullValue;
 
-    Map<String, Object> hintsWithFieldName;
-    if (field.hints().isEmpty()) {
-      hintsWithFieldName = Map.of("fieldName", field.name());
-    } else {
-      hintsWithFieldName = new HashMap<>(field.hints());
-      hintsWithFieldName.put("fieldName", field.name());
-    }
+    var hintsWithFieldName = hintsWithFieldName(field);
 
     var serializer = serializers.get(obj.getClass());
     if (serializer != null) {
@@ -149,19 +170,52 @@ public final class SerializerRegistry {
         .orElseGet(obj::toString);
   }
 
+  /** Serializes a primitive double, boxing only if no {@link DoubleSerializer} is registered. */
+  public String serializeDouble(double value, FieldDescriptor<?> field) {
+    Objects.requireNonNull(field, "Field descriptor must not be null");
+
+    return doubleSerializer != null
+        ? doubleSerializer.serialize(value, hintsWithFieldName(field))
+        : serialize(value, field);
+  }
+
+  private static Map<String, Object> hintsWithFieldName(FieldDescriptor<?> field) {
+    if (field.hints().isEmpty()) {
+      return Map.of("fieldName", field.name());
+    }
+    var hints = new HashMap<>(field.hints());
+    hints.put("fieldName", field.name());
+    return hints;
+  }
+
   public String serialize(Object obj) {
     return serialize(obj, new FieldDescriptor<>("", x -> x));
   }
 
+  /**
+   * Returns a writer that appends the field's timestamps directly, or null if they have to go
+   * through {@link #serialize}. Only the built-in unquoted serializers and fixed patterns qualify.
+   */
+  TimestampWriter timestampWriter(FieldDescriptor<?> field) {
+    if (dateTimeWriter == null) return null;
+
+    var pattern = (String) field.hints().get("pattern");
+    return pattern != null ? TimestampWriter.forPattern(pattern) : dateTimeWriter;
+  }
+
   public <T> int getPrecision(FieldDescriptor<T> field) {
     return (int) field.hints().getOrDefault("precision", 5);
   }
 
   public void appendDouble(double value, int precision, Appendable out) throws IOException {
-    out.append(String.format(Locale.US, FORMAT_SPECS[precision], value));
+    DecimalWriter.append(value, precision, out);
   }
 
   public void appendFloat(float value, int precision, Appendable out) throws IOException {
     appendDouble(value, precision, out);
   }
+
+  public void appendLong(long value, Appendable out) throws IOException {
+    DecimalWriter.appendLong(value, out);
+  }
 }
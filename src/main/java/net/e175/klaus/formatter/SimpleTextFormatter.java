@@ -1,15 +1,16 @@
 package net.e175.klaus.formatter;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
 public record SimpleTextFormatter<T>(
     SerializerRegistry registry, String lineSeparator, Map<String, String> displayNames)
-    implements StreamingFormatter<T> {
+    implements BlockFormatter<T> {
   private static final String FORMAT_SEPARATOR = ": ";
 
   public SimpleTextFormatter(SerializerRegistry registry) {
@@ -36,53 +37,64 @@ public record SimpleTextFormatter<T>(
       List<FieldDescriptor<T>> allFields, List<String> subset, Stream<T> items, Appendable out) {
     validateInputs(allFields, subset, items, out);
 
-    var fields = filterAndOrderFields(allFields, subset);
-    if (fields.isEmpty()) return;
-
-    int maxNameLength = calculateMaxFieldNameLength(fields);
-    String formatPattern = "%-" + maxNameLength + "s" + FORMAT_SEPARATOR + "%s%n";
-
-    formatItems(items, fields, formatPattern, out);
-  }
+    var row = startRows(allFields, subset, out);
+    if (row == null) return;
 
-  private int calculateMaxFieldNameLength(List<FieldDescriptor<T>> fields) {
-    return fields.stream()
-        .mapToInt(
-            fd -> {
-              String displayName = displayNames.getOrDefault(fd.name(), fd.name());
-              return displayName.length();
-            })
-        .max()
-        .orElse(0);
-  }
-
-  private void formatItems(
-      Stream<T> items, List<FieldDescriptor<T>> fields, String formatPattern, Appendable out) {
-    var first = new java.util.concurrent.atomic.AtomicBoolean(true);
+    var first = new AtomicBoolean(true);
+    var counter = new RowsComputedEvent.Counter(out);
 
     items.forEachOrdered(
         item -> {
           try {
-            if (!first.getAndSet(false)) {
-              out.append(lineSeparator);
-            }
-            formatSingleItem(item, fields, formatPattern, out);
+            row.write(item, first.getAndSet(false), out);
+            counter.row();
           } catch (IOException e) {
-            throw new java.io.UncheckedIOException(e);
+            throw new UncheckedIOException(e);
           }
         });
+    counter.end();
+  }
+
+  @Override
+  public RowWriter<T> startRows(
+      List<FieldDescriptor<T>> allFields, List<String> subset, Appendable out) {
+    var fields = filterAndOrderFields(allFields, subset);
+    return fields.isEmpty() ? null : compileRow(fields);
+  }
+
+  private RowWriter<T> compileRow(List<FieldDescriptor<T>> fields) {
+    int maxNameLength = calculateMaxFieldNameLength(fields);
+
+    FieldWriter<T>[] row = FieldWriter.newArray(fields.size());
+    for (int i = 0; i < row.length; i++) {
+      row[i] = compileField(fields.get(i), maxNameLength);
+    }
+    return RowWriter.of(row, lineSeparator, "");
   }
 
-  private void formatSingleItem(
-      T item, List<FieldDescriptor<T>> fields, String formatPattern, Appendable out)
-      throws IOException {
-    for (var field : fields) {
-      var value = field.extractor().apply(item);
-      String displayName = displayNames.getOrDefault(field.name(), field.name());
+  private int calculateMaxFieldNameLength(List<FieldDescriptor<T>> fields) {
+    return fields.stream().mapToInt(fd -> displayName(fd).length()).max().orElse(0);
+  }
 
-      String serialized = registry.serialize(value, field);
+  private String displayName(FieldDescriptor<T> field) {
+    return displayNames.getOrDefault(field.name(), field.name());
+  }
 
-      out.append(String.format(Locale.US, formatPattern, displayName, serialized));
+  /** Each field is its left-aligned label, the value and a platform line break. */
+  private FieldWriter<T> compileField(FieldDescriptor<T> field, int maxNameLength) {
+    var displayName = displayName(field);
+    var label = displayName + " ".repeat(maxNameLength - displayName.length()) + FORMAT_SEPARATOR;
+    var newline = System.lineSeparator();
+
+    var doubleExtractor = field.doubleExtractor();
+    if (doubleExtractor != null) {
+      return (item, out) ->
+          out.append(label)
+              .append(registry.serializeDouble(doubleExtractor.applyAsDouble(item), field))
+              .append(newline);
     }
+    var extractor = field.extractor();
+    return (item, out) ->
+        out.append(label).append(registry.serialize(extractor.apply(item), field)).append(newline);
   }
 }
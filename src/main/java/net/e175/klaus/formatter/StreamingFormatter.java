@@ -3,6 +3,7 @@ package net.e175.klaus.formatter;
 import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 public interface StreamingFormatter<T> {
@@ -10,6 +11,41 @@ public interface StreamingFormatter<T> {
       List<FieldDescriptor<T>> allFields, List<String> subset, Stream<T> items, Appendable out)
       throws IOException;
 
+  /**
+   * Formats {@code sources.map(compute)} with the same output as {@link #format}, but may compute
+   * and format blocks of rows on up to {@code parallelism} worker threads. Unless {@code ordered},
+   * blocks may be written in the order they are finished. The default implementation formats
+   * sequentially.
+   */
+  default <S> void formatParallel(
+      List<FieldDescriptor<T>> allFields,
+      List<String> subset,
+      Stream<S> sources,
+      Function<? super S, ? extends T> compute,
+      Appendable out,
+      int parallelism,
+      boolean ordered)
+      throws IOException {
+    format(allFields, subset, sources.map(compute), out);
+  }
+
+  /**
+   * Like {@link #formatParallel}, for sources that come in independent chunks, such as byte ranges
+   * of an input file. Each chunk is read, computed and formatted as one block on a worker thread,
+   * so reading the sources runs in parallel too. The default implementation formats sequentially.
+   */
+  default <S> void formatParallelChunks(
+      List<FieldDescriptor<T>> allFields,
+      List<String> subset,
+      Stream<? extends Stream<S>> chunks,
+      Function<? super S, ? extends T> compute,
+      Appendable out,
+      int parallelism,
+      boolean ordered)
+      throws IOException {
+    format(allFields, subset, chunks.flatMap(Function.identity()).map(compute), out);
+  }
+
   default List<FieldDescriptor<T>> filterFields(
       List<FieldDescriptor<T>> allFields, List<String> subset) {
     Objects.requireNonNull(allFields, "Field list must not be null");
@@ -31,7 +67,7 @@ public interface StreamingFormatter<T> {
   }
 
   default void validateInputs(
-      List<FieldDescriptor<T>> allFields, List<String> subset, Stream<T> items, Appendable out) {
+      List<FieldDescriptor<T>> allFields, List<String> subset, Stream<?> items, Appendable out) {
     Objects.requireNonNull(allFields, "Field list must not be null");
     Objects.requireNonNull(subset, "Subset list must not be null");
     Objects.requireNonNull(items, "Items stream must not be null");
@@ -0,0 +1,83 @@
+package net.e175.klaus.formatter;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.concurrent.ConcurrentHashMap;
+import net.e175.klaus.solarpos.util.TimeFormats;
+
+/**
+ * Appends {@code yyyy-MM-dd?HH:mm:ss<offset>} timestamps digit by digit, as used by the fixed
+ * output patterns. The offset text is rendered once per {@link ZoneOffset} by the matching
+ * formatter and cached. Years outside 1..9999 are delegated to the equivalent formatter.
+ */
+final class TimestampWriter {
+  private static final DateTimeFormatter OFFSET_XXX = DateTimeFormatter.ofPattern("XXX");
+  private static final DateTimeFormatter OFFSET_ID =
+      new DateTimeFormatterBuilder().appendOffsetId().toFormatter();
+
+  static final TimestampWriter ISO =
+      new TimestampWriter(
+          'T', OFFSET_XXX, DateTimeFormatter.ofPattern(TimeFormats.OUTPUT_DATE_TIME_ISO_PATTERN));
+  static final TimestampWriter HUMAN =
+      new TimestampWriter(
+          ' ', OFFSET_XXX, DateTimeFormatter.ofPattern(TimeFormats.OUTPUT_DATE_TIME_HUMAN_PATTERN));
+  static final TimestampWriter ISO_REDUCED =
+      new TimestampWriter('T', OFFSET_ID, TimeFormats.ISO_LOCAL_DATE_TIME_REDUCED);
+  static final TimestampWriter HUMAN_REDUCED =
+      new TimestampWriter(' ', OFFSET_ID, TimeFormats.ISO_HUMAN_LOCAL_DATE_TIME_REDUCED);
+
+  private final char separator;
+  private final DateTimeFormatter offsetFormatter;
+  private final DateTimeFormatter fallback;
+  private final ConcurrentHashMap<ZoneOffset, String> offsets = new ConcurrentHashMap<>();
+
+  private TimestampWriter(
+      char separator, DateTimeFormatter offsetFormatter, DateTimeFormatter fallback) {
+    this.separator = separator;
+    this.offsetFormatter = offsetFormatter;
+    this.fallback = fallback;
+  }
+
+  /** Returns the writer for one of the fixed output patterns, or null for any other pattern. */
+  static TimestampWriter forPattern(String pattern) {
+    return switch (pattern) {
+      case TimeFormats.OUTPUT_DATE_TIME_ISO_PATTERN -> ISO;
+      case TimeFormats.OUTPUT_DATE_TIME_HUMAN_PATTERN -> HUMAN;
+      default -> null;
+    };
+  }
+
+  void append(ZonedDateTime dateTime, Appendable out) throws IOException {
+    int year = dateTime.getYear();
+    if (year < 1 || year > 9999) {
+      out.append(fallback.format(dateTime));
+      return;
+    }
+
+    DecimalWriter.appendDigits(year, 4, out);
+    out.append('-');
+    DecimalWriter.appendDigits(dateTime.getMonthValue(), 2, out);
+    out.append('-');
+    DecimalWriter.appendDigits(dateTime.getDayOfMonth(), 2, out);
+    out.append(separator);
+    DecimalWriter.appendDigits(dateTime.getHour(), 2, out);
+    out.append(':');
+    DecimalWriter.appendDigits(dateTime.getMinute(), 2, out);
+    out.append(':');
+    DecimalWriter.appendDigits(dateTime.getSecond(), 2, out);
+    out.append(offsets.computeIfAbsent(dateTime.getOffset(), offsetFormatter::format));
+  }
+
+  String format(ZonedDateTime dateTime) {
+    var sb = new StringBuilder(25);
+    try {
+      append(dateTime, sb);
+    } catch (IOException e) {
+      throw new AssertionError("StringBuilder does not throw IOException", e);
+    }
+    return sb.toString();
+  }
+}
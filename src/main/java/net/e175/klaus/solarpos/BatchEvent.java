@@ -0,0 +1,71 @@
+package net.e175.klaus.solarpos;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import net.e175.klaus.formatter.ByteSink;
+
+/**
+ * Flight Recorder event for one run of a command, from its start to the last byte written. Rows are
+ * only counted if the event is enabled when the run starts.
+ */
+@Name("solarpos.Batch")
+@Label("Batch")
+@Category("solarpos")
+@Description("One run of a command over all of its inputs")
+@StackTrace(false)
+final class BatchEvent extends Event {
+  @Label("Command")
+  String command;
+
+  @Label("Parallel")
+  boolean parallel;
+
+  @Label("Rows")
+  long rows;
+
+  @Label("Bytes Written")
+  @DataAmount
+  long bytes;
+
+  private transient LongAdder counted;
+  private transient ByteSink out;
+
+  static BatchEvent begin(String command, boolean parallel) {
+    var event = new BatchEvent();
+    event.command = command;
+    event.parallel = parallel;
+    if (event.isEnabled()) {
+      event.counted = new LongAdder();
+    }
+    event.begin();
+    return event;
+  }
+
+  /** Counts the items of {@code rows} as they are consumed, on any thread. */
+  <T> Stream<T> count(Stream<T> rows) {
+    var counter = counted;
+    return counter != null ? rows.peek(row -> counter.increment()) : rows;
+  }
+
+  /** Remembers the sink the results go to, for the number of bytes written. */
+  ByteSink output(ByteSink sink) {
+    out = sink;
+    return sink;
+  }
+
+  /** Ends the run and commits the event. Not {@code end()}, which {@link Event} keeps final. */
+  void finish() {
+    if (shouldCommit()) {
+      rows = counted != null ? counted.sum() : 0;
+      bytes = out != null ? out.bytesWritten() : 0;
+      commit();
+    }
+  }
+}
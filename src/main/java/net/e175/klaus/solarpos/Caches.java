@@ -0,0 +1,29 @@
+package net.e175.klaus.solarpos;
+
+/**
+ * Caches used by a command run. The server commands share one set between all requests.
+ *
+ * @param sunrise shared sunrise results, or null to leave that to the sunrise {@code --cache}
+ *     option of each run
+ */
+record Caches(DeltaTCache deltaT, SunriseCache sunrise) {
+
+  /** Caches for a single run. */
+  static Caches forRun() {
+    return new Caches(new DeltaTCache(), null);
+  }
+
+  /** Caches for a server, keeping up to {@code sunriseEntries} sunrise results (0 for none). */
+  static Caches forServer(int sunriseEntries) {
+    return new Caches(
+        new DeltaTCache(), sunriseEntries > 0 ? new SunriseCache(sunriseEntries) : null);
+  }
+
+  /** The shared sunrise cache, else a new one of {@code entries} if positive, else null. */
+  SunriseCache sunrise(int entries) {
+    if (sunrise != null) {
+      return sunrise;
+    }
+    return entries > 0 ? new SunriseCache(entries) : null;
+  }
+}
@@ -0,0 +1,43 @@
+package net.e175.klaus.solarpos;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import net.e175.klaus.formatter.ByteSink;
+import net.e175.klaus.solarpos.util.PairedRecords;
+import picocli.CommandLine;
+
+@CommandLine.Command(
+    name = "convert",
+    description =
+        "Converts paired data to a binary file that is read without parsing, e.g. solarpos --output=data.bin @data.txt convert.")
+final class ConvertCommand implements Callable<Integer> {
+
+  @CommandLine.ParentCommand Main parent;
+
+  @Override
+  public Integer call() {
+    parent.validate();
+    if (!parent.isPairedData()) {
+      throw new IllegalArgumentException(
+          "convert requires paired data (latitude longitude datetime per line), e.g. @data.txt");
+    }
+    if (!parent.hasByteOutput()) {
+      throw new IllegalArgumentException("convert writes binary data, use --output=<file>");
+    }
+
+    final PerformanceTracker tracker = parent.startPerformanceTracker();
+    final BatchEvent batch = BatchEvent.begin("convert", parent.parallel);
+
+    try (ByteSink out = batch.output(parent.openOutput())) {
+      PairedRecords.write(
+          batch.count(PerformanceTracker.countIfNeeded(tracker, parent.getPairedDataStream())),
+          (bytes, length) -> out.write(bytes, 0, length));
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to write output", e);
+    }
+
+    batch.finish();
+    PerformanceTracker.reportIfNeeded(tracker);
+    return 0;
+  }
+}
@@ -0,0 +1,39 @@
+package net.e175.klaus.solarpos;
+
+import java.time.LocalDate;
+import net.e175.klaus.solarpositioning.DeltaT;
+
+/**
+ * Memoizes {@link DeltaT#estimate(LocalDate)}. Delta T changes on a scale of years, but a time
+ * series asks for it once per row. The estimate only depends on the year and month of the date, so
+ * that is the key.
+ *
+ * <p>The most recent entry is checked first, which covers sorted time series. Otherwise the table
+ * is direct-mapped by month, so consecutive months never collide within a window of {@link #SIZE}
+ * months; a collision just replaces the older entry. Entries are immutable, so the cache can be
+ * shared by worker threads without locking.
+ */
+final class DeltaTCache {
+  static final int SIZE = 1 << 10;
+
+  private record Entry(long month, double deltaT) {}
+
+  private final Entry[] entries = new Entry[SIZE];
+  private Entry last = new Entry(Long.MIN_VALUE, Double.NaN);
+
+  double estimate(LocalDate date) {
+    long month = date.getYear() * 12L + date.getMonthValue() - 1;
+
+    var entry = last;
+    if (entry.month() != month) {
+      int slot = (int) (month & (SIZE - 1));
+      entry = entries[slot];
+      if (entry == null || entry.month() != month) {
+        entry = new Entry(month, DeltaT.estimate(date));
+        entries[slot] = entry;
+      }
+      last = entry;
+    }
+    return entry.deltaT();
+  }
+}
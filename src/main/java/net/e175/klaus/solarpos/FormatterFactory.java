@@ -1,6 +1,7 @@
 package net.e175.klaus.solarpos;
 
 import java.util.Map;
+import net.e175.klaus.formatter.BinaryFormatter;
 import net.e175.klaus.formatter.CsvFormatter;
 import net.e175.klaus.formatter.JsonFormatter;
 import net.e175.klaus.formatter.SerializerRegistry;
@@ -11,20 +12,14 @@ final class FormatterFactory {
   private FormatterFactory() {}
 
   static <T> StreamingFormatter<T> create(Main.Format format, boolean headers) {
-    SerializerRegistry registry =
-        switch (format) {
-          case HUMAN -> SerializerRegistry.forText();
-          case JSON -> SerializerRegistry.forJson();
-          case CSV -> SerializerRegistry.forCsv();
-        };
-
     return switch (format) {
       case HUMAN -> {
         var displayNames = Map.of("dateTime", "date/time", "deltaT", "delta T");
-        yield new SimpleTextFormatter<>(registry, displayNames);
+        yield new SimpleTextFormatter<>(SerializerRegistry.forText(), displayNames);
       }
-      case JSON -> new JsonFormatter<>(registry, "\n");
-      case CSV -> new CsvFormatter<>(registry, headers);
+      case JSON -> new JsonFormatter<>(SerializerRegistry.forJson(), "\n");
+      case CSV -> new CsvFormatter<>(SerializerRegistry.forCsv(), headers);
+      case BINARY -> new BinaryFormatter<>();
     };
   }
 }
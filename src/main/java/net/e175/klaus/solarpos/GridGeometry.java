@@ -0,0 +1,117 @@
+package net.e175.klaus.solarpos;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Coordinate-only terms of the SPA topocentric correction (latitude trig functions and the
+ * elevation-dependent parallax terms), computed once per observer and reused for every timestamp.
+ *
+ * <p>Points are numbered row by row. A grid built from two {@link CoordinateRange}s has one row per
+ * latitude, each with every longitude, in the same order as {@link
+ * InputMode.CoordinateRanges#coordinates()}. A plain list of coordinates has one row per point.
+ */
+final class GridGeometry {
+  private static final double EARTH_FLATTENING_FACTOR = 0.99664719;
+  private static final double EARTH_RADIUS_METERS = 6378140.0;
+
+  private final double[] latitudes;
+  private final double[] longitudes;
+  private final boolean crossProduct;
+
+  final double[] sinLatitude;
+  final double[] cosLatitude;
+  final double[] parallaxX;
+  final double[] parallaxY;
+
+  private GridGeometry(
+      double[] latitudes, double[] longitudes, boolean crossProduct, double elevation) {
+    for (double latitude : latitudes) checkRange(latitude, 90.0);
+    for (double longitude : longitudes) checkRange(longitude, 180.0);
+
+    this.latitudes = latitudes;
+    this.longitudes = longitudes;
+    this.crossProduct = crossProduct;
+
+    int rows = latitudes.length;
+    sinLatitude = new double[rows];
+    cosLatitude = new double[rows];
+    parallaxX = new double[rows];
+    parallaxY = new double[rows];
+    for (int i = 0; i < rows; i++) {
+      double phi = Math.toRadians(latitudes[i]);
+      sinLatitude[i] = Math.sin(phi);
+      cosLatitude[i] = Math.cos(phi);
+      double u = Math.atan(EARTH_FLATTENING_FACTOR * Math.tan(phi));
+      parallaxX[i] = Math.cos(u) + elevation * cosLatitude[i] / EARTH_RADIUS_METERS;
+      parallaxY[i] =
+          EARTH_FLATTENING_FACTOR * Math.sin(u) + elevation * sinLatitude[i] / EARTH_RADIUS_METERS;
+    }
+  }
+
+  /** Every combination of the two ranges, latitude-major. */
+  static GridGeometry of(CoordinateRange latitude, CoordinateRange longitude, double elevation) {
+    return new GridGeometry(
+        latitude.stream().toArray(), longitude.stream().toArray(), true, elevation);
+  }
+
+  /** The given coordinates, in order. */
+  static GridGeometry of(Stream<CoordinatePair> coordinates, double elevation) {
+    List<CoordinatePair> points = coordinates.toList();
+    return new GridGeometry(
+        points.stream().mapToDouble(CoordinatePair::latitude).toArray(),
+        points.stream().mapToDouble(CoordinatePair::longitude).toArray(),
+        false,
+        elevation);
+  }
+
+  /** Points {@code offset} to {@code offset + length - 1} of the given arrays. */
+  static GridGeometry of(
+      double[] latitudes, double[] longitudes, int offset, int length, double elevation) {
+    return new GridGeometry(
+        java.util.Arrays.copyOfRange(latitudes, offset, offset + length),
+        java.util.Arrays.copyOfRange(longitudes, offset, offset + length),
+        false,
+        elevation);
+  }
+
+  int rows() {
+    return latitudes.length;
+  }
+
+  /** Number of points in each row. */
+  int columns() {
+    return crossProduct ? longitudes.length : 1;
+  }
+
+  int size() {
+    return rows() * columns();
+  }
+
+  /** Index into {@link #longitude(int)} of the first point in {@code row}. */
+  int firstLongitude(int row) {
+    return crossProduct ? 0 : row;
+  }
+
+  double rowLatitude(int row) {
+    return latitudes[row];
+  }
+
+  double longitude(int index) {
+    return longitudes[index];
+  }
+
+  double latitudeOf(int point) {
+    return latitudes[point / columns()];
+  }
+
+  double longitudeOf(int point) {
+    return crossProduct ? longitudes[point % longitudes.length] : longitudes[point];
+  }
+
+  private static void checkRange(double value, double limit) {
+    if (value < -limit || value > limit) {
+      throw new IllegalArgumentException("latitude/longitude out of range");
+    }
+  }
+}
@@ -0,0 +1,243 @@
+package net.e175.klaus.solarpos;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import picocli.CommandLine;
+
+@CommandLine.Command(
+    name = "http",
+    description = {
+      "Answers HTTP GET requests to /position and /sunrise, keeping the JVM warm between them.",
+      "Query parameters are latitude, longitude and dateTime, plus options by their long name, e.g.",
+      "  /position?latitude=52.0&longitude=13.4&dateTime=now&format=csv&step=15m",
+      "Results are streamed as they are computed; errors are answered with status 400."
+    })
+final class HttpCommand implements Callable<Integer> {
+  private static final List<String> INPUTS = List.of("latitude", "longitude", "dateTime");
+  private static final List<String> ENDPOINTS = List.of("position", "sunrise");
+
+  @CommandLine.Option(
+      names = {"--port"},
+      description = "Port to listen on; 0 picks a free port. Default: ${DEFAULT-VALUE}.",
+      defaultValue = "0")
+  int port;
+
+  @CommandLine.Option(
+      names = {"--address"},
+      paramLabel = "<host>",
+      description = "Address to listen on. Default: the loopback address.")
+  InetAddress address;
+
+  @CommandLine.Option(
+      names = {"--sunrise-cache"},
+      paramLabel = "<entries>",
+      description =
+          "Sunrise results kept for reuse between requests; 0 disables. Default: ${DEFAULT-VALUE}.",
+      defaultValue = "65536")
+  int sunriseCacheEntries;
+
+  @Override
+  public Integer call() throws Exception {
+    var server =
+        start(
+            new InetSocketAddress(
+                address != null ? address : InetAddress.getLoopbackAddress(), port),
+            Caches.forServer(sunriseCacheEntries));
+    var bound = server.getAddress();
+    System.err.println(
+        "Listening on http://" + bound.getAddress().getHostAddress() + ":" + bound.getPort());
+    Thread.currentThread().join(); // until the process is stopped
+    return 0;
+  }
+
+  /** Starts a server answering each request on a virtual thread. Requests share the caches. */
+  static HttpServer start(InetSocketAddress address, Caches caches) throws IOException {
+    var server = HttpServer.create(address, 0);
+    // read-only after construction, used to tell parent options from those of the command
+    var model = Main.createCommandLine();
+    for (var endpoint : ENDPOINTS) {
+      server.createContext("/" + endpoint, exchange -> handle(exchange, endpoint, model, caches));
+    }
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.start();
+    return server;
+  }
+
+  private static void handle(
+      HttpExchange exchange, String endpoint, CommandLine model, Caches caches) throws IOException {
+    try {
+      if (!exchange.getRequestURI().getPath().equals("/" + endpoint)) {
+        respond(exchange, 404, "Not found: " + exchange.getRequestURI().getPath());
+        return;
+      }
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders().set("Allow", "GET");
+        respond(exchange, 405, "Only GET is supported");
+        return;
+      }
+      Request request;
+      try {
+        request = Request.of(model, endpoint, exchange.getRequestURI().getRawQuery());
+      } catch (IllegalArgumentException e) {
+        respond(exchange, 400, e.getMessage());
+        return;
+      }
+
+      var body = new ResponseBody(exchange, request.contentType());
+      var err = new StringWriter();
+      int exitCode = ServeCommand.execute(request.args(), body, caches, err);
+      if (body.out == null) {
+        if (exitCode == 0) {
+          exchange.getResponseHeaders().set("Content-Type", request.contentType());
+          exchange.sendResponseHeaders(200, -1);
+        } else {
+          respond(exchange, 400, ServeCommand.firstLine(err.toString()));
+        }
+      }
+      // a failure after the first row can only cut the response short
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String message)
+      throws IOException {
+    var bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    exchange.getResponseBody().write(bytes);
+  }
+
+  /** The command line for a query, and the content type of its results. */
+  record Request(String[] args, String contentType) {
+
+    static Request of(CommandLine model, String endpoint, String rawQuery) {
+      var command = model.getSubcommands().get(endpoint).getCommandSpec();
+      var inputs = new String[INPUTS.size()];
+      var parentOptions = new ArrayList<String>();
+      var commandOptions = new ArrayList<String>();
+      var format = "human";
+
+      for (var param : rawQuery == null ? new String[0] : rawQuery.split("&")) {
+        if (param.isEmpty()) {
+          continue;
+        }
+        int eq = param.indexOf('=');
+        var name = decode(eq < 0 ? param : param.substring(0, eq));
+        var value = eq < 0 ? "" : decode(param.substring(eq + 1));
+
+        int input = INPUTS.indexOf(name);
+        if (input >= 0) {
+          inputs[input] = value;
+          continue;
+        }
+        var parentOption = name.startsWith("-") ? null : model.getCommandSpec().findOption(name);
+        var commandOption = name.startsWith("-") ? null : command.findOption(name);
+        if (parentOption != null) {
+          parentOptions.add(option(parentOption, value));
+          if (name.equals("format")) {
+            format = value;
+          }
+        } else if (commandOption != null) {
+          commandOptions.add(option(commandOption, value));
+        } else {
+          throw new IllegalArgumentException("Unknown query parameter: " + name);
+        }
+      }
+
+      var args = new ArrayList<>(parentOptions);
+      for (int i = 0; i < inputs.length; i++) {
+        if (inputs[i] == null || inputs[i].isEmpty()) {
+          throw new IllegalArgumentException("Missing query parameter: " + INPUTS.get(i));
+        }
+        args.add(inputs[i]);
+      }
+      args.add(endpoint);
+      args.addAll(commandOptions);
+      var request = args.toArray(String[]::new);
+      ServeCommand.checkRequest(request);
+      return new Request(request, contentType(format));
+    }
+
+    /**
+     * The argument for an option. Without a value, an option with an optional value is given its
+     * fallback explicitly: parent options precede the inputs, and would take the latitude as their
+     * value otherwise.
+     */
+    private static String option(CommandLine.Model.OptionSpec option, String value) {
+      var fallback = option.fallbackValue();
+      if (value.isEmpty() && option.arity().max() > 0 && fallback != null && !fallback.isEmpty()) {
+        value = fallback;
+      }
+      return option.longestName() + (value.isEmpty() ? "" : "=" + value);
+    }
+
+    private static String decode(String text) {
+      return URLDecoder.decode(text, StandardCharsets.UTF_8);
+    }
+
+    private static String contentType(String format) {
+      return switch (format.toLowerCase(Locale.ROOT)) {
+        case "csv" -> "text/csv; charset=utf-8";
+        case "json" -> "application/x-ndjson";
+        case "binary" -> "application/octet-stream";
+        default -> "text/plain; charset=utf-8";
+      };
+    }
+  }
+
+  /** Response body that sends a 200 status with the first bytes, streaming them in chunks. */
+  private static final class ResponseBody implements WritableByteChannel {
+    private final HttpExchange exchange;
+    private final String contentType;
+    OutputStream out;
+
+    ResponseBody(HttpExchange exchange, String contentType) {
+      this.exchange = exchange;
+      this.contentType = contentType;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      if (out == null) {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, 0);
+        out = exchange.getResponseBody();
+      }
+      int length = src.remaining();
+      if (src.hasArray()) {
+        out.write(src.array(), src.arrayOffset() + src.position(), length);
+        src.position(src.limit());
+      } else {
+        var bytes = new byte[length];
+        src.get(bytes);
+        out.write(bytes);
+      }
+      return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+      // the exchange is closed by the handler
+    }
+  }
+}
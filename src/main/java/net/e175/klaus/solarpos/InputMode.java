@@ -48,6 +48,14 @@ sealed interface InputMode
     return pairedData(); // Default implementation ignores precision
   }
 
+  /**
+   * Returns paired data in chunks that can be parsed independently, e.g. on separate threads. The
+   * default implementation returns a single chunk.
+   */
+  default Stream<Stream<CoordinateTimePair>> pairedDataChunks(TimePrecision precision) {
+    return Stream.of(pairedData(precision));
+  }
+
   /** Returns true if this mode provides paired data (1:1 coordinate-time correspondence). */
   default boolean isPairedData() {
     return false;
@@ -178,6 +186,11 @@ sealed interface InputMode
       return DateTimeIterator.pairedDataFromFile(dataFile, timezone, precision);
     }
 
+    @Override
+    public Stream<Stream<CoordinateTimePair>> pairedDataChunks(TimePrecision precision) {
+      return DateTimeIterator.pairedDataChunksFromFile(dataFile, timezone, precision);
+    }
+
     @Override
     public boolean isPairedData() {
       return true;
@@ -1,20 +1,40 @@
 package net.e175.klaus.solarpos;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.TemporalAccessor;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import net.e175.klaus.formatter.ByteSink;
+import net.e175.klaus.formatter.FieldDescriptor;
+import net.e175.klaus.formatter.StreamingFormatter;
 import net.e175.klaus.solarpos.util.DateTimeIterator;
-import net.e175.klaus.solarpositioning.DeltaT;
 import picocli.CommandLine;
 import picocli.CommandLine.HelpCommand;
 
 @CommandLine.Command(
     name = "solarpos",
-    subcommands = {HelpCommand.class, PositionCommand.class, SunriseCommand.class},
+    subcommands = {
+      HelpCommand.class,
+      PositionCommand.class,
+      SunriseCommand.class,
+      ConvertCommand.class,
+      PrecomputeCommand.class,
+      ServeCommand.class,
+      HttpCommand.class
+    },
     mixinStandardHelpOptions = true,
     description = {
       "Calculates topocentric solar coordinates or sunrise/sunset times.",
@@ -24,6 +44,10 @@ import picocli.CommandLine.HelpCommand;
       "  solarpos 52:53:0.1 13:14:0.1 2024 position --format=csv",
       "  solarpos @coords.txt @times.txt position",
       "  solarpos @data.txt position  # paired lat,lng,datetime data",
+      "  solarpos --output=data.bin @data.txt convert  # binary paired data",
+      "  solarpos --output=sun.tbl @sites.txt 2026 precompute  # for sunrise --table=sun.tbl",
+      "  solarpos serve --port=7070  # answer requests over a socket",
+      "  solarpos http --port=8080  # answer GET /position?latitude=52.0&...",
       "  echo '52.0 13.4 2024-01-01T12:00:00' | solarpos @- position"
     },
     versionProvider = Main.ManifestBasedVersionProviderWithVariables.class,
@@ -36,13 +60,43 @@ public final class Main {
   enum Format {
     HUMAN,
     CSV,
-    JSON
+    JSON,
+    BINARY
   }
 
   @CommandLine.Spec CommandLine.Model.CommandSpec spec;
 
   private InputMode inputMode;
 
+  /**
+   * Raw byte output for results without --output: stdout when running as the actual CLI, or a
+   * client connection in serve mode. Null when embedded or under test.
+   */
+  private WritableByteChannel byteOutput;
+
+  private Caches caches;
+
+  Main() {
+    this(Caches.forRun(), null);
+  }
+
+  Main(Caches caches, WritableByteChannel byteOutput) {
+    this.caches = caches;
+    this.byteOutput = byteOutput;
+  }
+
+  /**
+   * Readies this command, whose command line ran before, for another run with {@code caches} and
+   * {@code byteOutput}. Picocli resets the options and parameters when it parses the next
+   * arguments; this resets what was derived from them.
+   */
+  void prepare(Caches caches, WritableByteChannel byteOutput) {
+    this.caches = caches;
+    this.byteOutput = byteOutput;
+    inputMode = null;
+    tracker = null;
+  }
+
   @CommandLine.Parameters(
       index = "0",
       description = {
@@ -98,9 +152,18 @@ public final class Main {
       defaultValue = "false",
       fallbackValue = "true",
       description =
-          "Enable parallel processing for better performance on multi-core systems. May cause memory pressure with large datasets. Default: ${DEFAULT-VALUE}.")
+          "Compute and format results on all available cores, in blocks of rows. Default: ${DEFAULT-VALUE}.")
   boolean parallel;
 
+  @CommandLine.Option(
+      names = {"--ordered"},
+      negatable = true,
+      defaultValue = "true",
+      fallbackValue = "true",
+      description =
+          "With --parallel, write results in input order. Otherwise blocks are written as soon as they are done. Default: ${DEFAULT-VALUE}.")
+  boolean ordered;
+
   @CommandLine.Option(
       names = {"--format"},
       description = "Output format, one of ${COMPLETION-CANDIDATES}.",
@@ -124,14 +187,34 @@ public final class Main {
           "Delta T in seconds; an estimate is used if this option is given without a value. Use --deltat=<value> to specify an explicit value.")
   double deltaT;
 
+  @CommandLine.Option(
+      names = {"--output"},
+      paramLabel = "<file>",
+      description = "Write results to this file instead of standard output.")
+  Optional<Path> output;
+
   @CommandLine.Option(
       names = {"--perf"},
       hidden = true,
-      description = "Show performance statistics.")
+      description = "Show performance statistics on stderr.")
   boolean showPerformance;
 
+  @CommandLine.Option(
+      names = {"--perf-format"},
+      hidden = true,
+      defaultValue = "human",
+      description = "Format of --perf statistics, one of ${COMPLETION-CANDIDATES}.")
+  PerformanceTracker.Report performanceReport;
+
+  /** Tracker of the running command with --perf, instrumenting its inputs and output. */
+  private PerformanceTracker tracker;
+
   void validate() {
     getInputMode().validate();
+    if (format == Format.BINARY && !hasByteOutput()) {
+      throw new IllegalArgumentException(
+          "--format=binary writes binary data, which this output cannot take; use --output=<file>");
+    }
   }
 
   boolean shouldShowInputs() {
@@ -197,8 +280,8 @@ public final class Main {
   }
 
   /** Converts a file parameter (@filename) to a Path. */
-  private static java.nio.file.Path pathFromFileParam(String fileParam) {
-    return java.nio.file.Path.of(fileParam.substring(1));
+  private static Path pathFromFileParam(String fileParam) {
+    return Path.of(fileParam.substring(1));
   }
 
   /** Helper method to get positional parameter values. */
@@ -211,30 +294,149 @@ public final class Main {
         .getFirst();
   }
 
+  /** Starts measuring the command if --perf is given, or returns null. */
+  PerformanceTracker startPerformanceTracker() {
+    tracker = PerformanceTracker.create(showPerformance, performanceReport, parallel);
+    return tracker;
+  }
+
+  /**
+   * Opens the sink for command results: the --output file, raw stdout or a client connection, or
+   * else the picocli output writer (e.g. when embedded or under test).
+   */
+  ByteSink openOutput() throws IOException {
+    if (output.isPresent()) {
+      return ByteSink.of(
+          timeOutput(
+              FileChannel.open(
+                  output.get(),
+                  StandardOpenOption.CREATE,
+                  StandardOpenOption.TRUNCATE_EXISTING,
+                  StandardOpenOption.WRITE)),
+          true);
+    }
+    if (byteOutput != null) {
+      return ByteSink.of(timeOutput(byteOutput), false);
+    }
+    var out = spec.commandLine().getOut();
+    return ByteSink.of(tracker != null ? tracker.timeOutput(out) : out);
+  }
+
+  private WritableByteChannel timeOutput(WritableByteChannel channel) {
+    return tracker != null ? tracker.timeOutput(channel) : channel;
+  }
+
+  /**
+   * True if {@link #openOutput()} passes bytes through unchanged, rather than decoding them for a
+   * character stream.
+   */
+  boolean hasByteOutput() {
+    return output.isPresent() || byteOutput != null;
+  }
+
   double getBestGuessDeltaT(ZonedDateTime dateTime) {
-    return Double.isFinite(deltaT) ? deltaT : DeltaT.estimate(dateTime.toLocalDate());
+    return Double.isFinite(deltaT) ? deltaT : caches.deltaT().estimate(dateTime.toLocalDate());
+  }
+
+  /**
+   * The sunrise cache shared by a server, else a new one of {@code entries} if positive, else null.
+   */
+  SunriseCache getSunriseCache(int entries) {
+    return caches.sunrise(entries);
+  }
+
+  /**
+   * Formats lazily computed rows. With {@code --parallel}, blocks of rows are computed and
+   * formatted on all cores and written in input order unless {@code --no-ordered}.
+   */
+  <T> void formatRows(
+      StreamingFormatter<T> formatter,
+      List<FieldDescriptor<T>> fields,
+      List<String> fieldNames,
+      Stream<Supplier<T>> rows,
+      Appendable out)
+      throws IOException {
+    if (parallel) {
+      formatter.formatParallel(
+          fields,
+          fieldNames,
+          rows,
+          Supplier::get,
+          out,
+          Runtime.getRuntime().availableProcessors(),
+          ordered);
+    } else {
+      formatter.format(fields, fieldNames, rows.map(Supplier::get), out);
+    }
+  }
+
+  /**
+   * Formats rows that come in independent chunks, such as byte ranges of an input file. With {@code
+   * --parallel}, each chunk is read, computed and formatted on a worker thread.
+   */
+  <T> void formatChunks(
+      StreamingFormatter<T> formatter,
+      List<FieldDescriptor<T>> fields,
+      List<String> fieldNames,
+      Stream<Stream<Supplier<T>>> chunks,
+      Appendable out)
+      throws IOException {
+    if (parallel) {
+      formatter.formatParallelChunks(
+          fields,
+          fieldNames,
+          chunks,
+          Supplier::get,
+          out,
+          Runtime.getRuntime().availableProcessors(),
+          ordered);
+    } else {
+      formatter.format(
+          fields, fieldNames, chunks.flatMap(Function.identity()).map(Supplier::get), out);
+    }
   }
 
   Stream<CoordinatePair> getCoordinatesStream() {
-    return getInputMode().coordinates();
+    return PerformanceTracker.timeInputIfNeeded(tracker, getInputMode().coordinates());
+  }
+
+  /**
+   * Returns the coordinate-only SPA terms for all input coordinates, built from the ranges directly
+   * where possible.
+   */
+  GridGeometry getGridGeometry(double elevation) {
+    return switch (getInputMode()) {
+      case InputMode.CoordinateRanges ranges ->
+          GridGeometry.of(ranges.latitude(), ranges.longitude(), elevation);
+      case InputMode.TimeFile ranges ->
+          GridGeometry.of(ranges.latitude(), ranges.longitude(), elevation);
+      default -> GridGeometry.of(getCoordinatesStream(), elevation);
+    };
   }
 
   Stream<ZonedDateTime> getDateTimesStream(Duration step) {
-    return getInputMode().times(step);
+    return PerformanceTracker.timeInputIfNeeded(tracker, getInputMode().times(step));
   }
 
   Stream<ZonedDateTime> getDateTimesStream(
       Duration step, DateTimeIterator.TimePrecision precision) {
-    return getInputMode().times(step, precision);
+    return PerformanceTracker.timeInputIfNeeded(tracker, getInputMode().times(step, precision));
   }
 
   Stream<net.e175.klaus.solarpos.util.DateTimeIterator.CoordinateTimePair> getPairedDataStream() {
-    return getInputMode().pairedData();
+    return PerformanceTracker.timeInputIfNeeded(tracker, getInputMode().pairedData());
   }
 
   Stream<net.e175.klaus.solarpos.util.DateTimeIterator.CoordinateTimePair> getPairedDataStream(
       DateTimeIterator.TimePrecision precision) {
-    return getInputMode().pairedData(precision);
+    return PerformanceTracker.timeInputIfNeeded(tracker, getInputMode().pairedData(precision));
+  }
+
+  Stream<Stream<DateTimeIterator.CoordinateTimePair>> getPairedDataChunks(
+      DateTimeIterator.TimePrecision precision) {
+    return getInputMode()
+        .pairedDataChunks(precision)
+        .map(chunk -> PerformanceTracker.timeInputIfNeeded(tracker, chunk));
   }
 
   boolean isPairedData() {
@@ -242,7 +444,11 @@ public final class Main {
   }
 
   static CommandLine createCommandLine() {
-    return new CommandLine(new Main())
+    return createCommandLine(new Main());
+  }
+
+  static CommandLine createCommandLine(Main main) {
+    return new CommandLine(main)
         .setCaseInsensitiveEnumValuesAllowed(true)
         .setAbbreviatedOptionsAllowed(true)
         .setUnmatchedOptionsArePositionalParams(true)
@@ -251,16 +457,21 @@ public final class Main {
 
   public static void main(String[] args) {
     args = preprocessCoordinateFileArgs(args);
-    int exitCode = createCommandLine().execute(args);
+    var main = new Main(Caches.forRun(), new FileOutputStream(FileDescriptor.out).getChannel());
+    int exitCode = createCommandLine(main).execute(args);
     System.exit(exitCode);
   }
 
   /**
    * Preprocesses command line arguments to handle file input elegantly. Supports both coordinate
-   * files (@coords.txt) and paired coordinate-time files (@data.txt).
+   * files (@coords.txt) and paired coordinate-time files (@data.txt). The server commands take no
+   * inputs of their own, so placeholders are inserted for them.
    */
   static String[] preprocessCoordinateFileArgs(String[] args) {
     int firstPositionalIndex = findFirstPositionalIndex(args);
+    if (firstPositionalIndex != -1 && SERVERS.contains(args[firstPositionalIndex])) {
+      return insertDummyParameters(args, firstPositionalIndex - 1, "0", "0", "now");
+    }
     if (firstPositionalIndex == -1 || !args[firstPositionalIndex].startsWith("@")) {
       return args;
     }
@@ -282,7 +493,9 @@ public final class Main {
   }
 
   private static final java.util.Set<String> COMMANDS =
-      java.util.Set.of("position", "sunrise", "help");
+      java.util.Set.of("position", "sunrise", "convert", "precompute", "serve", "http", "help");
+
+  private static final java.util.Set<String> SERVERS = java.util.Set.of("serve", "http");
 
   private static int countPositionalsBeforeCommand(String[] args, int startIndex) {
     int count = 0;
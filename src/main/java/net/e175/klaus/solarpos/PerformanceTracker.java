@@ -1,37 +1,487 @@
 package net.e175.klaus.solarpos;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-record PerformanceTracker(long startTime, AtomicLong itemCount) {
+/**
+ * Instrumentation behind the hidden {@code --perf} option: time spent per stage, a histogram of
+ * per-value compute latency, sunrise cache hits and JVM-wide GC, allocation and heap figures,
+ * reported on stderr.
+ *
+ * <p>Input and output are timed where they enter and leave the pipeline, compute around each row
+ * supplier; formatting is what remains of the wall time. With {@code --parallel}, stage times are
+ * summed over all threads and formatting is not separated. Counters are striped, so worker threads
+ * do not contend on them.
+ */
+final class PerformanceTracker {
 
-  PerformanceTracker() {
-    this(System.nanoTime(), new AtomicLong());
+  /** How the report is written. */
+  enum Report {
+    HUMAN,
+    JSON
   }
 
-  static PerformanceTracker create(boolean enabled) {
-    return enabled ? new PerformanceTracker() : null;
+  /** Number of compute latency buckets, see {@link Stats#histogram()}. */
+  private static final int BUCKETS = 48;
+
+  private final Report report;
+  private final boolean parallel;
+  private final long startTime = System.nanoTime();
+  private final long startGcCount;
+  private final long startGcMillis;
+  private final long startAllocated;
+
+  private final LongAdder items = new LongAdder();
+  private final LongAdder inputNanos = new LongAdder();
+  private final LongAdder computeNanos = new LongAdder();
+  private final LongAdder outputNanos = new LongAdder();
+  private final LongAdder outputBytes = new LongAdder();
+  private final LongAdder[] latencies = new LongAdder[BUCKETS];
+  private final LongAccumulator maxLatency = new LongAccumulator(Long::max, 0);
+
+  private SunriseCache cache;
+  private SunriseCache.Stats startCacheStats;
+
+  private PerformanceTracker(Report report, boolean parallel) {
+    this.report = report;
+    this.parallel = parallel;
+    for (int i = 0; i < BUCKETS; i++) {
+      latencies[i] = new LongAdder();
+    }
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+    startGcCount = gcCount();
+    startGcMillis = gcMillis();
+    startAllocated = allocatedBytes();
+  }
+
+  static PerformanceTracker create(boolean enabled, Report report, boolean parallel) {
+    return enabled ? new PerformanceTracker(report, parallel) : null;
+  }
+
+  /** Counts rows and times their computation. */
+  <T> Stream<Supplier<T>> trackRows(Stream<Supplier<T>> rows) {
+    return rows.map(
+        row ->
+            () -> {
+              long start = System.nanoTime();
+              T result = row.get();
+              recordCompute(System.nanoTime() - start);
+              return result;
+            });
+  }
+
+  /** Reports hits and misses of {@code cache} during the run; a server's cache outlives it. */
+  void watch(SunriseCache cache) {
+    this.cache = cache;
+    this.startCacheStats = cache.stats();
   }
 
-  <T> Stream<T> trackStream(Stream<T> stream) {
-    return stream.peek(item -> itemCount.incrementAndGet());
+  /** Counts items that need no separate computation, e.g. records being converted. */
+  <T> Stream<T> countItems(Stream<T> stream) {
+    return stream.peek(item -> items.increment());
   }
 
-  void printStats() {
-    long duration = System.nanoTime() - startTime;
-    long count = itemCount.get();
-    double seconds = duration / 1_000_000_000.0;
-    double rate = count / seconds;
-    System.err.printf("Performance: %d values in %.3f seconds (%.0f/s)%n", count, seconds, rate);
+  /**
+   * Times reading and parsing of an input stream, excluding whatever its consumer does with each
+   * item. Meant for flat streams: the stream is pulled through its spliterator, which buffers the
+   * inner streams of a {@code flatMap}.
+   */
+  <T> Stream<T> timeInput(Stream<T> input) {
+    var timed = new TimedSpliterator<>(input.spliterator());
+    return StreamSupport.stream(timed, false).onClose(input::close);
   }
 
-  static <T> Stream<T> wrapIfNeeded(PerformanceTracker tracker, Stream<T> stream) {
-    return tracker != null ? tracker.trackStream(stream) : stream;
+  WritableByteChannel timeOutput(WritableByteChannel channel) {
+    return new WritableByteChannel() {
+      @Override
+      public int write(ByteBuffer src) throws IOException {
+        long start = System.nanoTime();
+        int written = channel.write(src);
+        outputNanos.add(System.nanoTime() - start);
+        outputBytes.add(written);
+        return written;
+      }
+
+      @Override
+      public boolean isOpen() {
+        return channel.isOpen();
+      }
+
+      @Override
+      public void close() throws IOException {
+        long start = System.nanoTime();
+        channel.close();
+        outputNanos.add(System.nanoTime() - start);
+      }
+    };
+  }
+
+  Writer timeOutput(Writer writer) {
+    return new Writer() {
+      @Override
+      public void write(char[] buffer, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        writer.write(buffer, offset, length);
+        outputNanos.add(System.nanoTime() - start);
+        outputBytes.add(length);
+      }
+
+      @Override
+      public void write(String text, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        writer.write(text, offset, length);
+        outputNanos.add(System.nanoTime() - start);
+        outputBytes.add(length);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        long start = System.nanoTime();
+        writer.flush();
+        outputNanos.add(System.nanoTime() - start);
+      }
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+    };
+  }
+
+  private void recordCompute(long nanos) {
+    items.increment();
+    computeNanos.add(nanos);
+    latencies[bucket(nanos)].increment();
+    maxLatency.accumulate(nanos);
+  }
+
+  private static int bucket(long nanos) {
+    return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+  }
+
+  /** Takes the figures at the end of a run. */
+  Stats stats() {
+    long wall = System.nanoTime() - startTime;
+    long input = inputNanos.sum();
+    long compute = computeNanos.sum();
+    long output = outputNanos.sum();
+    long allocated = allocatedBytes();
+
+    var histogram = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      histogram[i] = latencies[i].sum();
+    }
+
+    return new Stats(
+        items.sum(),
+        wall,
+        input,
+        compute,
+        parallel ? -1 : Math.max(0, wall - input - compute - output),
+        output,
+        outputBytes.sum(),
+        histogram,
+        maxLatency.get(),
+        gcCount() - startGcCount,
+        gcMillis() - startGcMillis,
+        allocated < 0 || startAllocated < 0 ? -1 : allocated - startAllocated,
+        peakHeap(),
+        cache != null ? cache.stats().since(startCacheStats) : null);
+  }
+
+  void printStats(PrintStream err) {
+    var stats = stats();
+    err.print(report == Report.JSON ? stats.toJson() : stats.toText());
+    err.flush();
+  }
+
+  static <T> Stream<Supplier<T>> wrapIfNeeded(
+      PerformanceTracker tracker, Stream<Supplier<T>> rows) {
+    return tracker != null ? tracker.trackRows(rows) : rows;
+  }
+
+  static <T> Stream<T> countIfNeeded(PerformanceTracker tracker, Stream<T> stream) {
+    return tracker != null ? tracker.countItems(stream) : stream;
+  }
+
+  static <T> Stream<T> timeInputIfNeeded(PerformanceTracker tracker, Stream<T> input) {
+    return tracker != null ? tracker.timeInput(input) : input;
+  }
+
+  static void watchIfNeeded(PerformanceTracker tracker, SunriseCache cache) {
+    if (tracker != null && cache != null) {
+      tracker.watch(cache);
+    }
   }
 
   static void reportIfNeeded(PerformanceTracker tracker) {
     if (tracker != null) {
-      tracker.printStats();
+      tracker.printStats(System.err);
+    }
+  }
+
+  /**
+   * Figures of a run, in nanoseconds and bytes. Unavailable or inapplicable figures are -1. {@code
+   * histogram[b]} counts values computed in {@code [2^b, 2^(b+1))} ns. {@code sunriseCache} is null
+   * without a cache.
+   */
+  record Stats(
+      long items,
+      long wallNanos,
+      long inputNanos,
+      long computeNanos,
+      long formatNanos,
+      long outputNanos,
+      long outputBytes,
+      long[] histogram,
+      long maxLatencyNanos,
+      long gcCount,
+      long gcMillis,
+      long allocatedBytes,
+      long peakHeapBytes,
+      SunriseCache.Stats sunriseCache) {
+
+    /** Upper bound of the latency bucket containing the given quantile, or 0 without values. */
+    long latencyQuantile(double quantile) {
+      long total = 0;
+      for (long count : histogram) {
+        total += count;
+      }
+      long rank = (long) Math.ceil(quantile * total);
+      long seen = 0;
+      for (int b = 0; b < histogram.length; b++) {
+        seen += histogram[b];
+        if (seen >= rank && seen > 0) {
+          return Math.min(2L << b, maxLatencyNanos);
+        }
+      }
+      return 0;
+    }
+
+    String toText() {
+      double seconds = wallNanos / 1e9;
+      var text = new StringBuilder();
+      text.append(
+          String.format(
+              "Performance: %d values in %.3f seconds (%.0f/s)%n",
+              items, seconds, items / seconds));
+      stage(text, "input", inputNanos, "");
+      stage(text, "compute", computeNanos, "");
+      if (formatNanos >= 0) {
+        stage(text, "format", formatNanos, " (remainder)");
+      } else {
+        text.append(String.format("  %-8s (with compute; times summed over threads)%n", "format"));
+      }
+      stage(text, "output", outputNanos, String.format(" (%s)", bytes(outputBytes)));
+
+      if (items > 0 && computeNanos > 0) {
+        text.append(
+            String.format(
+                "  compute latency: mean %s, p50 < %s, p90 < %s, p99 < %s, max %s%n",
+                duration(computeNanos / items),
+                duration(latencyQuantile(0.5)),
+                duration(latencyQuantile(0.9)),
+                duration(latencyQuantile(0.99)),
+                duration(maxLatencyNanos)));
+        long peak = 0;
+        for (long count : histogram) {
+          peak = Math.max(peak, count);
+        }
+        for (int b = 0; b < histogram.length; b++) {
+          if (histogram[b] > 0) {
+            text.append(
+                String.format(
+                    "    < %-8s %10d %s%n",
+                    duration(2L << b),
+                    histogram[b],
+                    "#".repeat((int) Math.max(1, 40 * histogram[b] / peak))));
+          }
+        }
+      }
+
+      text.append(String.format("  gc: %d collections, %d ms%n", gcCount, gcMillis));
+      text.append(
+          String.format(
+              "  memory: %s allocated, %s peak heap%n",
+              bytes(allocatedBytes), bytes(peakHeapBytes)));
+      if (sunriseCache != null) {
+        long lookups = sunriseCache.hits() + sunriseCache.misses();
+        text.append(
+            String.format(
+                "  sunrise cache: %d hits, %d misses (%.1f%% hits), %d entries%n",
+                sunriseCache.hits(),
+                sunriseCache.misses(),
+                lookups > 0 ? 100.0 * sunriseCache.hits() / lookups : 0.0,
+                sunriseCache.size()));
+      }
+      return text.toString();
+    }
+
+    String toJson() {
+      var buckets = new ArrayList<String>();
+      for (int b = 0; b < histogram.length; b++) {
+        if (histogram[b] > 0) {
+          buckets.add("[" + (2L << b) + "," + histogram[b] + "]");
+        }
+      }
+      return String.format(
+          Locale.ROOT,
+          "{\"values\":%d,\"wallNanos\":%d,\"ratePerSecond\":%.1f,"
+              + "\"stages\":{\"inputNanos\":%d,\"computeNanos\":%d,\"formatNanos\":%s,"
+              + "\"outputNanos\":%d,\"outputBytes\":%d},"
+              + "\"computeLatencyNanos\":{\"p50\":%d,\"p90\":%d,\"p99\":%d,\"max\":%d,"
+              + "\"histogram\":[%s]},"
+              + "\"gc\":{\"collections\":%d,\"millis\":%d},"
+              + "\"allocatedBytes\":%s,\"peakHeapBytes\":%s,\"sunriseCache\":%s}%n",
+          items,
+          wallNanos,
+          wallNanos > 0 ? items * 1e9 / wallNanos : 0.0,
+          inputNanos,
+          computeNanos,
+          orNull(formatNanos),
+          outputNanos,
+          outputBytes,
+          latencyQuantile(0.5),
+          latencyQuantile(0.9),
+          latencyQuantile(0.99),
+          maxLatencyNanos,
+          String.join(",", buckets),
+          gcCount,
+          gcMillis,
+          orNull(allocatedBytes),
+          orNull(peakHeapBytes),
+          sunriseCache == null
+              ? "null"
+              : String.format(
+                  "{\"hits\":%d,\"misses\":%d,\"entries\":%d}",
+                  sunriseCache.hits(), sunriseCache.misses(), sunriseCache.size()));
+    }
+
+    private void stage(StringBuilder text, String name, long nanos, String note) {
+      text.append(
+          String.format(
+              "  %-8s %8.3f s %5.1f%%%s%n",
+              name, nanos / 1e9, wallNanos > 0 ? 100.0 * nanos / wallNanos : 0.0, note));
+    }
+
+    private static String orNull(long value) {
+      return value < 0 ? "null" : Long.toString(value);
+    }
+
+    private static String duration(long nanos) {
+      if (nanos < 1_000) return nanos + " ns";
+      if (nanos < 1_000_000) return String.format("%.1f µs", nanos / 1e3);
+      if (nanos < 1_000_000_000) return String.format("%.1f ms", nanos / 1e6);
+      return String.format("%.1f s", nanos / 1e9);
+    }
+
+    private static String bytes(long bytes) {
+      if (bytes < 0) return "n/a";
+      if (bytes < 1 << 20) return String.format("%.1f KB", bytes / 1024.0);
+      return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+  }
+
+  /** Pulls items one at a time, timing the source but not the consumer. */
+  private final class TimedSpliterator<T> implements Spliterator<T>, Consumer<T> {
+    private final Spliterator<T> source;
+    private T current;
+
+    TimedSpliterator(Spliterator<T> source) {
+      this.source = source;
+    }
+
+    @Override
+    public void accept(T item) {
+      current = item;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      long start = System.nanoTime();
+      boolean advanced = source.tryAdvance(this);
+      inputNanos.add(System.nanoTime() - start);
+      if (advanced) {
+        T item = current;
+        current = null;
+        action.accept(item);
+      }
+      return advanced;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+      return source.characteristics() & ~(SUBSIZED | SIZED);
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+      return source.getComparator();
+    }
+  }
+
+  private static List<GarbageCollectorMXBean> collectors() {
+    return ManagementFactory.getGarbageCollectorMXBeans();
+  }
+
+  private static long gcCount() {
+    return collectors().stream().mapToLong(gc -> Math.max(0, gc.getCollectionCount())).sum();
+  }
+
+  private static long gcMillis() {
+    return collectors().stream().mapToLong(gc -> Math.max(0, gc.getCollectionTime())).sum();
+  }
+
+  /** Bytes allocated on the heap by all threads so far, or -1 if the JVM does not measure it. */
+  private static long allocatedBytes() {
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+        && threads.isThreadAllocatedMemorySupported()
+        && threads.isThreadAllocatedMemoryEnabled()) {
+      return threads.getTotalThreadAllocatedBytes();
+    }
+    return -1;
+  }
+
+  /** Sum of the peak usage of the heap memory pools since the tracker was created. */
+  private static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+        peak += pool.getPeakUsage().getUsed();
+      }
     }
+    return peak;
   }
 }
@@ -3,18 +3,19 @@ package net.e175.klaus.solarpos;
 import static net.e175.klaus.solarpos.Main.Format.HUMAN;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.time.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import net.e175.klaus.formatter.ByteSink;
 import net.e175.klaus.formatter.FieldDescriptor;
 import net.e175.klaus.formatter.StreamingFormatter;
 import net.e175.klaus.solarpos.util.DateTimeIterator;
 import net.e175.klaus.solarpos.util.TimeFormats;
-import net.e175.klaus.solarpositioning.Grena3;
-import net.e175.klaus.solarpositioning.SPA;
 import net.e175.klaus.solarpositioning.SolarPosition;
 import picocli.CommandLine;
 
@@ -77,6 +78,9 @@ final class PositionCommand implements Callable<Integer> {
       description = "Output elevation angle instead of zenith angle.")
   boolean elevationOutput;
 
+  /** Approximate number of points per call of the SPA batch kernel; batches are whole grid rows. */
+  private static final int SPA_BATCH_SIZE = 2048;
+
   /** Record to hold position data for formatting. */
   record PositionData(
       double latitude,
@@ -95,68 +99,76 @@ final class PositionCommand implements Callable<Integer> {
     parent.validate();
     validate();
 
-    final PrintWriter out = parent.spec.commandLine().getOut();
-    final PerformanceTracker tracker = PerformanceTracker.create(parent.showPerformance);
+    final PerformanceTracker tracker = parent.startPerformanceTracker();
+    final BatchEvent batch = BatchEvent.begin("position", parent.parallel);
 
-    try {
+    try (ByteSink out = batch.output(parent.openOutput())) {
       List<FieldDescriptor<PositionData>> fields = createFields();
       List<String> fieldNames = getFieldNames(parent.shouldShowInputs());
       StreamingFormatter<PositionData> formatter = createFormatter(parent.format);
 
-      Stream<PositionData> resultStream;
-      if (parent.isPairedData()) {
-        // Use paired processing for 1:1 coordinate-time correspondence
-        var stream = parent.getPairedDataStream(DateTimeIterator.TimePrecision.TIME_REQUIRED);
-        resultStream =
-            (parent.parallel ? stream.parallel() : stream)
-                .map(pair -> calculatePositionData(pair.dateTime(), pair.coordinates()));
+      if (parent.isPairedData() && parent.parallel) {
+        // Read, compute and format byte-range chunks of the input file on worker threads
+        var chunks =
+            parent
+                .getPairedDataChunks(DateTimeIterator.TimePrecision.TIME_REQUIRED)
+                .map(
+                    chunk ->
+                        batch.count(
+                            PerformanceTracker.wrapIfNeeded(tracker, chunk.map(new PairedRows()))));
+        parent.formatChunks(formatter, fields, fieldNames, chunks, out);
       } else {
-        // Use Cartesian product for separate coordinate/time inputs
-        if (algorithm == Algorithm.SPA) {
-          // Optimized SPA processing: compute time-dependent parts once per datetime
-          var spaStream =
-              parent
-                  .getDateTimesStream(step, DateTimeIterator.TimePrecision.TIME_REQUIRED)
-                  .flatMap(this::createOptimizedSpaResultsForDateTime);
-          resultStream = parent.parallel ? spaStream.parallel() : spaStream;
-        } else {
-          // Traditional Cartesian product for Grena3
-          var cartesianStream =
-              parent
-                  .getDateTimesStream(step, DateTimeIterator.TimePrecision.TIME_REQUIRED)
-                  .flatMap(
-                      dt ->
-                          parent
-                              .getCoordinatesStream()
-                              .map(coord -> new DateTimeIterator.CoordinateTimePair(coord, dt)));
-          resultStream =
-              (parent.parallel ? cartesianStream.parallel() : cartesianStream)
-                  .map(pair -> calculatePositionData(pair.dateTime(), pair.coordinates()));
-        }
+        var rows = batch.count(PerformanceTracker.wrapIfNeeded(tracker, createRows()));
+        parent.formatRows(formatter, fields, fieldNames, rows, out);
       }
-
-      resultStream = PerformanceTracker.wrapIfNeeded(tracker, resultStream);
-      formatter.format(fields, fieldNames, resultStream, out);
     } catch (IOException e) {
       throw new RuntimeException("Failed to format output", e);
     }
 
+    batch.finish();
     PerformanceTracker.reportIfNeeded(tracker);
-    out.flush();
     return 0;
   }
 
+  private Stream<Supplier<PositionData>> createRows() {
+    if (parent.isPairedData()) {
+      // Use paired processing for 1:1 coordinate-time correspondence
+      return parent
+          .getPairedDataStream(DateTimeIterator.TimePrecision.TIME_REQUIRED)
+          .map(new PairedRows());
+    }
+    if (algorithm == Algorithm.SPA) {
+      // Optimized SPA processing: compute time-dependent parts once per datetime, coordinate-only
+      // parts once overall, and positions in batches of grid rows
+      var grid = parent.getGridGeometry(elevation);
+      return parent
+          .getDateTimesStream(step, DateTimeIterator.TimePrecision.TIME_REQUIRED)
+          .flatMap(dt -> createOptimizedSpaResultsForDateTime(dt, grid));
+    }
+    // Cartesian product for Grena3, sharing the time-dependent parts per datetime
+    return parent
+        .getDateTimesStream(step, DateTimeIterator.TimePrecision.TIME_REQUIRED)
+        .flatMap(
+            dt -> {
+              var context = createTimeContext(dt);
+              return parent
+                  .getCoordinatesStream()
+                  .<Supplier<PositionData>>map(
+                      coord -> () -> calculatePositionData(context, coord));
+            });
+  }
+
   private List<FieldDescriptor<PositionData>> createFields() {
     List<FieldDescriptor<PositionData>> fields = new ArrayList<>();
 
-    fields.add(FieldDescriptor.numeric("latitude", PositionData::latitude, 5).withUnit("°"));
-    fields.add(FieldDescriptor.numeric("longitude", PositionData::longitude, 5).withUnit("°"));
-    fields.add(FieldDescriptor.numeric("elevation", PositionData::elevation, 3).withUnit(" m"));
+    fields.add(FieldDescriptor.decimal("latitude", PositionData::latitude, 5).withUnit("°"));
+    fields.add(FieldDescriptor.decimal("longitude", PositionData::longitude, 5).withUnit("°"));
+    fields.add(FieldDescriptor.decimal("elevation", PositionData::elevation, 3).withUnit(" m"));
 
     if (refraction) {
-      fields.add(FieldDescriptor.numeric("pressure", PositionData::pressure, 3).withUnit(" hPa"));
+      fields.add(FieldDescriptor.decimal("pressure", PositionData::pressure, 3).withUnit(" hPa"));
       fields.add(
-          FieldDescriptor.numeric("temperature", PositionData::temperature, 3).withUnit(" °C"));
+          FieldDescriptor.decimal("temperature", PositionData::temperature, 3).withUnit(" °C"));
     }
 
     fields.add(
@@ -166,16 +178,16 @@ final class PositionCommand implements Callable<Integer> {
             parent.format == HUMAN
                 ? TimeFormats.OUTPUT_DATE_TIME_HUMAN_PATTERN
                 : TimeFormats.OUTPUT_DATE_TIME_ISO_PATTERN));
-    fields.add(FieldDescriptor.numeric("deltaT", PositionData::deltaT, 3).withUnit(" s"));
+    fields.add(FieldDescriptor.decimal("deltaT", PositionData::deltaT, 3).withUnit(" s"));
 
-    fields.add(FieldDescriptor.numeric("azimuth", PositionData::azimuth, 5).withUnit("°"));
+    fields.add(FieldDescriptor.decimal("azimuth", PositionData::azimuth, 5).withUnit("°"));
 
     if (elevationOutput) {
       fields.add(
-          FieldDescriptor.numeric("elevation-angle", PositionData::elevationAngle, 5)
+          FieldDescriptor.decimal("elevation-angle", PositionData::elevationAngle, 5)
               .withUnit("°"));
     } else {
-      fields.add(FieldDescriptor.numeric("zenith", PositionData::zenith, 5).withUnit("°"));
+      fields.add(FieldDescriptor.decimal("zenith", PositionData::zenith, 5).withUnit("°"));
     }
 
     return fields;
@@ -204,13 +216,18 @@ final class PositionCommand implements Callable<Integer> {
     return FormatterFactory.create(format, parent.headers);
   }
 
-  private PositionData calculatePositionData(ZonedDateTime dateTime, CoordinatePair coord) {
-    final double deltaT = parent.getBestGuessDeltaT(dateTime);
+  private TimeContext createTimeContext(ZonedDateTime dateTime) {
+    return new TimeContext(algorithm, dateTime, parent.getBestGuessDeltaT(dateTime));
+  }
 
+  private PositionData calculatePositionData(TimeContext context, CoordinatePair coord) {
     SolarPosition position =
-        refraction
-            ? calculateSolarPositionWithRefraction(dateTime, coord, deltaT)
-            : calculateSolarPositionWithoutRefraction(dateTime, coord, deltaT);
+        context.position(
+            coord.latitude(),
+            coord.longitude(),
+            elevation,
+            refraction ? pressure : Double.NaN,
+            refraction ? temperature : Double.NaN);
 
     return new PositionData(
         coord.latitude(),
@@ -218,84 +235,104 @@ final class PositionCommand implements Callable<Integer> {
         elevation,
         pressure,
         temperature,
-        dateTime,
-        deltaT,
+        context.dateTime(),
+        context.deltaT(),
         position.azimuth(),
         position.zenithAngle(),
         90.0 - position.zenithAngle());
   }
 
-  private Stream<PositionData> createOptimizedSpaResultsForDateTime(ZonedDateTime dateTime) {
-    // Compute time-dependent parts ONCE per datetime
-    final double deltaT = parent.getBestGuessDeltaT(dateTime);
-    final SPA.SpaTimeDependent timeDependent = SPA.calculateSpaTimeDependentParts(dateTime, deltaT);
-
-    // Apply to ALL coordinates for this datetime using the cached time-dependent parts
-    return parent
-        .getCoordinatesStream()
-        .map(
-            coord -> calculateSpaPositionDataWithTimeParts(dateTime, coord, deltaT, timeDependent));
+  /**
+   * Maps paired input to rows, reusing the time context across runs of equal timestamps (as in
+   * files with many locations per timestamp). Not thread-safe; the paired stream is mapped
+   * sequentially.
+   */
+  private final class PairedRows
+      implements Function<DateTimeIterator.CoordinateTimePair, Supplier<PositionData>> {
+    private TimeContext last;
+
+    @Override
+    public Supplier<PositionData> apply(DateTimeIterator.CoordinateTimePair pair) {
+      var dateTime = pair.dateTime();
+      var context = last;
+      if (context == null || !context.dateTime().equals(dateTime)) {
+        context = createTimeContext(dateTime);
+        last = context;
+      }
+      var shared = context;
+      return () -> calculatePositionData(shared, pair.coordinates());
+    }
   }
 
-  private PositionData calculateSpaPositionDataWithTimeParts(
-      ZonedDateTime dateTime,
-      CoordinatePair coord,
-      double deltaT,
-      SPA.SpaTimeDependent timeDependent) {
+  /** Rows of the whole grid at one timestamp. Package-private for the JMH benchmarks. */
+  Stream<Supplier<PositionData>> createOptimizedSpaResultsForDateTime(
+      ZonedDateTime dateTime, GridGeometry grid) {
+    // Compute time-dependent parts ONCE per datetime, on whichever thread needs them first
+    final var context = createTimeContext(dateTime);
+    final int rowsPerBatch = Math.max(1, SPA_BATCH_SIZE / grid.columns());
+
+    return IntStream.iterate(0, row -> row < grid.rows(), row -> row + rowsPerBatch)
+        .mapToObj(
+            row -> new SpaBatchRows(context, grid, row, Math.min(rowsPerBatch, grid.rows() - row)))
+        .flatMap(SpaBatchRows::rows);
+  }
 
-    // Use pre-computed time-dependent parts - this is where the optimization happens!
-    SolarPosition position =
-        refraction
-            ? SPA.calculateSolarPositionWithTimeDependentParts(
-                coord.latitude(),
-                coord.longitude(),
-                elevation,
-                pressure,
-                temperature,
-                timeDependent)
-            : SPA.calculateSolarPositionWithTimeDependentParts(
-                coord.latitude(), coord.longitude(), elevation, timeDependent);
+  /**
+   * Some rows of the grid at one timestamp. The batch kernel runs when the first row is requested,
+   * so with --parallel it runs on a worker thread.
+   */
+  private final class SpaBatchRows {
+    private final TimeContext context;
+    private final GridGeometry grid;
+    private final int firstRow;
+    private final int rowCount;
+    private volatile Angles angles;
+
+    private record Angles(double[] azimuth, double[] zenith) {}
+
+    SpaBatchRows(TimeContext context, GridGeometry grid, int firstRow, int rowCount) {
+      this.context = context;
+      this.grid = grid;
+      this.firstRow = firstRow;
+      this.rowCount = rowCount;
+    }
 
-    return new PositionData(
-        coord.latitude(),
-        coord.longitude(),
-        elevation,
-        pressure,
-        temperature,
-        dateTime,
-        deltaT,
-        position.azimuth(),
-        position.zenithAngle(),
-        90.0 - position.zenithAngle());
-  }
+    Stream<Supplier<PositionData>> rows() {
+      return IntStream.range(0, rowCount * grid.columns()).mapToObj(k -> () -> row(k));
+    }
 
-  private SolarPosition calculateSolarPositionWithRefraction(
-      ZonedDateTime dateTime, CoordinatePair coord, double deltaT) {
-    return switch (algorithm) {
-      case SPA ->
-          SPA.calculateSolarPosition(
-              dateTime,
-              coord.latitude(),
-              coord.longitude(),
-              elevation,
-              deltaT,
-              pressure,
-              temperature);
-      case GRENA3 ->
-          Grena3.calculateSolarPosition(
-              dateTime, coord.latitude(), coord.longitude(), deltaT, pressure, temperature);
-    };
-  }
+    private PositionData row(int k) {
+      var result = angles;
+      if (result == null) {
+        // as with TimeContext, a racing duplicate computation is harmless
+        int size = rowCount * grid.columns();
+        result = new Angles(new double[size], new double[size]);
+        SpaBatch.calculate(
+            context.spa(),
+            grid,
+            firstRow,
+            rowCount,
+            refraction ? pressure : Double.NaN,
+            refraction ? temperature : Double.NaN,
+            result.azimuth(),
+            result.zenith());
+        angles = result;
+      }
 
-  private SolarPosition calculateSolarPositionWithoutRefraction(
-      ZonedDateTime dateTime, CoordinatePair coord, double deltaT) {
-    return switch (algorithm) {
-      case SPA ->
-          SPA.calculateSolarPosition(
-              dateTime, coord.latitude(), coord.longitude(), elevation, deltaT);
-      case GRENA3 ->
-          Grena3.calculateSolarPosition(dateTime, coord.latitude(), coord.longitude(), deltaT);
-    };
+      int point = firstRow * grid.columns() + k;
+      double zenith = result.zenith()[k];
+      return new PositionData(
+          grid.latitudeOf(point),
+          grid.longitudeOf(point),
+          elevation,
+          pressure,
+          temperature,
+          context.dateTime(),
+          context.deltaT(),
+          result.azimuth()[k],
+          zenith,
+          90.0 - zenith);
+    }
   }
 
   private void validate() {
@@ -0,0 +1,106 @@
+package net.e175.klaus.solarpos;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import net.e175.klaus.formatter.ByteSink;
+import net.e175.klaus.solarpositioning.SPA;
+import net.e175.klaus.solarpositioning.SunriseResult;
+import picocli.CommandLine;
+
+@CommandLine.Command(
+    name = "precompute",
+    description =
+        "Precomputes sunrise, transit, sunset and twilight times of sites and days to a table for sunrise --table, e.g. solarpos --output=sun.tbl @sites.txt 2026 precompute.")
+final class PrecomputeCommand implements Callable<Integer> {
+
+  @CommandLine.ParentCommand Main parent;
+
+  @Override
+  public Integer call() {
+    parent.validate();
+    if (parent.isPairedData()) {
+      throw new IllegalArgumentException(
+          "precompute takes sites and dates, not paired data, e.g. @sites.txt 2026");
+    }
+    if (!parent.hasByteOutput()) {
+      throw new IllegalArgumentException("precompute writes binary data, use --output=<file>");
+    }
+
+    final PerformanceTracker tracker = parent.startPerformanceTracker();
+    final BatchEvent batch = BatchEvent.begin("precompute", parent.parallel);
+    final SunriseTable.Header header = createHeader();
+
+    try (ByteSink out = batch.output(parent.openOutput())) {
+      SunriseTable.write(
+          header,
+          site -> batch.count(PerformanceTracker.wrapIfNeeded(tracker, createRows(header, site))),
+          parent.parallel,
+          out);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to write output", e);
+    }
+
+    batch.finish();
+    PerformanceTracker.reportIfNeeded(tracker);
+    return 0;
+  }
+
+  /** Covers the distinct input sites and every day from the first to the last input date. */
+  private SunriseTable.Header createHeader() {
+    List<CoordinatePair> sites;
+    try (var coordinates = parent.getCoordinatesStream()) {
+      sites = coordinates.distinct().toList();
+    }
+    List<ZonedDateTime> dateTimes;
+    try (var times = parent.getDateTimesStream(Duration.ofDays(1))) {
+      dateTimes = times.toList();
+    }
+    if (sites.isEmpty() || dateTimes.isEmpty()) {
+      throw new IllegalArgumentException("precompute needs at least one site and date");
+    }
+
+    ZoneId zone = dateTimes.getFirst().getZone();
+    if (dateTimes.stream().anyMatch(dateTime -> !dateTime.getZone().equals(zone))) {
+      throw new IllegalArgumentException(
+          "precompute needs all dates in one zone, use --timezone=<zone>");
+    }
+    LocalDate first =
+        dateTimes.stream().map(ZonedDateTime::toLocalDate).min(Comparator.naturalOrder()).get();
+    LocalDate last =
+        dateTimes.stream().map(ZonedDateTime::toLocalDate).max(Comparator.naturalOrder()).get();
+    long days = ChronoUnit.DAYS.between(first, last) + 1;
+    if (days > Integer.MAX_VALUE / SunriseTable.RECORD_SIZE) {
+      throw new IllegalArgumentException("precompute covers at most a few million days per site");
+    }
+
+    return new SunriseTable.Header(parent.deltaT, zone, first, (int) days, sites);
+  }
+
+  private Stream<Supplier<Map<SPA.Horizon, SunriseResult>>> createRows(
+      SunriseTable.Header header, CoordinatePair site) {
+    return header
+        .firstDay()
+        .datesUntil(header.lastDay().plusDays(1))
+        .<Supplier<Map<SPA.Horizon, SunriseResult>>>map(
+            date -> () -> calculate(date.atStartOfDay(header.zone()), site));
+  }
+
+  private Map<SPA.Horizon, SunriseResult> calculate(ZonedDateTime day, CoordinatePair site) {
+    return SPA.calculateSunriseTransitSet(
+        day,
+        site.latitude(),
+        site.longitude(),
+        parent.getBestGuessDeltaT(day),
+        SunriseCommand.TWILIGHT_HORIZONS);
+  }
+}
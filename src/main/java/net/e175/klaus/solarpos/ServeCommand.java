@@ -0,0 +1,239 @@
+package net.e175.klaus.solarpos;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import picocli.CommandLine;
+
+@CommandLine.Command(
+    name = "serve",
+    description = {
+      "Answers requests over a local socket, keeping the JVM warm between them.",
+      "Each request is a line with the same arguments as the command line, e.g.",
+      "  --format=csv 52.0 13.4 now position",
+      "and is answered with its output followed by a line '# ok' or '# error: <message>'.",
+      "Files (@<file>, --output, --table), convert and precompute are not available."
+    })
+final class ServeCommand implements Callable<Integer> {
+  static final String OK = "# ok";
+  static final String ERROR = "# error: ";
+
+  /** Options naming files on the server. Like picocli, any prefix of their names matches. */
+  private static final List<String> FILE_OPTIONS = List.of("output", "table");
+
+  /** Commands that write files or start another server. */
+  private static final Set<String> UNAVAILABLE_COMMANDS =
+      Set.of("convert", "precompute", "serve", "http");
+
+  /**
+   * Command lines of finished requests, for reuse by one request at a time. Building one reflects
+   * over every command and takes longer than answering a short request.
+   */
+  private static final Queue<CommandLine> IDLE_COMMAND_LINES = new ConcurrentLinkedQueue<>();
+
+  @CommandLine.Option(
+      names = {"--port"},
+      description =
+          "TCP port to listen on at the loopback address; 0 picks a free port. Default: ${DEFAULT-VALUE}.",
+      defaultValue = "0")
+  int port;
+
+  @CommandLine.Option(
+      names = {"--socket"},
+      paramLabel = "<path>",
+      description = "Listen on this Unix domain socket instead of a TCP port.")
+  Optional<Path> socket;
+
+  @CommandLine.Option(
+      names = {"--sunrise-cache"},
+      paramLabel = "<entries>",
+      description =
+          "Sunrise results kept for reuse between requests; 0 disables. Default: ${DEFAULT-VALUE}.",
+      defaultValue = "65536")
+  int sunriseCacheEntries;
+
+  @Override
+  public Integer call() throws IOException {
+    try (var server = open()) {
+      System.err.println("Listening on " + server.getLocalAddress());
+      serve(server, Caches.forServer(sunriseCacheEntries));
+    } finally {
+      if (socket.isPresent()) {
+        Files.deleteIfExists(socket.get());
+      }
+    }
+    return 0;
+  }
+
+  private ServerSocketChannel open() throws IOException {
+    if (socket.isPresent()) {
+      return ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+          .bind(UnixDomainSocketAddress.of(socket.get()));
+    }
+    return ServerSocketChannel.open()
+        .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+  }
+
+  /**
+   * Answers connections to {@code server} on virtual threads until it is closed. Requests share the
+   * caches.
+   */
+  static void serve(ServerSocketChannel server, Caches caches) throws IOException {
+    var executor = Executors.newVirtualThreadPerTaskExecutor();
+    try {
+      while (true) {
+        SocketChannel client;
+        try {
+          client = server.accept();
+        } catch (ClosedChannelException e) {
+          return;
+        }
+        if (client.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+          // a response is written in several parts, the last of which would wait for an ACK
+          client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        executor.execute(() -> handle(client, caches));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void handle(SocketChannel client, Caches caches) {
+    var connection = new Connection(client);
+    try (client;
+        var in =
+            new BufferedReader(
+                Channels.newReader(client, StandardCharsets.UTF_8.newDecoder(), -1));
+        var out =
+            new PrintWriter(
+                Channels.newWriter(connection, StandardCharsets.UTF_8.newEncoder(), -1))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        var request = line.strip();
+        if (request.isEmpty() || request.startsWith("#")) {
+          continue;
+        }
+        var err = new StringWriter();
+        int exitCode = execute(request.split("\\s+"), connection, caches, err);
+        if (connection.lineOpen) {
+          out.print('\n'); // e.g. JSON Lines output has no final newline
+        }
+        out.print(exitCode == 0 ? OK : ERROR + firstLine(err.toString()));
+        out.print('\n');
+        out.flush();
+      }
+    } catch (IOException | UncheckedIOException e) {
+      // the client went away
+    }
+  }
+
+  /**
+   * Runs the command line {@code args} of one request, writing results to {@code output} and error
+   * messages to {@code err}, and returns the exit code.
+   */
+  static int execute(String[] args, WritableByteChannel output, Caches caches, StringWriter err) {
+    try {
+      checkRequest(args);
+    } catch (IllegalArgumentException e) {
+      err.write(e.getMessage());
+      return 2;
+    }
+    var out = new PrintWriter(Channels.newWriter(output, StandardCharsets.UTF_8.newEncoder(), -1));
+    var commandLine = IDLE_COMMAND_LINES.poll();
+    if (commandLine == null) {
+      commandLine = Main.createCommandLine();
+    }
+    commandLine.<Main>getCommand().prepare(caches, output);
+    commandLine.setOut(out);
+    commandLine.setErr(new PrintWriter(err));
+    int exitCode = commandLine.execute(Main.preprocessCoordinateFileArgs(args));
+    out.flush();
+    IDLE_COMMAND_LINES.add(commandLine);
+    return exitCode;
+  }
+
+  /**
+   * Rejects the arguments of a client's request to either server that would read or write files
+   * with the server's privileges, or start another server. Checked before parsing, so nothing of
+   * them is ever acted on.
+   *
+   * @throws IllegalArgumentException naming the first such argument
+   */
+  static void checkRequest(String[] args) {
+    for (var arg : args) {
+      int eq = arg.indexOf('=');
+      var value = eq < 0 ? arg : arg.substring(eq + 1);
+      if (arg.startsWith("@")
+          || value.startsWith("@")
+          || UNAVAILABLE_COMMANDS.contains(arg)
+          || isFileOption(eq < 0 ? arg : arg.substring(0, eq))) {
+        throw new IllegalArgumentException("Not available in server mode: " + arg);
+      }
+    }
+  }
+
+  private static boolean isFileOption(String name) {
+    if (!name.startsWith("--") || name.length() == 2) {
+      return false;
+    }
+    var abbreviation = name.substring(2);
+    return FILE_OPTIONS.stream().anyMatch(option -> option.startsWith(abbreviation));
+  }
+
+  static String firstLine(String text) {
+    return text.strip().lines().findFirst().orElse("failed");
+  }
+
+  /** Output to a client, remembering whether it ended in the middle of a line. */
+  private static final class Connection implements WritableByteChannel {
+    private final SocketChannel client;
+    boolean lineOpen;
+
+    Connection(SocketChannel client) {
+      this.client = client;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      int written = client.write(src);
+      if (written > 0) {
+        lineOpen = src.get(src.position() - 1) != '\n';
+      }
+      return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return client.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      client.close();
+    }
+  }
+}
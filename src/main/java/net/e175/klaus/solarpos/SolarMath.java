@@ -0,0 +1,26 @@
+package net.e175.klaus.solarpos;
+
+/**
+ * Helpers of the SPA library that the kernels here repeat, with the library's exact arithmetic so
+ * that results stay bit-identical.
+ */
+final class SolarMath {
+  private SolarMath() {}
+
+  /** {@code degrees} limited to {@code [0, max)}. */
+  static double limitTo(double degrees, double max) {
+    double dividedDegrees = degrees / max;
+    double limited = max * (dividedDegrees - Math.floor(dividedDegrees));
+    return limited < 0 ? limited + max : limited;
+  }
+
+  /** Whether the library applies its refraction correction for these atmospheric conditions. */
+  static boolean refractionUsable(double pressure, double temperature) {
+    return Double.isFinite(pressure)
+        && Double.isFinite(temperature)
+        && pressure > 0
+        && pressure < 3000
+        && temperature > -273
+        && temperature < 273;
+  }
+}
@@ -0,0 +1,118 @@
+package net.e175.klaus.solarpos;
+
+import net.e175.klaus.solarpositioning.SPA;
+
+/**
+ * Batch version of {@link SPA#calculateSolarPositionWithTimeDependentParts} for many coordinates
+ * sharing one timestamp. Works on primitive arrays, with time-only and coordinate-only terms
+ * hoisted out of the per-point loop, and produces bit-identical results: the arithmetic follows the
+ * library's evaluation order exactly.
+ */
+final class SpaBatch {
+  private static final double SUN_RADIUS_DEGREES = -0.83337;
+
+  private SpaBatch() {}
+
+  /**
+   * Calculates topocentric azimuth and zenith angle for {@code length} coordinates starting at
+   * {@code offset} in {@code latitude} and {@code longitude}. Results are written to {@code
+   * azimuth} and {@code zenith} starting at index 0. Pass NaN pressure and temperature to skip
+   * refraction correction.
+   */
+  static void calculate(
+      SPA.SpaTimeDependent time,
+      double[] latitude,
+      double[] longitude,
+      int offset,
+      int length,
+      double elevation,
+      double pressure,
+      double temperature,
+      double[] azimuth,
+      double[] zenith) {
+    var points = GridGeometry.of(latitude, longitude, offset, length, elevation);
+    calculate(time, points, 0, points.rows(), pressure, temperature, azimuth, zenith);
+  }
+
+  /**
+   * Calculates topocentric azimuth and zenith angle for {@code rowCount} rows of {@code grid},
+   * starting at {@code firstRow}. Results are written to {@code azimuth} and {@code zenith}
+   * starting at index 0, in point order. The hour angle terms are computed once per longitude and
+   * the coordinate-only terms come from the grid, so only the parallax and topocentric terms remain
+   * per point.
+   */
+  static void calculate(
+      SPA.SpaTimeDependent time,
+      GridGeometry grid,
+      int firstRow,
+      int rowCount,
+      double pressure,
+      double temperature,
+      double[] azimuth,
+      double[] zenith) {
+    if (rowCount == 0) return;
+
+    final double xi = Math.toRadians(8.794 / (3600.0 * time.r()));
+    final double sinXi = Math.sin(xi);
+    final double deltaRad = Math.toRadians(time.deltaDegrees());
+    final double sinDelta = Math.sin(deltaRad);
+    final double cosDelta = Math.cos(deltaRad);
+    final boolean refraction = SolarMath.refractionUsable(pressure, temperature);
+    final int columns = grid.columns();
+
+    // local hour angle for every longitude used by these rows
+    final int firstLongitude = grid.firstLongitude(firstRow);
+    final int longitudeCount =
+        grid.firstLongitude(firstRow + rowCount - 1) + columns - firstLongitude;
+    final double[] h = new double[longitudeCount];
+    final double[] sinH = new double[longitudeCount];
+    final double[] cosH = new double[longitudeCount];
+    for (int j = 0; j < longitudeCount; j++) {
+      h[j] =
+          SolarMath.limitTo(
+              time.nuDegrees() + grid.longitude(firstLongitude + j) - time.alphaDegrees(), 360.0);
+      final double hRad = Math.toRadians(h[j]);
+      sinH[j] = Math.sin(hRad);
+      cosH[j] = Math.cos(hRad);
+    }
+
+    int k = 0;
+    for (int row = firstRow; row < firstRow + rowCount; row++) {
+      final double sinPhi = grid.sinLatitude[row];
+      final double cosPhi = grid.cosLatitude[row];
+      final double x = grid.parallaxX[row];
+      final double y = grid.parallaxY[row];
+      final int rowLongitude = grid.firstLongitude(row) - firstLongitude;
+
+      for (int j = rowLongitude; j < rowLongitude + columns; j++, k++) {
+        // parallax in right ascension
+        final double denominator = cosDelta - x * sinXi * cosH[j];
+        final double deltaAlpha = Math.toDegrees(Math.atan2(-x * sinXi * sinH[j], denominator));
+        final double deltaPrime =
+            Math.atan2((sinDelta - y * sinXi) * Math.cos(Math.toRadians(deltaAlpha)), denominator);
+        final double hPrime = Math.toRadians(h[j] - deltaAlpha);
+
+        // topocentric elevation, zenith and azimuth
+        final double cosHPrime = Math.cos(hPrime);
+        final double e0 =
+            Math.asin(sinPhi * Math.sin(deltaPrime) + cosPhi * Math.cos(deltaPrime) * cosHPrime);
+        zenith[k] = zenithAngle(Math.toDegrees(e0), refraction, pressure, temperature);
+
+        final double gamma =
+            Math.atan2(Math.sin(hPrime), cosHPrime * sinPhi - Math.tan(deltaPrime) * cosPhi);
+        azimuth[k] =
+            SolarMath.limitTo(SolarMath.limitTo(Math.toDegrees(gamma), 360.0) + 180.0, 360.0);
+      }
+    }
+  }
+
+  private static double zenithAngle(
+      double e0Degrees, boolean refraction, double pressure, double temperature) {
+    if (refraction && e0Degrees > SUN_RADIUS_DEGREES) {
+      double pressureTerm = pressure / 1010.0 * (283.0 / (273.0 + temperature));
+      double tangent = Math.tan(Math.toRadians(e0Degrees + 10.3 / (e0Degrees + 5.11)));
+      return 90.0 - e0Degrees - pressureTerm * 1.02 / (60.0 * tangent);
+    }
+    return 90.0 - e0Degrees;
+  }
+}
@@ -0,0 +1,121 @@
+package net.e175.klaus.solarpos;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import net.e175.klaus.solarpositioning.SPA;
+import net.e175.klaus.solarpositioning.SunriseResult;
+
+/**
+ * Memoizes {@link SPA#calculateSunriseTransitSet}, which takes several full SPA evaluations per
+ * horizon, for callers that ask for the same sites and days over and over, such as a long stdin
+ * stream or a server.
+ *
+ * <p>Results are keyed by the day of the date/time in its zone (the time of day does not matter to
+ * the calculation), the location quantized to {@link #QUANTUM} degrees, delta T and the set of
+ * horizons. The cache is split into segments by key hash, each a small LRU map with its own lock,
+ * so worker threads rarely wait for each other. Results are computed outside the lock; two threads
+ * missing on the same key both compute it, with the same result.
+ */
+final class SunriseCache {
+  /** Locations closer than this, in degrees (about 1 cm), share results. */
+  static final double QUANTUM = 1e-7;
+
+  private static final int SEGMENTS = 16;
+
+  private record Key(
+      int latitude, int longitude, ZonedDateTime day, long deltaTBits, int horizons) {}
+
+  /** Hits and misses so far, and the number of entries. */
+  record Stats(long hits, long misses, long size) {
+    Stats since(Stats start) {
+      return new Stats(hits - start.hits, misses - start.misses, size);
+    }
+  }
+
+  private final Segment[] segments = new Segment[SEGMENTS];
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /** Creates a cache of at most {@code capacity} results, at least one per segment. */
+  SunriseCache(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1");
+    }
+    int perSegment = Math.max(1, capacity / SEGMENTS);
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(perSegment);
+    }
+  }
+
+  Map<SPA.Horizon, SunriseResult> calculate(
+      ZonedDateTime dateTime,
+      double latitude,
+      double longitude,
+      double deltaT,
+      SPA.Horizon[] horizons) {
+    var key =
+        new Key(
+            quantize(latitude),
+            quantize(longitude),
+            dateTime.truncatedTo(ChronoUnit.DAYS),
+            Double.doubleToLongBits(deltaT),
+            horizonBits(horizons));
+    var segment = segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+
+    Map<SPA.Horizon, SunriseResult> result;
+    synchronized (segment) {
+      result = segment.get(key);
+    }
+    if (result != null) {
+      hits.increment();
+      return result;
+    }
+
+    misses.increment();
+    result = SPA.calculateSunriseTransitSet(dateTime, latitude, longitude, deltaT, horizons);
+    synchronized (segment) {
+      segment.put(key, result);
+    }
+    return result;
+  }
+
+  Stats stats() {
+    long size = 0;
+    for (var segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return new Stats(hits.sum(), misses.sum(), size);
+  }
+
+  private static int quantize(double degrees) {
+    return (int) Math.round(degrees / QUANTUM);
+  }
+
+  private static int horizonBits(SPA.Horizon[] horizons) {
+    int bits = 0;
+    for (var horizon : horizons) {
+      bits |= 1 << horizon.ordinal();
+    }
+    return bits;
+  }
+
+  /** Access-ordered map evicting its least recently used entry beyond {@code capacity}. */
+  private static final class Segment extends LinkedHashMap<Key, Map<SPA.Horizon, SunriseResult>> {
+    private final int capacity;
+
+    Segment(int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Map<SPA.Horizon, SunriseResult>> eldest) {
+      return size() > capacity;
+    }
+  }
+}
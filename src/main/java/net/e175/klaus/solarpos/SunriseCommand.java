@@ -3,13 +3,18 @@ package net.e175.klaus.solarpos;
 import static net.e175.klaus.solarpos.Main.Format.HUMAN;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Path;
 import java.time.*;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import net.e175.klaus.formatter.ByteSink;
 import net.e175.klaus.formatter.FieldDescriptor;
 import net.e175.klaus.formatter.StreamingFormatter;
+import net.e175.klaus.solarpos.util.DateTimeIterator;
 import net.e175.klaus.solarpos.util.TimeFormats;
 import net.e175.klaus.solarpositioning.SPA;
 import net.e175.klaus.solarpositioning.SunriseResult;
@@ -20,8 +25,8 @@ import picocli.CommandLine;
     description = "Calculates sunrise, transit, sunset and (optionally) twilight times.")
 final class SunriseCommand implements Callable<Integer> {
 
-  private static final SPA.Horizon[] BASIC_HORIZONS = {SPA.Horizon.SUNRISE_SUNSET};
-  private static final SPA.Horizon[] TWILIGHT_HORIZONS = {
+  static final SPA.Horizon[] BASIC_HORIZONS = {SPA.Horizon.SUNRISE_SUNSET};
+  static final SPA.Horizon[] TWILIGHT_HORIZONS = {
     SPA.Horizon.SUNRISE_SUNSET,
     SPA.Horizon.CIVIL_TWILIGHT,
     SPA.Horizon.NAUTICAL_TWILIGHT,
@@ -59,54 +64,118 @@ final class SunriseCommand implements Callable<Integer> {
       description = "Show twilight times.")
   boolean twilight;
 
+  @CommandLine.Option(
+      names = {"--cache"},
+      paramLabel = "<entries>",
+      description =
+          "Keep up to this many results for reuse when the same locations and days repeat, "
+              + "e.g. in a stream on stdin. Default: no cache.",
+      defaultValue = "0")
+  int cacheEntries;
+
+  @CommandLine.Option(
+      names = {"--table"},
+      paramLabel = "<file>",
+      description =
+          "Answer from a table written by precompute where it covers the site, day and time zone.")
+  Optional<Path> tablePath;
+
+  @CommandLine.Option(
+      names = {"--shared-day-terms"},
+      description =
+          "For ranges and coordinate files, compute the location-independent terms of each day once for all coordinates, and derive them from the previous day's in date ranges. Faster for large grids and long series, but times may differ from the default by fractions of a second.")
+  boolean sharedDayTerms;
+
+  /** Cache of sunrise results for this run, or null. */
+  private SunriseCache cache;
+
+  /** Precomputed sunrise results, or null. */
+  private SunriseTable table;
+
   @Override
   public Integer call() {
     parent.validate();
 
     final SPA.Horizon[] horizons = twilight ? TWILIGHT_HORIZONS : BASIC_HORIZONS;
-    final PrintWriter out = parent.spec.commandLine().getOut();
-    final PerformanceTracker tracker = PerformanceTracker.create(parent.showPerformance);
+    final PerformanceTracker tracker = parent.startPerformanceTracker();
+    final BatchEvent batch = BatchEvent.begin("sunrise", parent.parallel);
+    cache = parent.getSunriseCache(cacheEntries);
+    table = tablePath.map(SunriseTable::open).orElse(null);
+    if (table != null) {
+      table.checkDeltaT(parent.deltaT);
+    }
+    PerformanceTracker.watchIfNeeded(tracker, cache);
 
-    try {
+    try (ByteSink out = batch.output(parent.openOutput())) {
       List<FieldDescriptor<SunriseData>> fields = createFields();
       List<String> fieldNames = getFieldNames(parent.shouldShowInputs(), twilight);
       StreamingFormatter<SunriseData> formatter = createFormatter(parent.format);
 
-      Stream<SunriseData> resultStream;
-      if (parent.isPairedData()) {
-        // Use paired processing for 1:1 coordinate-time correspondence
-        var stream = parent.getPairedDataStream();
-        resultStream =
-            (parent.parallel ? stream.parallel() : stream)
-                .map(pair -> calculateSunriseData(pair.dateTime(), pair.coordinates(), horizons));
+      if (parent.isPairedData() && parent.parallel) {
+        // Read, compute and format byte-range chunks of the input file on worker threads
+        var chunks =
+            parent
+                .getPairedDataChunks(DateTimeIterator.TimePrecision.DATE_SUFFICIENT)
+                .map(
+                    chunk ->
+                        batch.count(
+                            PerformanceTracker.wrapIfNeeded(
+                                tracker, chunk.map(pairedRow(horizons)))));
+        parent.formatChunks(formatter, fields, fieldNames, chunks, out);
       } else {
-        // Use Cartesian product for separate coordinate/time inputs
-        var timeStream = parent.getDateTimesStream(Duration.ofDays(1));
-        resultStream =
-            (parent.parallel ? timeStream.parallel() : timeStream)
-                .flatMap(
-                    dt ->
-                        parent
-                            .getCoordinatesStream()
-                            .map(coord -> calculateSunriseData(dt, coord, horizons)));
+        var rows = batch.count(PerformanceTracker.wrapIfNeeded(tracker, createRows(horizons)));
+        parent.formatRows(formatter, fields, fieldNames, rows, out);
       }
-
-      resultStream = PerformanceTracker.wrapIfNeeded(tracker, resultStream);
-      formatter.format(fields, fieldNames, resultStream, out);
     } catch (IOException e) {
       throw new RuntimeException("Failed to format output", e);
     }
 
+    batch.finish();
     PerformanceTracker.reportIfNeeded(tracker);
-    out.flush();
     return 0;
   }
 
+  private Stream<Supplier<SunriseData>> createRows(SPA.Horizon[] horizons) {
+    if (parent.isPairedData()) {
+      // Use paired processing for 1:1 coordinate-time correspondence
+      return parent.getPairedDataStream().map(pairedRow(horizons));
+    }
+    // Use Cartesian product for separate coordinate/time inputs
+    if (sharedDayTerms) {
+      var previous = new AtomicReference<SunriseDay>();
+      return parent
+          .getDateTimesStream(Duration.ofDays(1))
+          .flatMap(
+              dt -> {
+                var day =
+                    previous.updateAndGet(
+                        p -> new SunriseDay(dt, parent.getBestGuessDeltaT(dt), p));
+                return parent
+                    .getCoordinatesStream()
+                    .<Supplier<SunriseData>>map(
+                        coord -> () -> calculateSunriseData(day, coord, horizons));
+              });
+    }
+    return parent
+        .getDateTimesStream(Duration.ofDays(1))
+        .flatMap(
+            dt ->
+                parent
+                    .getCoordinatesStream()
+                    .<Supplier<SunriseData>>map(
+                        coord -> () -> calculateSunriseData(dt, coord, horizons)));
+  }
+
+  private Function<DateTimeIterator.CoordinateTimePair, Supplier<SunriseData>> pairedRow(
+      SPA.Horizon[] horizons) {
+    return pair -> () -> calculateSunriseData(pair.dateTime(), pair.coordinates(), horizons);
+  }
+
   private List<FieldDescriptor<SunriseData>> createFields() {
     List<FieldDescriptor<SunriseData>> fields = new ArrayList<>();
 
-    fields.add(FieldDescriptor.numeric("latitude", SunriseData::latitude, 5).withUnit("°"));
-    fields.add(FieldDescriptor.numeric("longitude", SunriseData::longitude, 5).withUnit("°"));
+    fields.add(FieldDescriptor.decimal("latitude", SunriseData::latitude, 5).withUnit("°"));
+    fields.add(FieldDescriptor.decimal("longitude", SunriseData::longitude, 5).withUnit("°"));
     fields.add(
         FieldDescriptor.dateTime(
             "dateTime",
@@ -114,19 +183,19 @@ final class SunriseCommand implements Callable<Integer> {
             parent.format == HUMAN
                 ? TimeFormats.OUTPUT_DATE_TIME_HUMAN_PATTERN
                 : TimeFormats.OUTPUT_DATE_TIME_ISO_PATTERN));
-    fields.add(FieldDescriptor.numeric("deltaT", SunriseData::deltaT, 3).withUnit(" s"));
+    fields.add(FieldDescriptor.decimal("deltaT", SunriseData::deltaT, 3).withUnit(" s"));
 
     fields.add(new FieldDescriptor<>("type", SunriseData::type));
-    fields.add(new FieldDescriptor<>("sunrise", SunriseData::sunrise));
-    fields.add(new FieldDescriptor<>("transit", SunriseData::transit));
-    fields.add(new FieldDescriptor<>("sunset", SunriseData::sunset));
+    fields.add(FieldDescriptor.timestamp("sunrise", SunriseData::sunrise));
+    fields.add(FieldDescriptor.timestamp("transit", SunriseData::transit));
+    fields.add(FieldDescriptor.timestamp("sunset", SunriseData::sunset));
 
-    fields.add(new FieldDescriptor<>("civil_start", SunriseData::civilStart));
-    fields.add(new FieldDescriptor<>("civil_end", SunriseData::civilEnd));
-    fields.add(new FieldDescriptor<>("nautical_start", SunriseData::nauticalStart));
-    fields.add(new FieldDescriptor<>("nautical_end", SunriseData::nauticalEnd));
-    fields.add(new FieldDescriptor<>("astronomical_start", SunriseData::astronomicalStart));
-    fields.add(new FieldDescriptor<>("astronomical_end", SunriseData::astronomicalEnd));
+    fields.add(FieldDescriptor.timestamp("civil_start", SunriseData::civilStart));
+    fields.add(FieldDescriptor.timestamp("civil_end", SunriseData::civilEnd));
+    fields.add(FieldDescriptor.timestamp("nautical_start", SunriseData::nauticalStart));
+    fields.add(FieldDescriptor.timestamp("nautical_end", SunriseData::nauticalEnd));
+    fields.add(FieldDescriptor.timestamp("astronomical_start", SunriseData::astronomicalStart));
+    fields.add(FieldDescriptor.timestamp("astronomical_end", SunriseData::astronomicalEnd));
 
     return fields;
   }
@@ -163,12 +232,41 @@ final class SunriseCommand implements Callable<Integer> {
     return FormatterFactory.create(format, parent.headers);
   }
 
-  private SunriseData calculateSunriseData(
+  /** Package-private for the JMH benchmarks. */
+  SunriseData calculateSunriseData(
       ZonedDateTime dateTime, CoordinatePair coord, SPA.Horizon[] horizons) {
     final double deltaT = parent.getBestGuessDeltaT(dateTime);
     Map<SPA.Horizon, SunriseResult> result =
-        SPA.calculateSunriseTransitSet(
-            dateTime, coord.latitude(), coord.longitude(), deltaT, horizons);
+        table != null ? table.lookup(dateTime, coord, horizons) : null;
+    if (result == null) {
+      result =
+          cache != null
+              ? cache.calculate(dateTime, coord.latitude(), coord.longitude(), deltaT, horizons)
+              : SPA.calculateSunriseTransitSet(
+                  dateTime, coord.latitude(), coord.longitude(), deltaT, horizons);
+    }
+    return createSunriseData(dateTime, coord, deltaT, horizons, result);
+  }
+
+  /**
+   * Like {@link #calculateSunriseData(ZonedDateTime, CoordinatePair, SPA.Horizon[])}, sharing the
+   * location-independent terms of the day. The cache is not used, as it holds exact results.
+   */
+  SunriseData calculateSunriseData(SunriseDay day, CoordinatePair coord, SPA.Horizon[] horizons) {
+    Map<SPA.Horizon, SunriseResult> result =
+        table != null ? table.lookup(day.dateTime(), coord, horizons) : null;
+    if (result == null) {
+      result = day.calculate(coord.latitude(), coord.longitude(), horizons);
+    }
+    return createSunriseData(day.dateTime(), coord, day.deltaT(), horizons, result);
+  }
+
+  private SunriseData createSunriseData(
+      ZonedDateTime dateTime,
+      CoordinatePair coord,
+      double deltaT,
+      SPA.Horizon[] horizons,
+      Map<SPA.Horizon, SunriseResult> result) {
 
     SunriseResult sunriseSunset = result.get(SPA.Horizon.SUNRISE_SUNSET);
 
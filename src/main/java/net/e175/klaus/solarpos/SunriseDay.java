@@ -0,0 +1,237 @@
+package net.e175.klaus.solarpos;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.Map;
+import net.e175.klaus.solarpositioning.SPA;
+import net.e175.klaus.solarpositioning.SunriseResult;
+
+/**
+ * The location-independent part of a sunrise calculation for one day, shared by every coordinate of
+ * that day in a sweep: the apparent sidereal time at the start of the day and the geocentric right
+ * ascension and declination 24 hours before, at and after it (SPA, appendix A.2). Like {@link
+ * SPA#calculateSunriseTransitSet}, the day starts at midnight in the zone of the input, and times
+ * are counted from there. Per coordinate, only the hour angle and altitude terms remain.
+ *
+ * <p>The library keeps these terms internal and takes the nutation of the day itself for all three
+ * days. Here each day's terms come from {@link SPA#calculateSpaTimeDependentParts} with its own
+ * nutation, so times can differ from {@link SPA#calculateSunriseTransitSet} by fractions of a
+ * second. As with {@link TimeContext}, the terms are computed on first use, and a racing duplicate
+ * computation is harmless.
+ *
+ * <p>For consecutive days, the terms of the next day are mostly those of the previous one: when
+ * that day's terms are already there and it started 24 hours before (not across a change of the
+ * zone's offset), only the ephemeris of the day after is computed, with the same results as
+ * computing all three. Where the sun only just reaches or misses a horizon, the day's terms are too
+ * coarse to tell reliably, so that horizon is left to the library.
+ */
+final class SunriseDay {
+  private static final double NANOS_PER_DAY = 86_400e9;
+  private static final long SECONDS_PER_DAY = 86_400;
+
+  /**
+   * Margin of {@code cos H0} to ±1 within which a horizon is computed by the library: a rise or set
+   * less than about 11° of hour angle from transit or its opposite, where the altitude correction
+   * amplifies the small differences in the terms.
+   */
+  static final double NEAR_POLAR = 0.02;
+
+  private final ZonedDateTime dateTime;
+  private final double deltaT;
+  private volatile Terms terms;
+  private volatile SunriseDay previous;
+
+  /**
+   * Sidereal time {@code nu}, right ascension {@code alpha} and declination {@code delta} of the
+   * day, and their differences from the previous ({@code *A}) and to the next ({@code *B}) day. The
+   * ephemerides of the day and the next one are kept to continue with the day after.
+   */
+  private record Terms(
+      ZonedDateTime dayStart,
+      SPA.SpaTimeDependent day,
+      SPA.SpaTimeDependent after,
+      double nu,
+      double alpha,
+      double delta,
+      double alphaA,
+      double alphaB,
+      double deltaA,
+      double deltaB) {
+
+    static Terms of(ZonedDateTime dayStart) {
+      return of(
+          dayStart,
+          SPA.calculateSpaTimeDependentParts(dayStart.minusSeconds(SECONDS_PER_DAY), 0),
+          SPA.calculateSpaTimeDependentParts(dayStart, 0),
+          SPA.calculateSpaTimeDependentParts(dayStart.plusSeconds(SECONDS_PER_DAY), 0));
+    }
+
+    /** Whether {@code nextStart} is 24 hours after this day's start, so {@link #next} applies. */
+    boolean precedes(ZonedDateTime nextStart) {
+      return dayStart.plusSeconds(SECONDS_PER_DAY).toInstant().equals(nextStart.toInstant());
+    }
+
+    /** The terms of the following day, reusing two of the three ephemerides. */
+    Terms next(ZonedDateTime nextStart) {
+      return of(
+          nextStart,
+          day,
+          after,
+          SPA.calculateSpaTimeDependentParts(nextStart.plusSeconds(SECONDS_PER_DAY), 0));
+    }
+
+    private static Terms of(
+        ZonedDateTime dayStart,
+        SPA.SpaTimeDependent before,
+        SPA.SpaTimeDependent day,
+        SPA.SpaTimeDependent after) {
+      return new Terms(
+          dayStart,
+          day,
+          after,
+          day.nuDegrees(),
+          day.alphaDegrees(),
+          day.deltaDegrees(),
+          limitDifference(day.alphaDegrees() - before.alphaDegrees()),
+          limitDifference(after.alphaDegrees() - day.alphaDegrees()),
+          limitDifference(day.deltaDegrees() - before.deltaDegrees()),
+          limitDifference(after.deltaDegrees() - day.deltaDegrees()));
+    }
+  }
+
+  SunriseDay(ZonedDateTime dateTime, double deltaT) {
+    this(dateTime, deltaT, null);
+  }
+
+  /**
+   * A day whose terms are derived from those of {@code previous} if that is the day before and its
+   * terms have been computed by then.
+   */
+  SunriseDay(ZonedDateTime dateTime, double deltaT, SunriseDay previous) {
+    this.dateTime = dateTime;
+    this.deltaT = deltaT;
+    this.previous = previous;
+  }
+
+  ZonedDateTime dateTime() {
+    return dateTime;
+  }
+
+  double deltaT() {
+    return deltaT;
+  }
+
+  private Terms terms() {
+    var result = terms;
+    if (result == null) {
+      var dayStart = dateTime.truncatedTo(ChronoUnit.DAYS);
+      var before = previous != null ? previous.terms : null;
+      result =
+          before != null && before.precedes(dayStart) ? before.next(dayStart) : Terms.of(dayStart);
+      terms = result;
+      previous = null;
+    }
+    return result;
+  }
+
+  /** {@link SPA#calculateSunriseTransitSet} for this day, up to fractions of a second. */
+  Map<SPA.Horizon, SunriseResult> calculate(
+      double latitude, double longitude, SPA.Horizon[] horizons) {
+    final Terms t = terms();
+    final double phi = Math.toRadians(latitude);
+    final double sinPhi = Math.sin(phi);
+    final double cosPhi = Math.cos(phi);
+    final double deltaRad = Math.toRadians(t.delta());
+
+    // A.2.3 and A.2.11: transit, the same for every horizon
+    final double m0 = SolarMath.limitTo((t.alpha() - longitude - t.nu()) / 360.0, 1.0);
+    final ZonedDateTime transit = time(t, m0 - hourAngle(t, m0, longitude) / 360.0);
+
+    var result = new EnumMap<SPA.Horizon, SunriseResult>(SPA.Horizon.class);
+    for (var horizon : horizons) {
+      final double h0Prime = elevation(horizon);
+
+      // A.2.4: local hour angle of the horizon crossing, if there is one
+      final double cosH0 =
+          (Math.sin(Math.toRadians(h0Prime)) - sinPhi * Math.sin(deltaRad))
+              / (cosPhi * Math.cos(deltaRad));
+      // close to polar day or night, the sign of the difference is not reliable
+      if (Math.abs(cosH0) > 1.0 - NEAR_POLAR) {
+        result.putAll(
+            SPA.calculateSunriseTransitSet(
+                dateTime, latitude, longitude, deltaT, new SPA.Horizon[] {horizon}));
+        continue;
+      }
+      if (cosH0 < -1.0) {
+        result.put(horizon, new SunriseResult.AllDay(transit));
+        continue;
+      }
+      if (cosH0 > 1.0) {
+        result.put(horizon, new SunriseResult.AllNight(transit));
+        continue;
+      }
+      final double h0 = SolarMath.limitTo(Math.toDegrees(Math.acos(cosH0)), 180.0);
+
+      // A.2.5 to A.2.13: sunrise and sunset, corrected by the sun's altitude at the estimates
+      final double m1 = SolarMath.limitTo(m0 - h0 / 360.0, 1.0);
+      final double m2 = SolarMath.limitTo(m0 + h0 / 360.0, 1.0);
+      result.put(
+          horizon,
+          new SunriseResult.RegularDay(
+              time(t, m1 + correction(t, m1, longitude, sinPhi, cosPhi, h0Prime)),
+              transit,
+              time(t, m2 + correction(t, m2, longitude, sinPhi, cosPhi, h0Prime))));
+    }
+    return result;
+  }
+
+  /** A.2.9: local hour angle H' in degrees at fraction of day {@code m}. */
+  private double hourAngle(Terms t, double m, double longitude) {
+    final double n = m + deltaT / 86400.0;
+    final double nu = t.nu() + 360.985647 * m;
+    final double alphaPrime =
+        t.alpha() + n * (t.alphaA() + t.alphaB() + (t.alphaB() - t.alphaA()) * n) / 2.0;
+    return limitToHalfCircle(nu + longitude - alphaPrime);
+  }
+
+  /** A.2.8 to A.2.13: correction of the rise or set estimate {@code m}. */
+  private double correction(
+      Terms t, double m, double longitude, double sinPhi, double cosPhi, double h0Prime) {
+    final double n = m + deltaT / 86400.0;
+    final double deltaPrime =
+        Math.toRadians(
+            t.delta() + n * (t.deltaA() + t.deltaB() + (t.deltaB() - t.deltaA()) * n) / 2.0);
+    final double hPrime = Math.toRadians(hourAngle(t, m, longitude));
+    final double cosDeltaPrime = Math.cos(deltaPrime);
+    final double altitude =
+        Math.toDegrees(
+            Math.asin(sinPhi * Math.sin(deltaPrime) + cosPhi * cosDeltaPrime * Math.cos(hPrime)));
+    return (altitude - h0Prime) / (360.0 * cosDeltaPrime * cosPhi * Math.sin(hPrime));
+  }
+
+  private static ZonedDateTime time(Terms t, double fractionOfDay) {
+    return t.dayStart().plusNanos(Math.round(fractionOfDay * NANOS_PER_DAY));
+  }
+
+  /** Altitude h0' of the sun's centre at the horizon crossing, in degrees. */
+  private static double elevation(SPA.Horizon horizon) {
+    return switch (horizon) {
+      case SUNRISE_SUNSET -> -0.83337;
+      case CIVIL_TWILIGHT -> -6.0;
+      case NAUTICAL_TWILIGHT -> -12.0;
+      case ASTRONOMICAL_TWILIGHT -> -18.0;
+      default -> throw new IllegalArgumentException("Unsupported horizon: " + horizon);
+    };
+  }
+
+  /** Differences beyond 2° can only be a wrap at 360°, which is taken out. */
+  private static double limitDifference(double degrees) {
+    return Math.abs(degrees) > 2.0 ? SolarMath.limitTo(degrees, 1.0) : degrees;
+  }
+
+  private static double limitToHalfCircle(double degrees) {
+    double limited = SolarMath.limitTo(degrees, 360.0);
+    return limited > 180.0 ? limited - 360.0 : limited;
+  }
+}
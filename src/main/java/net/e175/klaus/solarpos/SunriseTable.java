@@ -0,0 +1,345 @@
+package net.e175.klaus.solarpos;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import net.e175.klaus.formatter.ByteSink;
+import net.e175.klaus.solarpositioning.SPA;
+import net.e175.klaus.solarpositioning.SunriseResult;
+
+/**
+ * Precomputed sunrise results for a list of sites and a range of days, written by {@code
+ * precompute} and read by {@code sunrise --table}. Records have a fixed width and are read from a
+ * mapped file, so a lookup is a hash of the site and a few reads.
+ *
+ * <pre>
+ * header   "SOLSUNT1", float64 delta T (NaN: estimated), int64 first epoch day, int32 days,
+ *          int32 sites, int32 algorithm (0: SPA), uint16 length, UTF-8 zone id
+ * sites    per site: float64 latitude, float64 longitude
+ * padding  to a multiple of 8 bytes
+ * records  per site, per day: int8 type per horizon (0: regular, 1: all day, 2: all night),
+ *          4 bytes padding, then per horizon int64 sunrise, transit and sunset in nanoseconds
+ *          from UTC midnight of the day (or Long.MIN_VALUE for none)
+ * </pre>
+ *
+ * All numbers are little-endian and horizons are in {@link SunriseCommand#TWILIGHT_HORIZONS} order.
+ * Results are kept for the day in the table's zone, so only queries in that zone are answered from
+ * it.
+ */
+final class SunriseTable {
+  static final int ALGORITHM_SPA = 0;
+  private static final SPA.Horizon[] HORIZONS = SunriseCommand.TWILIGHT_HORIZONS;
+  private static final List<SPA.Horizon> HORIZON_ORDER = List.of(HORIZONS);
+  static final int RECORD_SIZE = 8 + HORIZONS.length * 3 * Long.BYTES;
+
+  private static final byte[] MAGIC = "SOLSUNT1".getBytes(StandardCharsets.US_ASCII);
+  private static final int FIXED_HEADER_SIZE = MAGIC.length + 8 + 8 + 4 + 4 + 4 + 2;
+  private static final int WINDOW_RECORDS = (1 << 30) / RECORD_SIZE;
+  private static final int PARALLEL_BATCH_SITES = 256;
+  private static final long NONE = Long.MIN_VALUE;
+
+  private static final byte REGULAR_DAY = 0;
+  private static final byte ALL_DAY = 1;
+  private static final byte ALL_NIGHT = 2;
+
+  /** What a table covers and how it was computed. */
+  record Header(
+      double deltaT, ZoneId zone, LocalDate firstDay, int days, List<CoordinatePair> sites) {
+
+    LocalDate lastDay() {
+      return firstDay.plusDays(days - 1L);
+    }
+  }
+
+  private final Path path;
+  private final Header header;
+  private final Map<CoordinatePair, Integer> siteIndex;
+  private final ByteBuffer[] windows;
+
+  private SunriseTable(Path path, Header header, ByteBuffer[] windows) {
+    this.path = path;
+    this.header = header;
+    this.windows = windows;
+    this.siteIndex = HashMap.newHashMap(header.sites().size());
+    for (int i = 0; i < header.sites().size(); i++) {
+      siteIndex.putIfAbsent(header.sites().get(i), i);
+    }
+  }
+
+  Header header() {
+    return header;
+  }
+
+  /**
+   * Writes a table, getting the results of each site from {@code results}: per day of {@code
+   * header}, the results for all {@link SunriseCommand#TWILIGHT_HORIZONS}. With {@code parallel},
+   * batches of sites are computed on all cores.
+   */
+  static void write(
+      Header header,
+      Function<CoordinatePair, Stream<Supplier<Map<SPA.Horizon, SunriseResult>>>> results,
+      boolean parallel,
+      ByteSink out)
+      throws IOException {
+    var zone = header.zone().getId().getBytes(StandardCharsets.UTF_8);
+    int headerSize = FIXED_HEADER_SIZE + zone.length + header.sites().size() * 16;
+    var head =
+        ByteBuffer.allocate(headerSize + padding(headerSize))
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .put(MAGIC)
+            .putDouble(header.deltaT())
+            .putLong(header.firstDay().toEpochDay())
+            .putInt(header.days())
+            .putInt(header.sites().size())
+            .putInt(ALGORITHM_SPA)
+            .putShort((short) zone.length)
+            .put(zone);
+    for (var site : header.sites()) {
+      head.putDouble(site.latitude()).putDouble(site.longitude());
+    }
+    out.write(head.array(), 0, head.capacity());
+
+    // each site is encoded on its own, so only a batch of them is held at a time
+    var sites = header.sites();
+    int batch = parallel ? PARALLEL_BATCH_SITES : 1;
+    for (int from = 0; from < sites.size(); from += batch) {
+      var siteBatch = sites.subList(from, Math.min(sites.size(), from + batch)).stream();
+      var encoded =
+          (parallel ? siteBatch.parallel() : siteBatch)
+              .map(site -> encodeSite(header, results.apply(site)))
+              .toList();
+      for (var bytes : encoded) {
+        out.write(bytes, 0, bytes.length);
+      }
+    }
+  }
+
+  private static byte[] encodeSite(
+      Header header, Stream<Supplier<Map<SPA.Horizon, SunriseResult>>> days) {
+    var buffer =
+        ByteBuffer.allocate(Math.multiplyExact(header.days(), RECORD_SIZE))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    long firstDayEpochSecond = header.firstDay().toEpochDay() * 86_400;
+    try (days) {
+      days.forEachOrdered(
+          day -> {
+            if (!buffer.hasRemaining()) {
+              throw new IllegalStateException("More results than days");
+            }
+            long dayEpochSecond = firstDayEpochSecond + buffer.position() / RECORD_SIZE * 86_400L;
+            encode(day.get(), dayEpochSecond, buffer);
+          });
+    }
+    if (buffer.hasRemaining()) {
+      throw new IllegalStateException("Expected results for " + header.days() + " days");
+    }
+    return buffer.array();
+  }
+
+  private static void encode(
+      Map<SPA.Horizon, SunriseResult> result, long dayEpochSecond, ByteBuffer buffer) {
+    for (var horizon : HORIZONS) {
+      buffer.put(
+          switch (result.get(horizon)) {
+            case SunriseResult.RegularDay ignored -> REGULAR_DAY;
+            case SunriseResult.AllDay ignored -> ALL_DAY;
+            case SunriseResult.AllNight ignored -> ALL_NIGHT;
+            case null, default -> throw new IllegalArgumentException("No result for " + horizon);
+          });
+    }
+    buffer.put(new byte[8 - HORIZONS.length]);
+    for (var horizon : HORIZONS) {
+      switch (result.get(horizon)) {
+        case SunriseResult.RegularDay(var sunrise, var transit, var sunset) -> {
+          buffer.putLong(nanos(sunrise, dayEpochSecond));
+          buffer.putLong(nanos(transit, dayEpochSecond));
+          buffer.putLong(nanos(sunset, dayEpochSecond));
+        }
+        case SunriseResult.AllDay(var transit) ->
+            buffer.putLong(NONE).putLong(nanos(transit, dayEpochSecond)).putLong(NONE);
+        case SunriseResult.AllNight(var transit) ->
+            buffer.putLong(NONE).putLong(nanos(transit, dayEpochSecond)).putLong(NONE);
+        default -> throw new IllegalStateException("Unexpected result type");
+      }
+    }
+  }
+
+  private static long nanos(ZonedDateTime time, long dayEpochSecond) {
+    return (time.toEpochSecond() - dayEpochSecond) * 1_000_000_000L + time.getNano();
+  }
+
+  private static int padding(int size) {
+    return -size & 7;
+  }
+
+  /** Opens and maps a table written by {@link #write}. */
+  static SunriseTable open(Path path) {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < FIXED_HEADER_SIZE) {
+        throw invalid(path, "file too short");
+      }
+      var fixed = read(channel, 0, FIXED_HEADER_SIZE);
+      var magic = new byte[MAGIC.length];
+      fixed.get(magic);
+      if (!Arrays.equals(magic, MAGIC)) {
+        throw invalid(path, "not a sunrise table");
+      }
+      double deltaT = fixed.getDouble();
+      long firstDay = fixed.getLong();
+      int days = fixed.getInt();
+      int siteCount = fixed.getInt();
+      int algorithm = fixed.getInt();
+      int zoneLength = Short.toUnsignedInt(fixed.getShort());
+      if (algorithm != ALGORITHM_SPA) {
+        throw invalid(path, "unknown algorithm " + algorithm);
+      }
+      if (days < 1 || siteCount < 0 || siteCount > size / 16) {
+        throw invalid(path, "bad size");
+      }
+
+      int headerSize = FIXED_HEADER_SIZE + zoneLength + siteCount * 16;
+      long recordsStart = headerSize + padding(headerSize);
+      long count = (long) siteCount * days;
+      if (size != recordsStart + count * RECORD_SIZE) {
+        throw invalid(path, "bad size");
+      }
+
+      var rest = read(channel, FIXED_HEADER_SIZE, headerSize - FIXED_HEADER_SIZE);
+      var zoneId = new byte[zoneLength];
+      rest.get(zoneId);
+      ZoneId zone;
+      try {
+        zone = ZoneId.of(new String(zoneId, StandardCharsets.UTF_8));
+      } catch (DateTimeException e) {
+        throw invalid(path, e.getMessage());
+      }
+      var sites = new ArrayList<CoordinatePair>(siteCount);
+      for (int i = 0; i < siteCount; i++) {
+        sites.add(new CoordinatePair(rest.getDouble(), rest.getDouble()));
+      }
+
+      // mappings stay valid after the channel is closed
+      var windows = new ByteBuffer[(int) ((count + WINDOW_RECORDS - 1) / WINDOW_RECORDS)];
+      for (int i = 0; i < windows.length; i++) {
+        long first = (long) i * WINDOW_RECORDS;
+        long records = Math.min(WINDOW_RECORDS, count - first);
+        windows[i] =
+            channel
+                .map(
+                    FileChannel.MapMode.READ_ONLY,
+                    recordsStart + first * RECORD_SIZE,
+                    records * RECORD_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+      }
+      var header =
+          new Header(deltaT, zone, LocalDate.ofEpochDay(firstDay), days, List.copyOf(sites));
+      return new SunriseTable(path, header, windows);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read from: " + path, e);
+    } catch (DateTimeException e) {
+      throw invalid(path, e.getMessage());
+    }
+  }
+
+  /** Rejects a table computed with a different delta T than {@code deltaT} (NaN: estimated). */
+  void checkDeltaT(double deltaT) {
+    if (Double.compare(deltaT, header.deltaT()) != 0) {
+      throw new IllegalArgumentException(
+          "Sunrise table "
+              + path
+              + " was computed with delta T "
+              + describe(header.deltaT())
+              + ", not "
+              + describe(deltaT));
+    }
+  }
+
+  private static String describe(double deltaT) {
+    return Double.isNaN(deltaT) ? "estimated" : deltaT + " s";
+  }
+
+  /**
+   * The results for {@code horizons} at a site on the day of {@code dateTime}, or null if the table
+   * does not cover them.
+   */
+  Map<SPA.Horizon, SunriseResult> lookup(
+      ZonedDateTime dateTime, CoordinatePair site, SPA.Horizon[] horizons) {
+    if (!header.zone().equals(dateTime.getZone())) {
+      return null;
+    }
+    Integer siteNumber = siteIndex.get(site);
+    long day = dateTime.toLocalDate().toEpochDay() - header.firstDay().toEpochDay();
+    if (siteNumber == null || day < 0 || day >= header.days()) {
+      return null;
+    }
+
+    long record = (long) siteNumber * header.days() + day;
+    var window = windows[(int) (record / WINDOW_RECORDS)];
+    int offset = (int) (record % WINDOW_RECORDS) * RECORD_SIZE;
+    long dayEpochSecond = dateTime.toLocalDate().toEpochDay() * 86_400;
+
+    var result = new EnumMap<SPA.Horizon, SunriseResult>(SPA.Horizon.class);
+    for (var horizon : horizons) {
+      int h = HORIZON_ORDER.indexOf(horizon);
+      if (h < 0) {
+        return null;
+      }
+      int times = offset + 8 + h * 3 * Long.BYTES;
+      var transit = time(window.getLong(times + 8), dayEpochSecond);
+      result.put(
+          horizon,
+          switch (window.get(offset + h)) {
+            case REGULAR_DAY ->
+                new SunriseResult.RegularDay(
+                    time(window.getLong(times), dayEpochSecond),
+                    transit,
+                    time(window.getLong(times + 16), dayEpochSecond));
+            case ALL_DAY -> new SunriseResult.AllDay(transit);
+            case ALL_NIGHT -> new SunriseResult.AllNight(transit);
+            default -> throw invalid(path, "bad type in record " + record);
+          });
+    }
+    return result;
+  }
+
+  private ZonedDateTime time(long nanos, long dayEpochSecond) {
+    return ZonedDateTime.ofInstant(
+        Instant.ofEpochSecond(dayEpochSecond).plusNanos(nanos), header.zone());
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    var buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+      // read until full
+    }
+    if (buffer.hasRemaining()) {
+      throw new IOException("unexpected end of file");
+    }
+    return buffer.flip();
+  }
+
+  private static IllegalArgumentException invalid(Path path, String reason) {
+    return new IllegalArgumentException("Invalid sunrise table " + path + ": " + reason);
+  }
+}
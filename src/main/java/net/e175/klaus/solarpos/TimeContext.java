@@ -0,0 +1,172 @@
+package net.e175.klaus.solarpos;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import net.e175.klaus.solarpositioning.SPA;
+import net.e175.klaus.solarpositioning.SolarPosition;
+
+/**
+ * The time-dependent part of a solar position calculation for one timestamp, shared by every
+ * coordinate evaluated at that timestamp.
+ *
+ * <p>The parts are computed on first use, so contexts are cheap to create on the thread that reads
+ * the input and get evaluated wherever positions are calculated. A racing duplicate computation
+ * yields the same value, so no locking is needed.
+ */
+final class TimeContext {
+  private final PositionCommand.Algorithm algorithm;
+  private final ZonedDateTime dateTime;
+  private final double deltaT;
+  private volatile Parts parts;
+
+  TimeContext(PositionCommand.Algorithm algorithm, ZonedDateTime dateTime, double deltaT) {
+    this.algorithm = algorithm;
+    this.dateTime = dateTime;
+    this.deltaT = deltaT;
+  }
+
+  ZonedDateTime dateTime() {
+    return dateTime;
+  }
+
+  double deltaT() {
+    return deltaT;
+  }
+
+  /** Pass NaN pressure and temperature to skip refraction correction. */
+  SolarPosition position(
+      double latitude, double longitude, double elevation, double pressure, double temperature) {
+    return parts().position(latitude, longitude, elevation, pressure, temperature);
+  }
+
+  /** The SPA time-dependent parts, e.g. for {@link SpaBatch}. */
+  SPA.SpaTimeDependent spa() {
+    if (parts() instanceof SpaParts spa) {
+      return spa.time();
+    }
+    throw new IllegalStateException("not an SPA context: " + algorithm);
+  }
+
+  private Parts parts() {
+    var result = parts;
+    if (result == null) {
+      result =
+          switch (algorithm) {
+            case SPA -> new SpaParts(SPA.calculateSpaTimeDependentParts(dateTime, deltaT));
+            case GRENA3 -> Grena3Parts.of(dateTime, deltaT);
+          };
+      parts = result;
+    }
+    return result;
+  }
+
+  private sealed interface Parts permits SpaParts, Grena3Parts {
+    SolarPosition position(
+        double latitude, double longitude, double elevation, double pressure, double temperature);
+  }
+
+  private record SpaParts(SPA.SpaTimeDependent time) implements Parts {
+    @Override
+    public SolarPosition position(
+        double latitude, double longitude, double elevation, double pressure, double temperature) {
+      return SPA.calculateSolarPositionWithTimeDependentParts(
+          latitude, longitude, elevation, pressure, temperature, time);
+    }
+  }
+
+  /**
+   * Grena's algorithm 3, split at the point where the coordinates come in. The library only offers
+   * the complete calculation, so this follows its evaluation order exactly to give bit-identical
+   * results. Elevation is not used by this algorithm.
+   */
+  private record Grena3Parts(double hourAngleBase, double alpha, double sinDelta, double cosDelta)
+      implements Parts {
+
+    static Grena3Parts of(ZonedDateTime dateTime, double deltaT) {
+      final double t = calcT(dateTime);
+      final double tE = t + 1.1574e-5 * deltaT;
+      final double omegaAtE = 0.0172019715 * tE;
+
+      final double lambda =
+          -1.388803
+              + 1.720279216e-2 * tE
+              + 3.3366e-2 * Math.sin(omegaAtE - 0.06172)
+              + 3.53e-4 * Math.sin(2.0 * omegaAtE - 0.1163);
+      final double epsilon = 4.089567e-1 - 6.19e-9 * tE;
+
+      final double sLambda = Math.sin(lambda);
+      final double cLambda = Math.cos(lambda);
+      final double sEpsilon = Math.sin(epsilon);
+      final double cEpsilon = Math.sqrt(1 - sEpsilon * sEpsilon);
+
+      double alpha = Math.atan2(sLambda * cEpsilon, cLambda);
+      if (alpha < 0) {
+        alpha += 2 * Math.PI;
+      }
+      final double delta = Math.asin(sLambda * sEpsilon);
+      final double sinDelta = Math.sin(delta);
+
+      return new Grena3Parts(
+          1.7528311 + 6.300388099 * t, alpha, sinDelta, Math.sqrt(1 - sinDelta * sinDelta));
+    }
+
+    @Override
+    public SolarPosition position(
+        double latitude, double longitude, double elevation, double pressure, double temperature) {
+      checkLatLonRange(latitude, longitude);
+
+      double h = hourAngleBase + Math.toRadians(longitude) - alpha;
+      h = ((h + Math.PI) % (2 * Math.PI)) - Math.PI;
+      if (h < -Math.PI) {
+        h += 2 * Math.PI;
+      }
+
+      final double sPhi = Math.sin(Math.toRadians(latitude));
+      final double cPhi = Math.sqrt(1 - sPhi * sPhi);
+      final double sH = Math.sin(h);
+      final double cH = Math.cos(h);
+
+      final double sinElevation = sPhi * sinDelta + cPhi * cosDelta * cH;
+      final double e0 =
+          Math.asin(sinElevation) - 4.26e-5 * Math.sqrt(1.0 - sinElevation * sinElevation);
+      final double azimuth = Math.atan2(sH, cH * sPhi - sinDelta * cPhi / cosDelta);
+
+      final double deltaRe =
+          SolarMath.refractionUsable(pressure, temperature) && e0 > 0
+              ? 0.08422
+                  * (pressure / 1000)
+                  / ((273.0 + temperature) * Math.tan(e0 + 0.003138 / (e0 + 0.08919)))
+              : 0.0;
+      final double z = Math.PI / 2 - e0 - deltaRe;
+
+      return new SolarPosition(
+          SolarMath.limitTo(Math.toDegrees(azimuth + Math.PI), 360.0), Math.toDegrees(z));
+    }
+
+    private static double calcT(ZonedDateTime dateTime) {
+      ZonedDateTime utc = dateTime.withZoneSameInstant(ZoneOffset.UTC);
+      int m = utc.getMonthValue();
+      int y = utc.getYear();
+      final int d = utc.getDayOfMonth();
+      final double h = utc.getHour() + utc.getMinute() / 60d + utc.getSecond() / (60d * 60);
+
+      if (m <= 2) {
+        m += 12;
+        y -= 1;
+      }
+
+      return (int) (365.25 * (y - 2000))
+          + (int) (30.6001 * (m + 1))
+          - (int) (0.01 * y)
+          + d
+          + 0.0416667 * h
+          - 21958;
+    }
+  }
+
+  private static void checkLatLonRange(double latitude, double longitude) {
+    if (latitude < -90.0 || latitude > 90.0 || longitude < -180.0 || longitude > 180.0) {
+      throw new IllegalArgumentException("latitude/longitude out of range");
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package net.e175.klaus.solarpos.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A line of printable ASCII text, viewed as a {@link CharSequence} without decoding it. Lines are
+ * copied from their buffer into a reused byte array, which keeps {@link #charAt} a plain array
+ * access however deep in a stream pipeline the parser runs. A line and its subsequences are only
+ * valid until the next {@link #set}. Only {@link #toString()} creates a String, which parsers use
+ * on their slow and error paths.
+ */
+final class AsciiLine implements CharSequence {
+  private static final int MAX_DIGITS = 15;
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+  };
+
+  private byte[] bytes;
+  private int start;
+  private int length;
+
+  AsciiLine(ByteBuffer buffer, int start, int length) {
+    this.bytes = new byte[0];
+    set(buffer, start, length);
+  }
+
+  private AsciiLine(byte[] bytes, int start, int length) {
+    this.bytes = bytes;
+    this.start = start;
+    this.length = length;
+  }
+
+  AsciiLine set(ByteBuffer buffer, int start, int length) {
+    if (bytes.length < length) {
+      bytes = new byte[Math.max(length, 2 * bytes.length)];
+    }
+    buffer.get(start, bytes, 0, length);
+    this.start = 0;
+    this.length = length;
+    return this;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return (char) bytes[start + index];
+  }
+
+  @Override
+  public AsciiLine subSequence(int from, int to) {
+    return new AsciiLine(bytes, start + from, to - from);
+  }
+
+  @Override
+  public String toString() {
+    return new String(bytes, start, length, StandardCharsets.US_ASCII);
+  }
+
+  /** Whether {@code c} separates fields, like {@code [\s,]} for printable ASCII lines. */
+  static boolean isSeparator(char c) {
+    return c == ' ' || c == ',' || c == '\t';
+  }
+
+  /** Index of the first separator at or after {@code from}, or {@link #length()}. */
+  int separatorAt(int from) {
+    int i = from;
+    while (i < length && !isSeparator(charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /** Index of the first non-separator at or after {@code from}, or {@link #length()}. */
+  int skipSeparators(int from) {
+    int i = from;
+    while (i < length && isSeparator(charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Parses a plain decimal number such as {@code -122.4194} from {@code from} to {@code to}, or
+   * returns NaN if the range holds anything else. At most 15 significant digits are accepted, so
+   * both the digits and the power of ten are exactly representable and a single division rounds
+   * correctly, giving the same result as {@link Double#parseDouble}.
+   */
+  double decimal(int from, int to) {
+    int i = from;
+    boolean negative = false;
+    if (i < to && (charAt(i) == '-' || charAt(i) == '+')) {
+      negative = charAt(i) == '-';
+      i++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int scale = 0;
+    boolean point = false;
+    boolean anyDigit = false;
+    for (; i < to; i++) {
+      char c = charAt(i);
+      if (c == '.' && !point) {
+        point = true;
+        continue;
+      }
+      if (c < '0' || c > '9') {
+        return Double.NaN;
+      }
+      anyDigit = true;
+      if (mantissa == 0 && c == '0' && !point) {
+        continue; // leading zero
+      }
+      if (++digits > MAX_DIGITS) {
+        return Double.NaN;
+      }
+      mantissa = mantissa * 10 + (c - '0');
+      if (point) {
+        scale++;
+      }
+    }
+    if (!anyDigit) {
+      return Double.NaN;
+    }
+
+    double value = mantissa / POWERS_OF_TEN[scale];
+    return negative ? -value : value;
+  }
+}
@@ -1,24 +1,28 @@
 package net.e175.klaus.solarpos.util;
 
 import java.io.BufferedReader;
-import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalAccessor;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import net.e175.klaus.solarpos.CoordinatePair;
 
 public final class DateTimeIterator {
 
   private static final Pattern WHITESPACE_OR_COMMA = Pattern.compile("[\\s,]+");
 
+  /** Input bytes per chunk of paired data, about as many lines as a block of output rows. */
+  static final long CHUNK_BYTES = 1 << 16;
+
   private DateTimeIterator() {}
 
   /** Specifies the required precision for time inputs. */
@@ -66,16 +70,12 @@ public final class DateTimeIterator {
   }
 
   private static Stream<ZonedDateTime> iterateYear(Year year, ZoneId zoneId, Duration step) {
-    var start = ZonedDateTime.of(LocalDate.of(year.getValue(), 1, 1), LocalTime.of(0, 0), zoneId);
-    return Stream.iterate(start, i -> i.getYear() == year.getValue(), i -> i.plus(step));
+    return iterateDays(year.atDay(1), year.plusYears(1).atDay(1), zoneId, step);
   }
 
   private static Stream<ZonedDateTime> iterateYearMonth(
       YearMonth yearMonth, ZoneId zoneId, Duration step) {
-    var start =
-        ZonedDateTime.of(
-            LocalDate.of(yearMonth.getYear(), yearMonth.getMonth(), 1), LocalTime.of(0, 0), zoneId);
-    return Stream.iterate(start, i -> i.getMonth() == yearMonth.getMonth(), i -> i.plus(step));
+    return iterateDays(yearMonth.atDay(1), yearMonth.plusMonths(1).atDay(1), zoneId, step);
   }
 
   private static Stream<ZonedDateTime> iterateLocalDate(
@@ -86,8 +86,101 @@ public final class DateTimeIterator {
     if (step.toDays() >= 1) {
       return Stream.of(start);
     }
-    return Stream.iterate(
-        start, i -> i.getDayOfMonth() == localDate.getDayOfMonth(), i -> i.plus(step));
+    return iterateDays(localDate, localDate.plusDays(1), zoneId, step);
+  }
+
+  /**
+   * Instants from the start of day {@code from} in steps of {@code step}, until the start of day
+   * {@code until}. Like adding {@code step} to a {@link ZonedDateTime}, steps are in elapsed time,
+   * not local time.
+   */
+  private static Stream<ZonedDateTime> iterateDays(
+      LocalDate from, LocalDate until, ZoneId zoneId, Duration step) {
+    if (!step.isPositive()) {
+      throw new IllegalArgumentException("step must be positive, got: " + step);
+    }
+    var start = ZonedDateTime.of(from, LocalTime.MIDNIGHT, zoneId).toInstant();
+    var end = ZonedDateTime.of(until, LocalTime.MIDNIGHT, zoneId).toInstant();
+    long stepNanos = step.toNanos();
+    long count = (Duration.between(start, end).toNanos() + stepNanos - 1) / stepNanos;
+    var steps = new Steps(zoneId, start, stepNanos, 0, count);
+    return StreamSupport.stream(steps, false);
+  }
+
+  /**
+   * Instants {@code start + i * step} for {@code i} in {@code [index, end)}, splitting in halves
+   * for parallel streams. {@link ZonedDateTime}s are only created as they are handed out, straight
+   * from the instant: {@link ZonedDateTime} has no factory that takes a known offset without
+   * checking it against the zone rules, and that check, by local time, costs more than finding the
+   * offset of an instant. Only zones with a fixed offset skip the rules.
+   */
+  private static final class Steps implements Spliterator<ZonedDateTime> {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final ZoneId zone;
+    private final ZoneOffset fixedOffset;
+    private final Instant start;
+    private final long stepNanos;
+    private long index;
+    private final long end;
+
+    Steps(ZoneId zone, Instant start, long stepNanos, long index, long end) {
+      this.zone = zone;
+      var rules = zone.getRules();
+      this.fixedOffset = rules.isFixedOffset() ? rules.getOffset(start) : null;
+      this.start = start;
+      this.stepNanos = stepNanos;
+      this.index = index;
+      this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super ZonedDateTime> action) {
+      if (index >= end) {
+        return false;
+      }
+      action.accept(dateTime(index++));
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super ZonedDateTime> action) {
+      for (; index < end; index++) {
+        action.accept(dateTime(index));
+      }
+    }
+
+    private ZonedDateTime dateTime(long step) {
+      long nanos = start.getNano() + step * stepNanos;
+      long second = start.getEpochSecond() + Math.floorDiv(nanos, NANOS_PER_SECOND);
+      int nano = (int) Math.floorMod(nanos, NANOS_PER_SECOND);
+      if (fixedOffset != null) {
+        return ZonedDateTime.ofInstant(
+            LocalDateTime.ofEpochSecond(second, nano, fixedOffset), fixedOffset, zone);
+      }
+      return ZonedDateTime.ofInstant(Instant.ofEpochSecond(second, nano), zone);
+    }
+
+    @Override
+    public Spliterator<ZonedDateTime> trySplit() {
+      long mid = index + (end - index) / 2;
+      if (mid <= index) {
+        return null;
+      }
+      var prefix = new Steps(zone, start, stepNanos, index, mid);
+      index = mid;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
   }
 
   public static Stream<ZonedDateTime> fromFile(Path timesFile, Optional<ZoneId> zoneId) {
@@ -96,10 +189,24 @@ public final class DateTimeIterator {
 
   public static Stream<ZonedDateTime> fromFile(
       Path timesFile, Optional<ZoneId> zoneId, TimePrecision precision) {
-    return readLinesFromPath(timesFile, line -> parseDateTime(line, zoneId, precision));
+    return readLinesFromPath(
+        timesFile,
+        line -> parseDateTime(line, zoneId, precision),
+        line -> parseDateTime(line, zoneId, precision));
   }
 
-  private static ZonedDateTime parseDateTime(
+  static ZonedDateTime parseDateTime(
+      CharSequence dateTimeStr, Optional<ZoneId> zoneId, TimePrecision precision) {
+    TemporalAccessor temporal = IsoDateTimeScanner.scan(dateTimeStr);
+    if (temporal == null) {
+      return parseDateTimeWithFormatters(dateTimeStr.toString(), zoneId, precision);
+    }
+    validatePrecision(temporal, dateTimeStr, precision);
+    return convertToZonedDateTime(temporal, zoneId);
+  }
+
+  /** Slow path for anything {@link IsoDateTimeScanner} does not handle, including all errors. */
+  static ZonedDateTime parseDateTimeWithFormatters(
       String dateTimeStr, Optional<ZoneId> zoneId, TimePrecision precision) {
     TemporalAccessor temporal;
     try {
@@ -143,10 +250,14 @@ public final class DateTimeIterator {
   }
 
   public static Stream<CoordinatePair> coordinatesFromFile(Path coordFile) {
-    return readLinesFromPath(coordFile, DateTimeIterator::parseCoordinateLine);
+    return readLinesFromPath(
+        coordFile, DateTimeIterator::parseCoordinateLine, DateTimeIterator::parseCoordinateLine);
   }
 
-  /** Parses paired coordinate-time data from file (latitude longitude datetime per line). */
+  /**
+   * Parses paired coordinate-time data from file (latitude longitude datetime per line), or reads
+   * it from a file written by the {@code convert} command, see {@link PairedRecords}.
+   */
   public static Stream<CoordinateTimePair> pairedDataFromFile(
       Path dataFile, Optional<ZoneId> zoneId) {
     return pairedDataFromFile(dataFile, zoneId, TimePrecision.DATE_SUFFICIENT);
@@ -154,7 +265,35 @@ public final class DateTimeIterator {
 
   public static Stream<CoordinateTimePair> pairedDataFromFile(
       Path dataFile, Optional<ZoneId> zoneId, TimePrecision precision) {
-    return readLinesFromPath(dataFile, line -> parsePairedDataLine(line, zoneId, precision));
+    if (!"-".equals(dataFile.toString()) && PairedRecords.isBinary(dataFile)) {
+      return PairedRecords.stream(dataFile, zoneId);
+    }
+    return readLinesFromPath(
+        dataFile,
+        line -> parsePairedDataLine(line, zoneId, precision),
+        line -> parsePairedDataLine(line, zoneId, precision));
+  }
+
+  /**
+   * Parses paired data in independent chunks of about {@link #CHUNK_BYTES} each, which can be read
+   * on separate threads and yield the lines of the file in order when concatenated. stdin is read
+   * as a single chunk.
+   */
+  public static Stream<Stream<CoordinateTimePair>> pairedDataChunksFromFile(
+      Path dataFile, Optional<ZoneId> zoneId, TimePrecision precision) {
+    if ("-".equals(dataFile.toString())) {
+      return Stream.of(pairedDataFromFile(dataFile, zoneId, precision));
+    }
+    if (PairedRecords.isBinary(dataFile)) {
+      return PairedRecords.chunks(
+          dataFile, zoneId, (int) (CHUNK_BYTES / PairedRecords.RECORD_SIZE));
+    }
+    return MappedLines.chunks(
+        dataFile,
+        CHUNK_BYTES,
+        MappedLines.WINDOW_SIZE,
+        line -> parsePairedDataLine(line, zoneId, precision),
+        line -> parsePairedDataLine(line, zoneId, precision));
   }
 
   private static ZonedDateTime convertToZonedDateTime(
@@ -190,7 +329,7 @@ public final class DateTimeIterator {
   }
 
   private static void validatePrecision(
-      TemporalAccessor temporal, String input, TimePrecision precision) {
+      TemporalAccessor temporal, CharSequence input, TimePrecision precision) {
     if (precision == TimePrecision.TIME_REQUIRED && temporal instanceof LocalDate) {
       throw new IllegalArgumentException(
           "Position calculations require explicit time (e.g., '2024-01-15T12:30:00'). "
@@ -200,6 +339,45 @@ public final class DateTimeIterator {
     }
   }
 
+  /** Fast path for {@link #parsePairedDataLine(String, Optional, TimePrecision)}, or null. */
+  private static CoordinateTimePair parsePairedDataLine(
+      AsciiLine line, Optional<ZoneId> zoneId, TimePrecision precision) {
+    int latEnd = line.separatorAt(0);
+    int lonStart = line.skipSeparators(latEnd);
+    int lonEnd = line.separatorAt(lonStart);
+    int dateTimeStart = line.skipSeparators(lonEnd);
+    if (latEnd == 0 || dateTimeStart == line.length()) {
+      return null;
+    }
+
+    double latitude = line.decimal(0, latEnd);
+    double longitude = line.decimal(lonStart, lonEnd);
+    var dateTimeStr = line.subSequence(dateTimeStart, line.length());
+    var temporal = IsoDateTimeScanner.scan(dateTimeStr);
+    if (Double.isNaN(latitude) || Double.isNaN(longitude) || temporal == null) {
+      return null;
+    }
+
+    validatePrecision(temporal, dateTimeStr, precision);
+    return new CoordinateTimePair(
+        new CoordinatePair(latitude, longitude), convertToZonedDateTime(temporal, zoneId));
+  }
+
+  /** Fast path for {@link #parseCoordinateLine(String)}, or null. */
+  private static CoordinatePair parseCoordinateLine(AsciiLine line) {
+    int latEnd = line.separatorAt(0);
+    int lonStart = line.skipSeparators(latEnd);
+    if (latEnd == 0) {
+      return null;
+    }
+
+    double latitude = line.decimal(0, latEnd);
+    double longitude = line.decimal(lonStart, line.length());
+    return Double.isNaN(latitude) || Double.isNaN(longitude)
+        ? null
+        : new CoordinatePair(latitude, longitude);
+  }
+
   private static CoordinatePair parseCoordinateLine(String line) {
     var parts = WHITESPACE_OR_COMMA.split(line.trim(), 2);
     if (parts.length != 2) {
@@ -220,29 +398,34 @@ public final class DateTimeIterator {
     }
   }
 
-  /** Unified method to read lines from either file or stdin. */
+  /**
+   * Unified method to read lines from either file or stdin. Files are memory-mapped and their lines
+   * handed to {@code fastMapper} without creating Strings; it returns null for lines only {@code
+   * mapper} can handle. Both emit an {@link InputChunkEvent} per chunk of input.
+   */
   private static <T> Stream<T> readLinesFromPath(
-      Path path, java.util.function.Function<String, T> mapper) {
-    String pathStr = path.toString();
-    Stream<String> rawLines = "-".equals(pathStr) ? createStdinStream() : createFileStream(path);
+      Path path, Function<AsciiLine, T> fastMapper, Function<String, T> mapper) {
+    if (!"-".equals(path.toString())) {
+      return MappedLines.stream(path, fastMapper, mapper);
+    }
 
-    return rawLines
+    var counter = new InputChunkEvent.Counter("stdin", 0);
+    long[] position = {0};
+    return createStdinStream()
+        .peek(line -> position[0] += line.length() + 1)
         .map(String::trim)
         .filter(line -> !line.isEmpty() && !line.startsWith("#"))
-        .map(mapper);
+        .map(
+            line -> {
+              T item = mapper.apply(line);
+              counter.item(position[0]);
+              return item;
+            })
+        .onClose(() -> counter.end(position[0]));
   }
 
   private static Stream<String> createStdinStream() {
     var reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
     return reader.lines().onClose(() -> closeQuietly(reader));
   }
-
-  private static Stream<String> createFileStream(Path path) {
-    try {
-      var lines = Files.lines(path);
-      return lines.onClose(() -> closeQuietly(lines));
-    } catch (IOException e) {
-      throw new UncheckedIOException("Failed to read from: " + path, e);
-    }
-  }
 }
@@ -0,0 +1,83 @@
+package net.e175.klaus.solarpos.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for about {@link DateTimeIterator#CHUNK_BYTES} of input read and parsed, or
+ * one chunk of a file read in chunks. Its duration includes the time the consumer of the parsed
+ * items took in between.
+ */
+@Name("solarpos.InputChunkParsed")
+@Label("Input Chunk Parsed")
+@Category({"solarpos", "Input"})
+@Description("A range of an input file or stdin read and parsed")
+@StackTrace(false)
+final class InputChunkEvent extends Event {
+  @Label("Source")
+  String source;
+
+  @Label("Offset")
+  long offset;
+
+  @Label("Bytes")
+  @Description("Size of the range; characters for stdin")
+  @DataAmount
+  long bytes;
+
+  @Label("Items")
+  @Description("Parsed lines, not counting blank lines and comments")
+  long items;
+
+  /** Counts items read from a source, committing an event per chunk. */
+  static final class Counter {
+    private final String source;
+    private InputChunkEvent event;
+    private long start;
+    private long items;
+
+    Counter(String source, long start) {
+      this.source = source;
+      begin(start);
+    }
+
+    /** Counts an item that ends at {@code position}, committing an event if a chunk is full. */
+    void item(long position) {
+      items++;
+      if (position - start >= DateTimeIterator.CHUNK_BYTES) {
+        commit(position);
+        begin(position);
+      }
+    }
+
+    /** Commits the last, partial chunk, which ends at {@code position}. */
+    void end(long position) {
+      if (position > start || items > 0) {
+        commit(position);
+        begin(position);
+      }
+    }
+
+    private void begin(long position) {
+      event = new InputChunkEvent();
+      event.begin();
+      start = position;
+      items = 0;
+    }
+
+    private void commit(long position) {
+      if (event.shouldCommit()) {
+        event.source = source;
+        event.offset = start;
+        event.bytes = position - start;
+        event.items = items;
+        event.commit();
+      }
+    }
+  }
+}
@@ -0,0 +1,226 @@
+package net.e175.klaus.solarpos.util;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAccessor;
+
+/**
+ * Single-pass scanner for the common ISO-8601 shapes in time files: {@code yyyy-MM-dd}, optionally
+ * followed by {@code 'T'} or a space, {@code HH:mm[:ss[.fraction]]}, and an optional offset ({@code
+ * Z} or {@code ±HH:MM[:SS]}) with an optional {@code [zone id]}.
+ *
+ * <p>It only accepts input that the formatter cascade in {@link DateTimeIterator} would parse to
+ * the same value, and returns {@code null} for anything else, including invalid field values.
+ * Callers then fall back to the formatters, which produce the usual error messages. Well-formed
+ * input never throws, so the common case avoids the exceptions of the cascade.
+ */
+final class IsoDateTimeScanner {
+
+  private static final int MAX_OFFSET_SECONDS = 18 * 3600;
+
+  /** Last zone id seen, as input files tend to use a single zone throughout. */
+  private static volatile CachedZone lastZone = new CachedZone("", ZoneOffset.UTC);
+
+  private record CachedZone(String id, ZoneId zone) {}
+
+  private IsoDateTimeScanner() {}
+
+  /**
+   * Returns a {@link LocalDate}, {@link LocalDateTime} or {@link ZonedDateTime}, or {@code null} if
+   * the input is not one of the supported shapes.
+   */
+  static TemporalAccessor scan(CharSequence s) {
+    final int length = s.length();
+    if (length < 10
+        || !isDigits(s, 0, 4)
+        || s.charAt(4) != '-'
+        || !isDigits(s, 5, 2)
+        || s.charAt(7) != '-'
+        || !isDigits(s, 8, 2)) {
+      return null;
+    }
+    final int year = number(s, 0, 4);
+    final int month = number(s, 5, 2);
+    final int day = number(s, 8, 2);
+    // year 0 is valid in ISO but not as the year-of-era of the input pattern
+    if (year == 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+      return null;
+    }
+    if (length == 10) {
+      return LocalDate.of(year, month, day);
+    }
+
+    final char separator = s.charAt(10);
+    if ((separator != 'T' && separator != ' ')
+        || length < 16
+        || !isDigits(s, 11, 2)
+        || s.charAt(13) != ':'
+        || !isDigits(s, 14, 2)) {
+      return null;
+    }
+    final int hour = number(s, 11, 2);
+    final int minute = number(s, 14, 2);
+    int second = 0;
+    int nano = 0;
+    int fractionDigits = 0;
+    int pos = 16;
+
+    if (pos < length && s.charAt(pos) == ':') {
+      if (!isDigits(s, pos + 1, 2)) {
+        return null;
+      }
+      second = number(s, pos + 1, 2);
+      pos += 3;
+
+      if (pos < length && s.charAt(pos) == '.') {
+        int digits = 0;
+        while (pos + 1 + digits < length && isDigit(s.charAt(pos + 1 + digits))) {
+          digits++;
+        }
+        if (digits == 0 || digits > 9) {
+          return null;
+        }
+        nano = number(s, pos + 1, digits);
+        for (int i = digits; i < 9; i++) {
+          nano *= 10;
+        }
+        pos += 1 + digits;
+        fractionDigits = digits;
+      }
+    }
+    if (hour > 23 || minute > 59 || second > 59) {
+      return null;
+    }
+
+    // Only 'T' with an offset reaches ISO_ZONED_DATE_TIME, which takes up to 9 fraction digits.
+    // Everything else is parsed by the input pattern, which takes exactly one.
+    final boolean isoZoned = separator == 'T' && pos < length;
+    if (fractionDigits > (isoZoned ? 9 : 1)) {
+      return null;
+    }
+
+    final var dateTime = LocalDateTime.of(year, month, day, hour, minute, second, nano);
+    if (pos == length) {
+      return dateTime;
+    }
+
+    final ZoneOffset offset;
+    if (s.charAt(pos) == 'Z') {
+      offset = ZoneOffset.UTC;
+      pos++;
+    } else {
+      int offsetEnd = offsetEnd(s, pos);
+      if (offsetEnd < 0) {
+        return null;
+      }
+      offset = parseOffset(s, pos, offsetEnd);
+      // the input pattern has no seconds in offsets
+      if (offset == null || (!isoZoned && offsetEnd - pos > 6)) {
+        return null;
+      }
+      pos = offsetEnd;
+    }
+    if (pos == length) {
+      return ZonedDateTime.of(dateTime, offset);
+    }
+
+    if (s.charAt(pos) != '[' || s.charAt(length - 1) != ']' || length - pos < 3) {
+      return null;
+    }
+    final ZoneId zone = zone(s, pos + 1, length - 1);
+    return zone == null ? null : ZonedDateTime.ofInstant(dateTime, offset, zone);
+  }
+
+  /** End of a {@code ±HH:MM[:SS]} offset starting at {@code pos}, or -1. */
+  private static int offsetEnd(CharSequence s, int pos) {
+    final char sign = s.charAt(pos);
+    if ((sign != '+' && sign != '-')
+        || !isDigits(s, pos + 1, 2)
+        || pos + 3 >= s.length()
+        || s.charAt(pos + 3) != ':'
+        || !isDigits(s, pos + 4, 2)) {
+      return -1;
+    }
+    if (pos + 6 < s.length() && s.charAt(pos + 6) == ':') {
+      return isDigits(s, pos + 7, 2) ? pos + 9 : -1;
+    }
+    return pos + 6;
+  }
+
+  private static ZoneOffset parseOffset(CharSequence s, int pos, int end) {
+    final int hours = number(s, pos + 1, 2);
+    final int minutes = number(s, pos + 4, 2);
+    final int seconds = end - pos == 9 ? number(s, pos + 7, 2) : 0;
+    final int total = hours * 3600 + minutes * 60 + seconds;
+    if (minutes > 59 || seconds > 59 || total > MAX_OFFSET_SECONDS) {
+      return null;
+    }
+    return ZoneOffset.ofTotalSeconds(s.charAt(pos) == '-' ? -total : total);
+  }
+
+  private static ZoneId zone(CharSequence s, int from, int to) {
+    var cached = lastZone;
+    if (regionMatches(cached.id(), s, from, to)) {
+      return cached.zone();
+    }
+    var id = s.subSequence(from, to).toString();
+    try {
+      var zone = ZoneId.of(id);
+      lastZone = new CachedZone(id, zone);
+      return zone;
+    } catch (DateTimeException e) {
+      // unknown or malformed id: let the formatters report it
+      return null;
+    }
+  }
+
+  private static boolean regionMatches(String id, CharSequence s, int from, int to) {
+    if (id.length() != to - from) {
+      return false;
+    }
+    for (int i = 0; i < id.length(); i++) {
+      if (id.charAt(i) != s.charAt(from + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int lengthOfMonth(int year, int month) {
+    return switch (month) {
+      case 2 -> Year.isLeap(year) ? 29 : 28;
+      case 4, 6, 9, 11 -> 30;
+      default -> 31;
+    };
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isDigits(CharSequence s, int pos, int count) {
+    if (pos + count > s.length()) {
+      return false;
+    }
+    for (int i = pos; i < pos + count; i++) {
+      if (!isDigit(s.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Value of {@code count} digits at {@code pos}, which must have been checked already. */
+  private static int number(CharSequence s, int pos, int count) {
+    int value = 0;
+    for (int i = pos; i < pos + count; i++) {
+      value = value * 10 + (s.charAt(i) - '0');
+    }
+    return value;
+  }
+}
@@ -0,0 +1,267 @@
+package net.e175.klaus.solarpos.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the lines of a file through memory-mapped windows, handing printable ASCII lines to a
+ * parser as {@link AsciiLine} views of the mapped bytes. Lines are split, trimmed and filtered like
+ * the {@code Files.lines} pipeline in {@link DateTimeIterator}: on {@code \n}, {@code \r} or {@code
+ * \r\n}, skipping empty lines and {@code #} comments.
+ *
+ * <p>Lines with other content, such as non-ASCII characters, are decoded to a String and given to
+ * the String parser instead, as are lines the fast parser returns {@code null} for.
+ */
+final class MappedLines<T> extends Spliterators.AbstractSpliterator<T> {
+  static final int WINDOW_SIZE = 1 << 30;
+  private static final int BOUNDARY_SCAN_SIZE = 1 << 12;
+
+  private final Path path;
+  private FileChannel channel;
+  private final long rangeEnd;
+  private final int windowSize;
+  private final Function<AsciiLine, T> fastParser;
+  private final Function<String, T> parser;
+  private final AsciiLine line = new AsciiLine(ByteBuffer.allocate(0), 0, 0);
+
+  private ByteBuffer window = ByteBuffer.allocate(0);
+  private long windowStart;
+  private int offset;
+  private InputChunkEvent.Counter counter;
+
+  private MappedLines(
+      Path path,
+      FileChannel channel,
+      long start,
+      long end,
+      int windowSize,
+      Function<AsciiLine, T> fastParser,
+      Function<String, T> parser) {
+    super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+    this.path = path;
+    this.channel = channel;
+    this.windowStart = start;
+    this.rangeEnd = end;
+    this.windowSize = windowSize;
+    this.fastParser = fastParser;
+    this.parser = parser;
+  }
+
+  /**
+   * Streams the parsed lines of {@code path}. {@code fastParser} may return {@code null} to fall
+   * back to {@code parser} for a line. The file is closed at the end of the stream or when the
+   * stream is closed.
+   */
+  static <T> Stream<T> stream(
+      Path path, Function<AsciiLine, T> fastParser, Function<String, T> parser) {
+    return stream(path, WINDOW_SIZE, fastParser, parser);
+  }
+
+  static <T> Stream<T> stream(
+      Path path, int windowSize, Function<AsciiLine, T> fastParser, Function<String, T> parser) {
+    var channel = open(path);
+    return stream(path, channel, 0, size(path, channel), windowSize, fastParser, parser);
+  }
+
+  /**
+   * Splits {@code path} into chunks of about {@code chunkBytes}, ending at line boundaries, and
+   * streams the parsed lines of each chunk. Chunk streams are independent of each other and of the
+   * outer stream, so they can be read on any thread. Each opens the file when it is first read.
+   */
+  static <T> Stream<Stream<T>> chunks(
+      Path path,
+      long chunkBytes,
+      int windowSize,
+      Function<AsciiLine, T> fastParser,
+      Function<String, T> parser) {
+    var channel = open(path);
+    long size = size(path, channel);
+    var buffer = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+    return Stream.iterate(
+            new Range(0, lineEndAfter(path, channel, chunkBytes, size, buffer)),
+            range -> range.start() < size,
+            range ->
+                new Range(
+                    range.end(),
+                    lineEndAfter(path, channel, range.end() + chunkBytes, size, buffer)))
+        .map(
+            range -> stream(path, null, range.start(), range.end(), windowSize, fastParser, parser))
+        .onClose(() -> closeQuietly(channel));
+  }
+
+  private record Range(long start, long end) {}
+
+  private static <T> Stream<T> stream(
+      Path path,
+      FileChannel channel,
+      long start,
+      long end,
+      int windowSize,
+      Function<AsciiLine, T> fastParser,
+      Function<String, T> parser) {
+    var lines = new MappedLines<>(path, channel, start, end, windowSize, fastParser, parser);
+    return StreamSupport.stream(lines, false).onClose(lines::close);
+  }
+
+  /** Position just after the first line terminator at or after {@code position}, or the size. */
+  private static long lineEndAfter(
+      Path path, FileChannel channel, long position, long size, ByteBuffer buffer) {
+    try {
+      long scanned = Math.min(position, size);
+      while (scanned < size) {
+        buffer.clear();
+        int read = channel.read(buffer, scanned);
+        for (int i = 0; i < read; i++) {
+          byte b = buffer.get(i);
+          if (b == '\n') {
+            return scanned + i + 1;
+          }
+          if (b == '\r') {
+            // keep \r\n together; a \n beyond the buffer would only start an empty line
+            return scanned + i + (i + 1 < read && buffer.get(i + 1) == '\n' ? 2 : 1);
+          }
+        }
+        scanned += Math.max(read, 0);
+        if (read <= 0) break;
+      }
+      return size;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read from: " + path, e);
+    }
+  }
+
+  private static FileChannel open(Path path) {
+    try {
+      return FileChannel.open(path, StandardOpenOption.READ);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read from: " + path, e);
+    }
+  }
+
+  private static long size(Path path, FileChannel channel) {
+    try {
+      return channel.size();
+    } catch (IOException e) {
+      closeQuietly(channel);
+      throw new UncheckedIOException("Failed to read from: " + path, e);
+    }
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    if (counter == null) {
+      counter = new InputChunkEvent.Counter(path.toString(), windowStart);
+    }
+    while (true) {
+      int limit = window.limit();
+      int end = offset;
+      boolean plain = true;
+      byte b = 0;
+      while (end < limit && (b = window.get(end)) != '\n' && b != '\r') {
+        plain &= (b >= ' ' && b < 0x7f) || b == '\t';
+        end++;
+      }
+
+      boolean lastWindow = windowStart + limit >= rangeEnd;
+      // a line or a \r\n pair continuing in the next window is read again from there
+      if ((end == limit || (b == '\r' && end + 1 == limit)) && !lastWindow) {
+        remap(windowStart + offset, end - offset);
+        continue;
+      }
+      if (end == limit && offset == limit) {
+        close();
+        return false;
+      }
+
+      int start = offset;
+      if (end < limit) {
+        offset = end + (b == '\r' && end + 1 < limit && window.get(end + 1) == '\n' ? 2 : 1);
+      } else {
+        offset = end;
+      }
+
+      T item = plain ? parsePlain(start, end) : parseDecoded(start, end);
+      if (item != null) {
+        counter.item(windowStart + offset);
+        action.accept(item);
+        return true;
+      }
+    }
+  }
+
+  private T parsePlain(int start, int end) {
+    while (start < end && window.get(start) <= ' ') start++;
+    while (end > start && window.get(end - 1) <= ' ') end--;
+    if (start == end || window.get(start) == '#') {
+      return null;
+    }
+    line.set(window, start, end - start);
+    T item = fastParser.apply(line);
+    return item != null ? item : parser.apply(line.toString());
+  }
+
+  private T parseDecoded(int start, int end) {
+    String text;
+    try {
+      text =
+          StandardCharsets.UTF_8
+              .newDecoder()
+              .onMalformedInput(CodingErrorAction.REPORT)
+              .onUnmappableCharacter(CodingErrorAction.REPORT)
+              .decode(window.slice(start, end - start))
+              .toString()
+              .trim();
+    } catch (CharacterCodingException e) {
+      throw new UncheckedIOException("Failed to read from: " + path, e);
+    }
+    return text.isEmpty() || text.startsWith("#") ? null : parser.apply(text);
+  }
+
+  private void remap(long position, int pending) {
+    if (pending >= windowSize) {
+      throw new IllegalArgumentException("Line too long in " + path);
+    }
+    if (channel == null) {
+      channel = open(path);
+    }
+    try {
+      window =
+          channel.map(
+              FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, rangeEnd - position));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read from: " + path, e);
+    }
+    windowStart = position;
+    offset = 0;
+  }
+
+  private void close() {
+    if (counter != null) {
+      counter.end(windowStart + offset);
+    }
+    if (channel != null) {
+      closeQuietly(channel);
+    }
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException ignored) {
+      // Ignore close failures
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package net.e175.klaus.solarpos.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import net.e175.klaus.solarpos.CoordinatePair;
+import net.e175.klaus.solarpos.util.DateTimeIterator.CoordinateTimePair;
+
+/**
+ * Binary paired data: fixed-width little-endian records that are read from a mapped file without
+ * any parsing. The zone table follows the records, so a file can be written in a single pass, e.g.
+ * to a pipe.
+ *
+ * <pre>
+ * header   "SOLPAIR1"
+ * records  float64 latitude, float64 longitude,
+ *          int64 epoch second, int32 nano of second, int32 zone index or -1 for UTC
+ * zones    per zone: uint16 length, UTF-8 zone id
+ * footer   int64 record count, int32 zone count
+ * </pre>
+ */
+public final class PairedRecords {
+  static final int RECORD_SIZE = 32;
+  private static final byte[] MAGIC = "SOLPAIR1".getBytes(StandardCharsets.US_ASCII);
+  private static final int HEADER_SIZE = MAGIC.length;
+  private static final int FOOTER_SIZE = 12;
+  private static final int NO_ZONE = -1;
+  private static final int WINDOW_RECORDS = (1 << 30) / RECORD_SIZE;
+  private static final int WRITE_BUFFER_RECORDS = 2048;
+
+  private PairedRecords() {}
+
+  /** Receives encoded bytes from {@link #write}. */
+  @FunctionalInterface
+  public interface Output {
+    void write(byte[] bytes, int length) throws IOException;
+  }
+
+  /** Whether {@code path} starts like a binary paired data file. */
+  static boolean isBinary(Path path) {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // read until full or end of file
+      }
+      return !header.hasRemaining() && Arrays.equals(header.array(), MAGIC);
+    } catch (IOException e) {
+      return false; // reported by the text reader
+    }
+  }
+
+  /** Streams the records of {@code path}; a {@code zoneId} replaces the zone of each record. */
+  static Stream<CoordinateTimePair> stream(Path path, Optional<ZoneId> zoneId) {
+    var file = File.open(path);
+    return StreamSupport.stream(new Records(file, 0, file.count(), zoneId), false);
+  }
+
+  /** Streams the records of {@code path} in independent chunks of {@code chunkRecords}. */
+  static Stream<Stream<CoordinateTimePair>> chunks(
+      Path path, Optional<ZoneId> zoneId, int chunkRecords) {
+    var file = File.open(path);
+    return LongStream.iterate(0, from -> from < file.count(), from -> from + chunkRecords)
+        .mapToObj(
+            from ->
+                StreamSupport.stream(
+                    new Records(file, from, Math.min(from + chunkRecords, file.count()), zoneId),
+                    false));
+  }
+
+  /** Writes {@code pairs} as a binary paired data file and returns the number of records. */
+  public static long write(Stream<CoordinateTimePair> pairs, Output out) throws IOException {
+    var zones = new LinkedHashMap<ZoneId, Integer>();
+    var buffer =
+        ByteBuffer.allocate(WRITE_BUFFER_RECORDS * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    out.write(MAGIC, MAGIC.length);
+
+    long count = 0;
+    for (var it = pairs.iterator(); it.hasNext(); count++) {
+      var pair = it.next();
+      var dateTime = pair.dateTime();
+      var zone = dateTime.getZone();
+      buffer
+          .putDouble(pair.coordinates().latitude())
+          .putDouble(pair.coordinates().longitude())
+          .putLong(dateTime.toEpochSecond())
+          .putInt(dateTime.getNano())
+          .putInt(
+              ZoneOffset.UTC.equals(zone)
+                  ? NO_ZONE
+                  : zones.computeIfAbsent(zone, z -> zones.size()));
+      if (!buffer.hasRemaining()) {
+        out.write(buffer.array(), buffer.position());
+        buffer.clear();
+      }
+    }
+    out.write(buffer.array(), buffer.position());
+
+    var tail = new ByteArrayOutputStream();
+    for (var zone : zones.keySet()) {
+      var id = zone.getId().getBytes(StandardCharsets.UTF_8);
+      tail.write(id.length & 0xff);
+      tail.write(id.length >>> 8);
+      tail.write(id, 0, id.length);
+    }
+    var footer =
+        ByteBuffer.allocate(FOOTER_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .putLong(count)
+            .putInt(zones.size());
+    tail.write(footer.array(), 0, FOOTER_SIZE);
+    out.write(tail.toByteArray(), tail.size());
+    return count;
+  }
+
+  /** The mapped records and zone table of a file. */
+  private record File(Path path, ByteBuffer[] windows, long count, ZoneId[] zones) {
+
+    static File open(Path path) {
+      try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        long size = channel.size();
+        if (size < HEADER_SIZE + FOOTER_SIZE) {
+          throw invalid(path, "file too short");
+        }
+        var footer = read(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+        long count = footer.getLong(0);
+        int zoneCount = footer.getInt(8);
+        if (count < 0 || count > (size - HEADER_SIZE - FOOTER_SIZE) / RECORD_SIZE) {
+          throw invalid(path, "bad record count");
+        }
+        long recordsEnd = HEADER_SIZE + count * RECORD_SIZE;
+        long tableSize = size - FOOTER_SIZE - recordsEnd;
+        if (zoneCount < 0 || tableSize > (long) zoneCount * (2 + 0xffff)) {
+          throw invalid(path, "bad zone count");
+        }
+
+        var zones = readZones(path, read(channel, recordsEnd, tableSize));
+        if (zones.length != zoneCount) {
+          throw invalid(path, "bad zone table");
+        }
+
+        // mappings stay valid after the channel is closed
+        var windows = new ByteBuffer[(int) ((count + WINDOW_RECORDS - 1) / WINDOW_RECORDS)];
+        for (int i = 0; i < windows.length; i++) {
+          long first = (long) i * WINDOW_RECORDS;
+          long records = Math.min(WINDOW_RECORDS, count - first);
+          windows[i] =
+              channel
+                  .map(
+                      FileChannel.MapMode.READ_ONLY,
+                      HEADER_SIZE + first * RECORD_SIZE,
+                      records * RECORD_SIZE)
+                  .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return new File(path, windows, count, zones);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to read from: " + path, e);
+      }
+    }
+
+    private static ZoneId[] readZones(Path path, ByteBuffer table) {
+      var zones = new ArrayList<ZoneId>();
+      while (table.remaining() >= 2) {
+        int length = Short.toUnsignedInt(table.getShort());
+        if (length > table.remaining()) {
+          throw invalid(path, "bad zone table");
+        }
+        var id = new byte[length];
+        table.get(id);
+        try {
+          zones.add(ZoneId.of(new String(id, StandardCharsets.UTF_8)));
+        } catch (DateTimeException e) {
+          throw invalid(path, e.getMessage());
+        }
+      }
+      if (table.hasRemaining()) {
+        throw invalid(path, "bad zone table");
+      }
+      return zones.toArray(ZoneId[]::new);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, long length)
+        throws IOException {
+      var buffer = ByteBuffer.allocate(Math.toIntExact(length)).order(ByteOrder.LITTLE_ENDIAN);
+      while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+        // read until full
+      }
+      return buffer.flip();
+    }
+
+    private static IllegalArgumentException invalid(Path path, String reason) {
+      return new IllegalArgumentException("Invalid binary paired data in " + path + ": " + reason);
+    }
+  }
+
+  /** Reads records {@code [index, end)} of a file, splitting in halves for parallel streams. */
+  private static final class Records implements Spliterator<CoordinateTimePair> {
+    private final File file;
+    private final Optional<ZoneId> zoneId;
+    private long index;
+    private final long end;
+
+    // consecutive records often share their time
+    private long lastSecond;
+    private int lastNano;
+    private int lastZone = Integer.MIN_VALUE;
+    private ZonedDateTime lastDateTime;
+
+    Records(File file, long index, long end, Optional<ZoneId> zoneId) {
+      this.file = file;
+      this.index = index;
+      this.end = end;
+      this.zoneId = zoneId;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super CoordinateTimePair> action) {
+      if (index >= end) {
+        return false;
+      }
+      action.accept(read(index++));
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super CoordinateTimePair> action) {
+      for (; index < end; index++) {
+        action.accept(read(index));
+      }
+    }
+
+    private CoordinateTimePair read(long record) {
+      var window = file.windows()[(int) (record / WINDOW_RECORDS)];
+      int offset = (int) (record % WINDOW_RECORDS) * RECORD_SIZE;
+      double latitude = window.getDouble(offset);
+      double longitude = window.getDouble(offset + 8);
+      long second = window.getLong(offset + 16);
+      int nano = window.getInt(offset + 24);
+      int zone = window.getInt(offset + 28);
+      return new CoordinateTimePair(
+          new CoordinatePair(latitude, longitude), dateTime(record, second, nano, zone));
+    }
+
+    private ZonedDateTime dateTime(long record, long second, int nano, int zone) {
+      if (second == lastSecond && nano == lastNano && zone == lastZone) {
+        return lastDateTime;
+      }
+      if (zone < NO_ZONE || zone >= file.zones().length) {
+        throw new IllegalArgumentException(
+            "Invalid binary paired data in "
+                + file.path()
+                + ": bad zone index in record "
+                + record);
+      }
+      var dateTime =
+          ZonedDateTime.ofInstant(
+              Instant.ofEpochSecond(second, nano),
+              zone == NO_ZONE ? ZoneOffset.UTC : file.zones()[zone]);
+      if (zoneId.isPresent()) {
+        // like text input, the local time is kept and the zone replaced
+        dateTime = ZonedDateTime.of(dateTime.toLocalDateTime(), zoneId.get());
+      }
+      lastSecond = second;
+      lastNano = nano;
+      lastZone = zone;
+      lastDateTime = dateTime;
+      return dateTime;
+    }
+
+    @Override
+    public Spliterator<CoordinateTimePair> trySplit() {
+      long mid = index + (end - index) / 2;
+      if (mid <= index) {
+        return null;
+      }
+      var prefix = new Records(file, index, mid, zoneId);
+      index = mid;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+  }
+}
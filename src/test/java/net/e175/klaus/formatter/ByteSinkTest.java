@@ -0,0 +1,160 @@
+package net.e175.klaus.formatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class ByteSinkTest {
+
+  private static byte[] encode(int capacity, List<Integer> chunkSizes, Appender appender)
+      throws IOException {
+    var bytes = new ByteArrayOutputStream();
+    try (var sink =
+        ByteSink.of(
+            (chunk, length) -> {
+              chunkSizes.add(length);
+              bytes.write(chunk, 0, length);
+            },
+            capacity)) {
+      appender.append(sink);
+    }
+    return bytes.toByteArray();
+  }
+
+  @FunctionalInterface
+  private interface Appender {
+    void append(ByteSink sink) throws IOException;
+  }
+
+  @Test
+  void encodesLikeStringGetBytes() throws IOException {
+    var text = "azimuth=12.5° ± 0.1, Zürich → 東京, emoji 🌅 sunrise\n";
+    var expected = text.getBytes(StandardCharsets.UTF_8);
+
+    for (int capacity : new int[] {4, 5, 7, 16, ByteSink.DEFAULT_CAPACITY}) {
+      var chunks = new ArrayList<Integer>();
+      assertArrayEquals(expected, encode(capacity, chunks, sink -> sink.append(text)));
+      assertTrue(chunks.stream().allMatch(n -> n > 0 && n <= capacity));
+
+      var perChar =
+          encode(
+              capacity,
+              new ArrayList<>(),
+              sink -> {
+                for (int i = 0; i < text.length(); i++) {
+                  sink.append(text.charAt(i));
+                }
+              });
+      assertArrayEquals(expected, perChar, "capacity " + capacity);
+    }
+  }
+
+  @Test
+  void encodesRandomTextInSmallChunks() throws IOException {
+    var random = new Random(42);
+    var sb = new StringBuilder();
+    for (int i = 0; i < 20_000; i++) {
+      sb.appendCodePoint(
+          switch (random.nextInt(4)) {
+            case 0 -> 0x20 + random.nextInt(0x5F);
+            case 1 -> 0x80 + random.nextInt(0x780);
+            case 2 -> 0x800 + random.nextInt(0xD000 - 0x800);
+            default -> 0x10000 + random.nextInt(0x10000);
+          });
+    }
+    var text = sb.toString();
+    var expected = text.getBytes(StandardCharsets.UTF_8);
+
+    var chunks = new ArrayList<Integer>();
+    assertArrayEquals(
+        expected,
+        encode(
+            37,
+            chunks,
+            sink ->
+                sink.append(text, 0, text.length() / 2)
+                    .append(text, text.length() / 2, text.length())));
+    assertTrue(chunks.size() > 1);
+  }
+
+  @Test
+  void replacesUnpairedSurrogates() throws IOException {
+    var text = "a\uD83Db\uDC00c\uD83D";
+    assertArrayEquals(
+        text.getBytes(StandardCharsets.UTF_8),
+        encode(8, new ArrayList<>(), sink -> sink.append(text)));
+  }
+
+  @Test
+  void appendsNullAndSubSequences() throws IOException {
+    var bytes = encode(16, new ArrayList<>(), sink -> sink.append(null).append("0123456789", 3, 6));
+    assertEquals("null345", new String(bytes, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void writesThroughWriter() throws IOException {
+    var writer = new StringWriter();
+    try (var sink = ByteSink.of(writer)) {
+      sink.append("grüße ").append('→').append(" ok");
+      sink.flush();
+      assertEquals("grüße → ok", writer.toString());
+    }
+  }
+
+  @Test
+  void writesThroughChannelAndClosesItOnRequest() throws IOException {
+    var bytes = new ByteArrayOutputStream();
+    var channel = Channels.newChannel(bytes);
+    var text = "x".repeat(3 * ByteSink.DEFAULT_CAPACITY + 17);
+
+    try (var sink = ByteSink.of(channel, false)) {
+      sink.append(text);
+    }
+    assertTrue(channel.isOpen());
+    assertEquals(text, bytes.toString(StandardCharsets.UTF_8));
+
+    ByteSink.of(channel, true).close();
+    assertFalse(channel.isOpen());
+  }
+
+  @Test
+  void writesLittleEndianNumbers() throws IOException {
+    var expected =
+        ByteBuffer.allocate(25)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .put((byte) 'x')
+            .putLong(0x0102030405060708L)
+            .putDouble(-1.5)
+            .putDouble(Double.NaN)
+            .array();
+    for (int capacity : new int[] {4, 9, 16, 64}) {
+      assertArrayEquals(
+          expected,
+          encode(
+              capacity,
+              new ArrayList<>(),
+              sink -> {
+                sink.append('x');
+                sink.writeLongLE(0x0102030405060708L);
+                sink.writeDoubleLE(-1.5);
+                sink.writeDoubleLE(Double.NaN);
+              }),
+          "capacity " + capacity);
+    }
+  }
+
+  @Test
+  void rejectsTinyCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> ByteSink.of((b, n) -> {}, 3));
+  }
+}
@@ -3,10 +3,17 @@ package net.e175.klaus.formatter;
 import static org.junit.jupiter.api.Assertions.*;
 
 import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -248,4 +255,332 @@ class FormatterTest {
     var record = csvParser.getRecords().getFirst();
     assertEquals("value, with \"quotes\"", record.get("text"));
   }
+
+  @Test
+  void testNullValuesAcrossRows() throws IOException {
+    record Sparse(String label, Double value) {}
+
+    var fields =
+        List.of(
+            new FieldDescriptor<Sparse>("label", Sparse::label),
+            FieldDescriptor.numeric("value", Sparse::value, 2));
+    var items = List.of(new Sparse("a", 1.0), new Sparse(null, null), new Sparse("c", 3.14159));
+
+    var csv = new StringBuilder();
+    new CsvFormatter<Sparse>(SerializerRegistry.forCsv(), false)
+        .format(fields, List.of("label", "value"), items.stream(), csv);
+    assertEquals("a,1.00\r\n,\r\nc,3.14\r\n", csv.toString());
+
+    var json = new StringBuilder();
+    new JsonFormatter<Sparse>(SerializerRegistry.forJson())
+        .format(fields, List.of("label", "value"), items.stream(), json);
+    assertEquals(
+        """
+        {"label":"a","value":1.00}
+        {"label":null,"value":null}
+        {"label":"c","value":3.14}""",
+        json.toString());
+  }
+
+  @Test
+  void testPrimitiveExtractorsMatchBoxedOutput() throws IOException {
+    var items = List.of(createSampleData(), new SampleData("x", -7, -0.004, null));
+    var boxed =
+        List.of(
+            FieldDescriptor.numeric("count", (SampleData d) -> (long) d.count(), 0),
+            FieldDescriptor.numeric("value", SampleData::value, 3).withUnit("m"));
+    var primitive =
+        List.of(
+            FieldDescriptor.integer("count", (SampleData d) -> d.count()),
+            FieldDescriptor.decimal("value", SampleData::value, 3).withUnit("m"));
+    var names = List.of("count", "value");
+
+    List<StreamingFormatter<SampleData>> formatters =
+        List.of(
+            new CsvFormatter<>(SerializerRegistry.forCsv(), true),
+            new JsonFormatter<>(SerializerRegistry.forJson()),
+            new SimpleTextFormatter<>(SerializerRegistry.forText(), "\n"));
+
+    for (var formatter : formatters) {
+      var expected = new StringBuilder();
+      formatter.format(boxed, names, items.stream(), expected);
+      var actual = new StringBuilder();
+      formatter.format(primitive, names, items.stream(), actual);
+      assertEquals(expected.toString(), actual.toString(), formatter.getClass().getSimpleName());
+    }
+  }
+
+  @Test
+  void testPrimitiveDescriptorKeepsGenericExtractor() {
+    var field = FieldDescriptor.decimal("value", SampleData::value, 2).withUnit("m");
+
+    assertEquals(123.456789, field.extractor().apply(createSampleData()));
+    assertNotNull(field.doubleExtractor());
+    assertNull(field.longExtractor());
+    assertEquals(2, field.hints().get("precision"));
+  }
+
+  @Test
+  void testParallelFormattingMatchesSequential() throws IOException {
+    var fields = createFieldDescriptors();
+    var names = List.of("name", "count", "value", "timestamp");
+    var start = ZonedDateTime.parse("2023-05-01T12:34:56+02:00");
+    Function<Integer, SampleData> compute =
+        i -> new SampleData("item \"" + i + "\" ü", i, i / 7.0, start.plusMinutes(i));
+
+    List<StreamingFormatter<SampleData>> formatters =
+        List.of(
+            new CsvFormatter<>(SerializerRegistry.forCsv(), true),
+            new JsonFormatter<>(SerializerRegistry.forJson()),
+            new SimpleTextFormatter<>(SerializerRegistry.forText(), "\n"));
+
+    for (var formatter : formatters) {
+      for (int count : new int[] {0, 1, BlockPipeline.BLOCK_SIZE, 5_000}) {
+        var label = formatter.getClass().getSimpleName() + " x" + count;
+        var expected = new StringBuilder();
+        formatter.format(fields, names, IntStream.range(0, count).boxed().map(compute), expected);
+
+        var viaAppendable = new StringBuilder();
+        formatter.formatParallel(
+            fields, names, IntStream.range(0, count).boxed(), compute, viaAppendable, 4, true);
+        assertEquals(expected.toString(), viaAppendable.toString(), label);
+
+        var bytes = new ByteArrayOutputStream();
+        try (var sink = ByteSink.of((b, n) -> bytes.write(b, 0, n), 100)) {
+          formatter.formatParallel(
+              fields, names, IntStream.range(0, count).boxed(), compute, sink, 3, true);
+        }
+        assertEquals(expected.toString(), bytes.toString(StandardCharsets.UTF_8), label);
+      }
+    }
+  }
+
+  @Test
+  void testBlockPipelineKeepsOrderAcrossSmallBlocks() throws IOException {
+    RowWriter<Integer> rows =
+        (item, first, out) -> out.append(first ? "" : ",").append(Integer.toString(item));
+    var expected = String.join(",", IntStream.range(0, 1000).mapToObj(Integer::toString).toList());
+
+    for (int blockSize : new int[] {1, 7, 64, 5_000}) {
+      var out = new StringBuilder();
+      var pipeline =
+          new BlockPipeline<Integer, Integer>(
+              i -> {
+                if (i % 97 == 0) Thread.yield(); // perturb worker scheduling
+                return i;
+              },
+              rows,
+              8,
+              blockSize,
+              true);
+      assertEquals(1000, pipeline.run(IntStream.range(0, 1000).boxed(), out));
+      assertEquals(expected, out.toString(), "block size " + blockSize);
+    }
+  }
+
+  @Test
+  void testBlockPipelinePropagatesWorkerFailures() {
+    RowWriter<Integer> rows = (item, first, out) -> out.append(Integer.toString(item));
+    var pipeline =
+        new BlockPipeline<Integer, Integer>(
+            i -> {
+              if (i == 500) throw new IllegalStateException("boom " + i);
+              return i;
+            },
+            rows,
+            4,
+            16,
+            true);
+
+    var e =
+        assertThrows(
+            IllegalStateException.class,
+            () -> pipeline.run(IntStream.range(0, 10_000).boxed(), new StringBuilder()));
+    assertEquals("boom 500", e.getMessage());
+  }
+
+  @Test
+  void testUnorderedBlockPipelineWritesEveryRowOnce() throws IOException {
+    RowWriter<Integer> rows =
+        (item, first, out) -> out.append(first ? "" : ",").append(Integer.toString(item));
+    var out = new StringBuilder();
+    var pipeline =
+        new BlockPipeline<Integer, Integer>(
+            i -> {
+              if (i % 97 == 0) Thread.yield(); // perturb worker scheduling
+              return i;
+            },
+            rows,
+            8,
+            7,
+            false);
+
+    assertEquals(1000, pipeline.run(IntStream.range(0, 1000).boxed(), out));
+    var written = Arrays.stream(out.toString().split(",")).map(Integer::valueOf).sorted().toList();
+    assertEquals(IntStream.range(0, 1000).boxed().toList(), written);
+  }
+
+  @Test
+  void testParallelChunksMatchSequential() throws IOException {
+    var fields = createFieldDescriptors();
+    var names = List.of("name", "count", "value", "timestamp");
+    var start = ZonedDateTime.parse("2023-05-01T12:34:56+02:00");
+    Function<Integer, SampleData> compute =
+        i -> new SampleData("item " + i, i, i / 7.0, start.plusMinutes(i));
+    // empty chunks first and in between, as a chunk of only comment lines would be
+    int[][] bounds = {{0, 0}, {0, 0}, {0, 3}, {3, 3}, {3, 500}, {500, 1000}};
+
+    List<StreamingFormatter<SampleData>> formatters =
+        List.of(
+            new CsvFormatter<>(SerializerRegistry.forCsv(), true),
+            new JsonFormatter<>(SerializerRegistry.forJson()),
+            new SimpleTextFormatter<>(SerializerRegistry.forText(), "\n"));
+
+    for (var formatter : formatters) {
+      var label = formatter.getClass().getSimpleName();
+      var expected = new StringBuilder();
+      formatter.format(fields, names, IntStream.range(0, 1000).boxed().map(compute), expected);
+
+      var actual = new StringBuilder();
+      formatter.formatParallelChunks(
+          fields,
+          names,
+          Arrays.stream(bounds).map(b -> IntStream.range(b[0], b[1]).boxed()),
+          compute,
+          actual,
+          4,
+          true);
+      assertEquals(expected.toString(), actual.toString(), label);
+    }
+  }
+
+  private static List<FieldDescriptor<SampleData>> binaryFields() {
+    return List.of(
+        new FieldDescriptor<>("name", SampleData::name),
+        FieldDescriptor.integer("count", SampleData::count),
+        FieldDescriptor.decimal("value", SampleData::value, 3),
+        FieldDescriptor.timestamp("timestamp", SampleData::timestamp));
+  }
+
+  private static byte[] formatBinary(Formatting formatting) throws IOException {
+    var bytes = new ByteArrayOutputStream();
+    try (var sink = ByteSink.of((b, n) -> bytes.write(b, 0, n), 100)) {
+      formatting.format(sink);
+    }
+    return bytes.toByteArray();
+  }
+
+  private interface Formatting {
+    void format(ByteSink sink) throws IOException;
+  }
+
+  @Test
+  void testBinaryFormatterWritesFixedWidthRows() throws IOException {
+    var formatter = new BinaryFormatter<SampleData>();
+    var items =
+        List.of(
+            createSampleData(),
+            new SampleData(null, -1, Double.NaN, null),
+            new SampleData("ü".repeat(8), 0, 0.5, ZonedDateTime.parse("1960-01-01T00:00Z")));
+    var names = List.of("name", "count", "value", "timestamp");
+
+    var bytes =
+        ByteBuffer.wrap(
+                formatBinary(sink -> formatter.format(binaryFields(), names, items.stream(), sink)))
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+    assertEquals("SOLROWS1", new String(bytes.array(), 0, 8, StandardCharsets.US_ASCII));
+    int headerSize = bytes.getInt(8);
+    int rowSize = bytes.getInt(12);
+    assertEquals(0, headerSize % 8);
+    assertEquals(16 + 8 + 8 + 8, rowSize);
+    assertEquals(
+        "name:S16,count:<i8,value:<f8,timestamp:<M8[ms]",
+        new String(bytes.array(), 16, headerSize - 16, StandardCharsets.UTF_8).strip());
+    assertEquals(headerSize + 3 * rowSize, bytes.capacity());
+
+    bytes.position(headerSize);
+    var name = new byte[BinaryFormatter.TEXT_WIDTH];
+    bytes.get(name);
+    assertEquals("Test Item", new String(name, StandardCharsets.UTF_8).replace("\0", ""));
+    assertEquals(42, bytes.getLong());
+    assertEquals(123.456789, bytes.getDouble());
+    assertEquals(
+        ZonedDateTime.parse("2023-05-01T12:34:56+02:00").toInstant().toEpochMilli(),
+        bytes.getLong());
+
+    bytes.get(name);
+    assertArrayEquals(new byte[BinaryFormatter.TEXT_WIDTH], name);
+    assertEquals(-1, bytes.getLong());
+    assertTrue(Double.isNaN(bytes.getDouble()));
+    assertEquals(Long.MIN_VALUE, bytes.getLong());
+
+    bytes.get(name);
+    assertEquals("ü".repeat(8), new String(name, StandardCharsets.UTF_8));
+    assertEquals(0, bytes.getLong());
+    assertEquals(0.5, bytes.getDouble());
+    assertEquals(-315_619_200_000L, bytes.getLong());
+  }
+
+  @Test
+  void testBinaryParallelFormattingMatchesSequential() throws IOException {
+    var formatter = new BinaryFormatter<SampleData>();
+    var fields = binaryFields();
+    var names = List.of("timestamp", "value", "name");
+    var start = ZonedDateTime.parse("2023-05-01T12:34:56+02:00");
+    Function<Integer, SampleData> compute =
+        i -> new SampleData("item " + i, i, i / 7.0, start.plusMinutes(i));
+
+    for (int count : new int[] {0, 1, 5_000}) {
+      var expected =
+          formatBinary(
+              sink ->
+                  formatter.format(
+                      fields, names, IntStream.range(0, count).boxed().map(compute), sink));
+      var parallel =
+          formatBinary(
+              sink ->
+                  formatter.formatParallel(
+                      fields, names, IntStream.range(0, count).boxed(), compute, sink, 3, true));
+      var chunks =
+          formatBinary(
+              sink ->
+                  formatter.formatParallelChunks(
+                      fields,
+                      names,
+                      Stream.of(
+                          IntStream.range(0, count / 2).boxed(),
+                          IntStream.range(count / 2, count).boxed()),
+                      compute,
+                      sink,
+                      3,
+                      true));
+      assertArrayEquals(expected, parallel, "x" + count);
+      assertArrayEquals(expected, chunks, "x" + count);
+    }
+  }
+
+  @Test
+  void testBinaryFormatterRejectsCharacterOutputAndLongText() {
+    var formatter = new BinaryFormatter<SampleData>();
+    var names = List.of("name", "count");
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            formatter.format(
+                binaryFields(), names, Stream.of(createSampleData()), new StringBuilder()));
+    var e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                formatBinary(
+                    sink ->
+                        formatter.format(
+                            binaryFields(),
+                            names,
+                            Stream.of(new SampleData("x".repeat(17), 1, 1, null)),
+                            sink)));
+    assertTrue(e.getMessage().contains("name"), e.getMessage());
+  }
 }
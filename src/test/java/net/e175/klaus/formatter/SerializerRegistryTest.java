@@ -3,9 +3,15 @@ package net.e175.klaus.formatter;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.IOException;
+import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
+import net.e175.klaus.solarpos.util.TimeFormats;
 import org.junit.jupiter.api.Test;
 
 class SerializerRegistryTest {
@@ -103,6 +109,49 @@ class SerializerRegistryTest {
     assertEquals("2024/01/15 10:30", registry.serialize(zdt, field));
   }
 
+  @Test
+  void timestampWritersMatchDateTimeFormatters() {
+    var writers =
+        Map.of(
+            TimestampWriter.ISO,
+            DateTimeFormatter.ofPattern(TimeFormats.OUTPUT_DATE_TIME_ISO_PATTERN),
+            TimestampWriter.HUMAN,
+            DateTimeFormatter.ofPattern(TimeFormats.OUTPUT_DATE_TIME_HUMAN_PATTERN),
+            TimestampWriter.ISO_REDUCED,
+            TimeFormats.ISO_LOCAL_DATE_TIME_REDUCED,
+            TimestampWriter.HUMAN_REDUCED,
+            TimeFormats.ISO_HUMAN_LOCAL_DATE_TIME_REDUCED);
+    var dateTimes =
+        List.of(
+            ZonedDateTime.of(2024, 1, 15, 10, 30, 45, 999_000_000, ZoneOffset.UTC),
+            ZonedDateTime.of(2024, 3, 31, 2, 30, 0, 0, ZoneId.of("Europe/Berlin")),
+            ZonedDateTime.of(2023, 12, 31, 23, 59, 59, 0, ZoneId.of("Asia/Kolkata")),
+            ZonedDateTime.of(1900, 6, 1, 12, 0, 0, 0, ZoneId.of("Europe/Amsterdam")), // +00:19:32
+            ZonedDateTime.of(5, 2, 3, 4, 5, 6, 0, ZoneOffset.ofHours(-8)),
+            ZonedDateTime.of(12024, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC),
+            ZonedDateTime.of(-44, 3, 15, 12, 0, 0, 0, ZoneOffset.ofHoursMinutes(1, 30)));
+
+    writers.forEach(
+        (writer, formatter) ->
+            dateTimes.forEach(dt -> assertEquals(formatter.format(dt), writer.format(dt))));
+  }
+
+  @Test
+  void timestampWriterOnlyForBuiltInUnquotedSerializers() {
+    var plain = new FieldDescriptor<>("time", x -> x);
+    var iso = plain.withPattern(TimeFormats.OUTPUT_DATE_TIME_ISO_PATTERN);
+    var custom = plain.withPattern("yyyy/MM/dd");
+
+    assertSame(TimestampWriter.ISO_REDUCED, SerializerRegistry.forCsv().timestampWriter(plain));
+    assertSame(TimestampWriter.ISO, SerializerRegistry.forCsv().timestampWriter(iso));
+    assertNull(SerializerRegistry.forCsv().timestampWriter(custom));
+    assertNull(SerializerRegistry.forJson().timestampWriter(plain));
+    assertNull(
+        SerializerRegistry.forCsv()
+            .register(ZonedDateTime.class, (dt, hints) -> "custom")
+            .timestampWriter(plain));
+  }
+
   @Test
   void jsonRegistrySerializesNullDateTimeAsNull() {
     var registry = SerializerRegistry.forJson();
@@ -121,6 +170,72 @@ class SerializerRegistryTest {
     assertEquals("3.14", sb.toString());
   }
 
+  @Test
+  void appendDoubleMatchesStringFormatOnRandomInputs() throws IOException {
+    var registry = SerializerRegistry.defaults();
+    var random = new Random(20240621L);
+
+    for (int i = 0; i < 200_000; i++) {
+      double value =
+          switch (i % 4) {
+            case 0 -> (random.nextDouble() - 0.5) * 720.0; // angles
+            case 1 -> random.nextDouble() * Math.pow(10, random.nextInt(16) - 6);
+            case 2 -> Math.round(random.nextDouble() * 1e6) / 1e6 + 5e-7; // decimal ties
+            default -> Double.longBitsToDouble(random.nextLong()); // anything, incl. NaN
+          };
+      int precision = random.nextInt(10);
+
+      var sb = new StringBuilder();
+      registry.appendDouble(value, precision, sb);
+      assertEquals(
+          String.format(Locale.US, SerializerRegistry.FORMAT_SPECS[precision], value),
+          sb.toString(),
+          "value " + value + " at precision " + precision);
+    }
+  }
+
+  @Test
+  void appendDoubleMatchesStringFormatOnEdgeCases() throws IOException {
+    var registry = SerializerRegistry.defaults();
+    double[] values = {
+      0.0,
+      -0.0,
+      0.5,
+      1.5,
+      2.5,
+      -2.5,
+      0.15,
+      0.25,
+      0.35,
+      1.005,
+      -0.004,
+      0.0049999,
+      9.9999999999,
+      999999.9999995,
+      1e-10,
+      123456.123456789,
+      1e15,
+      1e20,
+      -1e300,
+      Double.MIN_VALUE,
+      Double.MAX_VALUE,
+      Double.NaN,
+      Double.POSITIVE_INFINITY,
+      Double.NEGATIVE_INFINITY
+    };
+
+    for (double value : values) {
+      for (int precision = 0; precision < SerializerRegistry.FORMAT_SPECS.length; precision++) {
+        var sb = new StringBuilder();
+        registry.appendDouble(value, precision, sb);
+        assertEquals(
+            String.format(Locale.US, SerializerRegistry.FORMAT_SPECS[precision], value),
+            sb.toString(),
+            "value " + value + " at precision " + precision);
+      }
+    }
+  }
+
   @Test
   void appendFloatWithPrecision() throws IOException {
     var registry = SerializerRegistry.defaults();
@@ -154,6 +269,39 @@ class SerializerRegistryTest {
     assertEquals("INT:42", registry.serialize(42));
   }
 
+  @Test
+  void serializeDoubleMatchesBoxedSerialization() {
+    var field = FieldDescriptor.decimal("value", (Double x) -> x, 3).withUnit("°");
+
+    for (var registry :
+        List.of(
+            SerializerRegistry.defaults(),
+            SerializerRegistry.forText(),
+            SerializerRegistry.forCsv(),
+            SerializerRegistry.forJson())) {
+      assertEquals(registry.serialize(45.5, field), registry.serializeDouble(45.5, field));
+    }
+  }
+
+  @Test
+  void registeringDoubleSerializerAlsoAppliesToPrimitives() {
+    var registry = SerializerRegistry.forCsv().register(Double.class, (d, hints) -> "D:" + d);
+    var field = new FieldDescriptor<>("value", x -> x);
+
+    assertEquals("D:1.5", registry.serializeDouble(1.5, field));
+  }
+
+  @Test
+  void appendLongWritesAllDigits() throws IOException {
+    var registry = SerializerRegistry.defaults();
+
+    for (long value : new long[] {0, 7, -42, 1_000_000, Long.MAX_VALUE, Long.MIN_VALUE}) {
+      var sb = new StringBuilder();
+      registry.appendLong(value, sb);
+      assertEquals(Long.toString(value), sb.toString());
+    }
+  }
+
   @Test
   void serializerUsesHierarchy() {
     var registry = SerializerRegistry.defaults();
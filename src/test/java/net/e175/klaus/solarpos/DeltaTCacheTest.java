@@ -0,0 +1,50 @@
+package net.e175.klaus.solarpos;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.stream.IntStream;
+import net.e175.klaus.solarpositioning.DeltaT;
+import org.junit.jupiter.api.Test;
+
+class DeltaTCacheTest {
+
+  @Test
+  void matchesEstimateAcrossCenturies() {
+    var cache = new DeltaTCache();
+    for (var date = LocalDate.of(-600, 1, 1);
+        date.isBefore(LocalDate.of(2200, 1, 1));
+        date = date.plusDays(17)) {
+      assertEquals(DeltaT.estimate(date), cache.estimate(date), 0.0, date.toString());
+      assertEquals(DeltaT.estimate(date), cache.estimate(date), 0.0, date.toString());
+    }
+  }
+
+  @Test
+  void collidingMonthsReplaceEachOther() {
+    var cache = new DeltaTCache();
+    var date = LocalDate.of(1024, 6, 21);
+    var colliding = date.plusMonths(DeltaTCache.SIZE);
+    var sameMonth = date.withDayOfMonth(1);
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(DeltaT.estimate(date), cache.estimate(date), 0.0);
+      assertEquals(DeltaT.estimate(colliding), cache.estimate(colliding), 0.0);
+      assertEquals(DeltaT.estimate(sameMonth), cache.estimate(sameMonth), 0.0);
+    }
+  }
+
+  @Test
+  void isSafeForConcurrentUse() {
+    var cache = new DeltaTCache();
+    var start = LocalDate.of(1900, 1, 1);
+
+    IntStream.range(0, 200_000)
+        .parallel()
+        .forEach(
+            i -> {
+              var date = start.plusDays(i % (100 * DeltaTCache.SIZE));
+              assertEquals(DeltaT.estimate(date), cache.estimate(date), 0.0);
+            });
+  }
+}
@@ -6,6 +6,8 @@ import java.io.StringReader;
 import java.util.List;
 import org.apache.commons.csv.CSVRecord;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 
 final class GeographicSweepTest {
 
@@ -191,4 +193,31 @@ final class GeographicSweepTest {
     assertEquals(3, records.getFirst().size());
     assertTrue(records.getFirst().get(0).contains("2024-06-21T12:00:00")); // dateTime column
   }
+
+  @ParameterizedTest
+  @CsvSource({
+    "csv, position, SPA",
+    "json, position, SPA",
+    "human, position, SPA",
+    "csv, position, GRENA3",
+    "csv, sunrise, SPA",
+    "json, sunrise, SPA"
+  })
+  void parallelOutputMatchesSequential(String format, String command, String algorithm) {
+    var args = new java.util.ArrayList<>(List.of("--format=" + format, "40:50:0.5", "5:15:0.5"));
+    if (command.equals("position")) {
+      args.addAll(List.of("2024-06-21", command, "--step=3h", "--algorithm=" + algorithm));
+    } else {
+      args.addAll(List.of("2024-06", command));
+    }
+
+    var sequential = TestUtil.run(args.toArray(String[]::new));
+    args.add(0, "--parallel");
+    var parallel = TestUtil.run(args.toArray(String[]::new));
+
+    assertEquals(0, sequential.returnCode());
+    assertEquals(0, parallel.returnCode());
+    assertTrue(sequential.output().length() > 100_000);
+    assertEquals(sequential.output(), parallel.output());
+  }
 }
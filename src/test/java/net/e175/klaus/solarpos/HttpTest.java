@@ -0,0 +1,161 @@
+package net.e175.klaus.solarpos;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(60)
+class HttpTest {
+  private static HttpServer server;
+  private static HttpClient client;
+
+  @BeforeAll
+  static void startServer() throws IOException {
+    server =
+        HttpCommand.start(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), Caches.forServer(1024));
+    client = HttpClient.newHttpClient();
+  }
+
+  @AfterAll
+  static void stopServer() {
+    server.stop(0);
+  }
+
+  private static HttpResponse<String> get(String pathAndQuery)
+      throws IOException, InterruptedException {
+    var uri = URI.create("http://localhost:" + server.getAddress().getPort() + pathAndQuery);
+    return client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private static String expected(String... args) {
+    var result = TestUtil.run(args);
+    assertEquals(0, result.returnCode());
+    return result.output();
+  }
+
+  @Test
+  void answersLikeTheCommandLine() throws Exception {
+    var position =
+        get("/position?latitude=52.0&longitude=13.4&dateTime=2024-06-21&format=csv&step=6h");
+    assertEquals(200, position.statusCode(), position.body());
+    assertEquals("text/csv; charset=utf-8", position.headers().firstValue("Content-Type").get());
+    assertEquals(
+        expected("--format=csv", "52.0", "13.4", "2024-06-21", "position", "--step=6h"),
+        position.body());
+
+    var sunrise =
+        get("/sunrise?format=json&latitude=-33.9&longitude=18.4&dateTime=2024-06&twilight&deltat");
+    assertEquals(200, sunrise.statusCode(), sunrise.body());
+    assertEquals("application/x-ndjson", sunrise.headers().firstValue("Content-Type").get());
+    assertEquals(
+        expected(
+            "--format=json", "--deltat=NaN", "-33.9", "18.4", "2024-06", "sunrise", "--twilight"),
+        sunrise.body());
+  }
+
+  @Test
+  void optionWithoutValueKeepsTheInputs() throws Exception {
+    var sunrise = get("/sunrise?latitude=52.0&longitude=13.4&dateTime=2024-06&format=csv&deltat");
+    assertEquals(200, sunrise.statusCode(), sunrise.body());
+    assertEquals(
+        expected("--format=csv", "--deltat=NaN", "52.0", "13.4", "2024-06", "sunrise"),
+        sunrise.body());
+  }
+
+  @Test
+  void decodesQueryParameters() throws Exception {
+    var response =
+        get(
+            "/position?latitude=52.0&longitude=13.4&dateTime=2024-06-21T12%3A00%2B02%3A00"
+                + "&timezone=Europe%2FBerlin&show-inputs=false&format=CSV&headers=false");
+    assertEquals(200, response.statusCode(), response.body());
+    assertEquals(
+        expected(
+            "--timezone=Europe/Berlin",
+            "--show-inputs=false",
+            "--format=csv",
+            "--headers=false",
+            "52.0",
+            "13.4",
+            "2024-06-21T12:00+02:00",
+            "position"),
+        response.body());
+  }
+
+  @Test
+  void rejectsBadRequests() throws Exception {
+    var missing = get("/position?latitude=52.0&longitude=13.4");
+    assertEquals(400, missing.statusCode());
+    assertEquals("Missing query parameter: dateTime\n", missing.body());
+
+    var unknown = get("/position?latitude=52.0&longitude=13.4&dateTime=now&twilight");
+    assertEquals(400, unknown.statusCode());
+    assertEquals("Unknown query parameter: twilight\n", unknown.body());
+
+    for (var query :
+        List.of(
+            "latitude=@/etc/hosts&longitude=0&dateTime=now",
+            "latitude=52&longitude=0&dateTime=now&output=x.csv",
+            "latitude=52&longitude=0&dateTime=now&format=xml",
+            "latitude=95&longitude=0&dateTime=now")) {
+      var response = get("/position?" + query);
+      assertEquals(400, response.statusCode(), query);
+      assertFalse(response.body().isBlank(), query);
+    }
+
+    assertEquals(404, get("/positions?latitude=52.0").statusCode());
+    var post =
+        client.send(
+            HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + server.getAddress().getPort() + "/sunrise"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build(),
+            HttpResponse.BodyHandlers.ofString());
+    assertEquals(405, post.statusCode());
+  }
+
+  @Test
+  void streamsLargeResponsesAndConcurrentRequests() throws Exception {
+    var large = get("/position?latitude=52.0&longitude=13.4&dateTime=2024&format=csv&step=1h");
+    assertEquals(200, large.statusCode());
+    assertEquals(
+        expected("--format=csv", "52.0", "13.4", "2024", "position", "--step=1h"), large.body());
+
+    var futures =
+        IntStream.range(0, 20)
+            .mapToObj(
+                i ->
+                    client.sendAsync(
+                        HttpRequest.newBuilder(
+                                URI.create(
+                                    "http://localhost:"
+                                        + server.getAddress().getPort()
+                                        + "/sunrise?format=csv&latitude="
+                                        + i
+                                        + "&longitude=10&dateTime=2024-03-20"))
+                            .build(),
+                        HttpResponse.BodyHandlers.ofString()))
+            .toList();
+    for (int i = 0; i < futures.size(); i++) {
+      var response = futures.get(i).get();
+      assertEquals(200, response.statusCode());
+      assertEquals(
+          expected("--format=csv", Integer.toString(i), "10", "2024-03-20", "sunrise"),
+          response.body());
+    }
+  }
+}
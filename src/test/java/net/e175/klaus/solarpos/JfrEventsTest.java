@@ -0,0 +1,91 @@
+package net.e175.klaus.solarpos;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JfrEventsTest {
+  private static final List<String> EVENTS =
+      List.of(
+          "solarpos.Batch",
+          "solarpos.InputChunkParsed",
+          "solarpos.RowsComputed",
+          "solarpos.OutputFlushed");
+
+  private static List<RecordedEvent> record(Path tempDir, String... args) throws IOException {
+    try (var recording = new Recording()) {
+      EVENTS.forEach(name -> recording.enable(name).withoutThreshold());
+      recording.start();
+      var result = TestUtil.run(args);
+      assertEquals(0, result.returnCode());
+      recording.stop();
+      var file = Files.createTempFile(tempDir, "recording", ".jfr");
+      recording.dump(file);
+      return RecordingFile.readAllEvents(file);
+    }
+  }
+
+  private static long sum(List<RecordedEvent> events, String name, String field) {
+    return events.stream()
+        .filter(e -> e.getEventType().getName().equals(name))
+        .mapToLong(e -> e.getLong(field))
+        .sum();
+  }
+
+  @Test
+  void reportsPipelineStages(@TempDir Path tempDir) throws IOException {
+    var pairedFile = tempDir.resolve("paired.txt");
+    var content = new StringBuilder("# comment\n");
+    for (int i = 0; i < 5000; i++) {
+      content.append(
+          "%.2f %.2f 2023-06-%02dT12:00\n".formatted(i % 170 - 85.0, i % 360 - 180.0, i % 28 + 1));
+    }
+    Files.writeString(pairedFile, content);
+
+    for (var parallel : new String[] {"--no-parallel", "--parallel"}) {
+      var output = tempDir.resolve("out.csv");
+      var events =
+          record(
+              tempDir,
+              parallel,
+              "--format=csv",
+              "--output=" + output,
+              "@" + pairedFile,
+              "position");
+
+      var batches =
+          events.stream().filter(e -> e.getEventType().getName().equals("solarpos.Batch")).toList();
+      assertEquals(1, batches.size(), parallel);
+      assertEquals("position", batches.getFirst().getString("command"));
+      assertEquals(5000, batches.getFirst().getLong("rows"), parallel);
+      assertEquals(Files.size(output), batches.getFirst().getLong("bytes"), parallel);
+
+      assertEquals(5000, sum(events, "solarpos.InputChunkParsed", "items"), parallel);
+      assertEquals(
+          Files.size(pairedFile), sum(events, "solarpos.InputChunkParsed", "bytes"), parallel);
+      assertEquals(5000, sum(events, "solarpos.RowsComputed", "rows"), parallel);
+      assertEquals(Files.size(output), sum(events, "solarpos.OutputFlushed", "bytes"), parallel);
+    }
+  }
+
+  @Test
+  void reportsWrittenBytesOfTextOutput(@TempDir Path tempDir) throws IOException {
+    var events = record(tempDir, "--format=json", "52.0", "13.4", "2024-06", "sunrise");
+    var output = TestUtil.run("--format=json", "52.0", "13.4", "2024-06", "sunrise").output();
+
+    assertEquals(30, sum(events, "solarpos.Batch", "rows"));
+    assertEquals(30, sum(events, "solarpos.RowsComputed", "rows"));
+    assertEquals(
+        output.getBytes(StandardCharsets.UTF_8).length,
+        sum(events, "solarpos.OutputFlushed", "bytes"));
+  }
+}
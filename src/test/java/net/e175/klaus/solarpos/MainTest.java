@@ -3,6 +3,7 @@ package net.e175.klaus.solarpos;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.time.*;
 import org.junit.jupiter.api.Test;
@@ -115,6 +116,125 @@ class MainTest {
     // The error is correctly detected as shown by non-zero exit code
   }
 
+  @Test
+  void parallelPairedDataMatchesSequential(@TempDir java.nio.file.Path tempDir) throws IOException {
+    var pairedFile = tempDir.resolve("large-paired.txt");
+    var content = new StringBuilder("# spans several chunks\n");
+    for (int i = 0; i < 6_000; i++) {
+      content.append(
+          "%.2f %.2f 2023-06-%02dT%02d:%02d\r\n"
+              .formatted(i % 170 - 85.0, i % 360 - 180.0, i % 28 + 1, i % 24, i % 60));
+    }
+    Files.writeString(pairedFile, content);
+    assertTrue(Files.size(pairedFile) > 1 << 17); // several 64 KiB chunks
+
+    for (var command : new String[] {"position", "sunrise"}) {
+      for (var format : new String[] {"csv", "json"}) {
+        var args = new String[] {"--format=" + format, "@" + pairedFile, command};
+        var sequential = TestUtil.run(args);
+        var parallel = TestUtil.run(prepend("--parallel", args));
+        var unordered = TestUtil.run(prepend("--no-ordered", prepend("--parallel", args)));
+
+        assertEquals(0, sequential.returnCode());
+        assertTrue(sequential.output().lines().count() >= 6_000);
+        assertEquals(sequential.output(), parallel.output(), command + " " + format);
+        assertEquals(
+            sequential.output().lines().sorted().toList(),
+            unordered.output().lines().sorted().toList(),
+            command + " " + format);
+      }
+    }
+  }
+
+  @Test
+  void parallelPairedDataRejectsInvalidLines(@TempDir java.nio.file.Path tempDir)
+      throws IOException {
+    var pairedFile = tempDir.resolve("invalid-paired.txt");
+    Files.writeString(pairedFile, "25.0 50.0 2023-06-21T12:00\n25.0 50.0\n");
+
+    var result = TestUtil.run("--parallel", "@" + pairedFile, "position");
+
+    assertNotEquals(0, result.returnCode());
+  }
+
+  @Test
+  void convertedPairedDataGivesSameResults(@TempDir java.nio.file.Path tempDir) throws IOException {
+    var textFile = tempDir.resolve("paired.txt");
+    Files.writeString(
+        textFile,
+        """
+        25.0 50.0 2023-06-21T12:00
+        30.0,60.0,2023-07-15T14:30+02:00
+        -33.9 18.4 2023-12-01T06:00+02:00[Africa/Johannesburg]
+        """);
+    var binaryFile = tempDir.resolve("paired.bin");
+
+    var convert = TestUtil.run("--output=" + binaryFile, "@" + textFile, "convert");
+
+    assertEquals(0, convert.returnCode());
+    assertEquals("", convert.output());
+    for (var command : new String[] {"position", "sunrise"}) {
+      var fromText = TestUtil.run("--format=csv", "@" + textFile, command);
+      var fromBinary = TestUtil.run("--format=csv", "@" + binaryFile, command);
+      assertEquals(0, fromBinary.returnCode());
+      assertEquals(fromText.output(), fromBinary.output(), command);
+    }
+  }
+
+  @Test
+  void convertRequiresPairedDataAndByteOutput(@TempDir java.nio.file.Path tempDir)
+      throws IOException {
+    var textFile = tempDir.resolve("paired.txt");
+    Files.writeString(textFile, "25.0 50.0 2023-06-21T12:00\n");
+
+    assertNotEquals(0, TestUtil.run("@" + textFile, "convert").returnCode());
+    assertNotEquals(
+        0,
+        TestUtil.run("--output=" + tempDir.resolve("x.bin"), "25.0", "50.0", "2023", "convert")
+            .returnCode());
+  }
+
+  @Test
+  void writesBinaryRows(@TempDir java.nio.file.Path tempDir) throws IOException {
+    var outputFile = tempDir.resolve("out.bin");
+    String[][] commands = {
+      {"52.0", "13.4", "2024-06-21", "position", "--step=3600"},
+      {"52.0", "13.4", "2024-06", "sunrise", "--twilight"}
+    };
+
+    for (var command : commands) {
+      var csv = TestUtil.run(prepend("--headers", prepend("--format=csv", command)));
+      var binary =
+          TestUtil.run(prepend("--output=" + outputFile, prepend("--format=binary", command)));
+      assertEquals(0, binary.returnCode(), binary.output());
+
+      var bytes =
+          java.nio.ByteBuffer.wrap(Files.readAllBytes(outputFile))
+              .order(java.nio.ByteOrder.LITTLE_ENDIAN);
+      assertEquals("SOLROWS1", new String(bytes.array(), 0, 8, StandardCharsets.US_ASCII));
+      int headerSize = bytes.getInt(8);
+      int rowSize = bytes.getInt(12);
+      var columns =
+          new String(bytes.array(), 16, headerSize - 16, StandardCharsets.UTF_8).strip().split(",");
+      var csvLines = csv.output().lines().toList();
+      assertEquals(csvLines.get(0).split(",").length, columns.length, String.join(",", columns));
+      assertEquals((csvLines.size() - 1) * rowSize, bytes.capacity() - headerSize);
+    }
+  }
+
+  @Test
+  void binaryFormatRequiresByteOutput() {
+    var result = TestUtil.run("--format=binary", "52.0", "13.4", "2024-06-21", "position");
+    assertNotEquals(0, result.returnCode());
+  }
+
+  private static String[] prepend(String first, String[] rest) {
+    var args = new String[rest.length + 1];
+    args[0] = first;
+    System.arraycopy(rest, 0, args, 1, rest.length);
+    return args;
+  }
+
   @Test
   void distinguishesCoordinateFilesFromPairedData(@TempDir java.nio.file.Path tempDir)
       throws IOException {
@@ -130,4 +250,39 @@ class MainTest {
     var lines = result.output().lines().filter(line -> line.contains("date/time")).toList();
     assertEquals(2, lines.size());
   }
+
+  @Test
+  void writesToOutputFile(@TempDir java.nio.file.Path tempDir) throws IOException {
+    var outputFile = tempDir.resolve("out.csv");
+    String[] args = {"--format=csv", "52.0", "13.4", "2024-06-21", "position", "--step=3600"};
+
+    var toStdout = TestUtil.run(args);
+    var toFile = TestUtil.run(concat("--output=" + outputFile, args));
+
+    assertEquals(0, toFile.returnCode());
+    assertEquals("", toFile.output());
+    assertEquals(toStdout.output(), Files.readString(outputFile));
+    assertEquals(1 + 24, toStdout.output().lines().count()); // header plus hourly rows
+  }
+
+  @Test
+  void outputFileIsTruncated(@TempDir java.nio.file.Path tempDir) throws IOException {
+    var outputFile = tempDir.resolve("out.txt");
+    Files.writeString(outputFile, "x".repeat(10_000));
+
+    var result =
+        TestUtil.run("--output", outputFile.toString(), "52.0", "13.4", "2024-06-21", "sunrise");
+
+    assertEquals(0, result.returnCode());
+    var written = Files.readString(outputFile);
+    assertFalse(written.contains("x"));
+    assertTrue(written.contains("sunrise"));
+  }
+
+  private static String[] concat(String first, String... rest) {
+    var all = new String[rest.length + 1];
+    all[0] = first;
+    System.arraycopy(rest, 0, all, 1, rest.length);
+    return all;
+  }
 }
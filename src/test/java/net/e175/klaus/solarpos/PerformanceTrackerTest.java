@@ -0,0 +1,109 @@
+package net.e175.klaus.solarpos;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class PerformanceTrackerTest {
+
+  private static PerformanceTracker tracker(PerformanceTracker.Report report, boolean parallel) {
+    return PerformanceTracker.create(true, report, parallel);
+  }
+
+  @Test
+  void disabledTrackerLeavesStreamsAlone() {
+    assertNull(PerformanceTracker.create(false, PerformanceTracker.Report.HUMAN, false));
+    var stream = Stream.of(1, 2, 3);
+    assertSame(stream, PerformanceTracker.timeInputIfNeeded(null, stream));
+  }
+
+  @Test
+  void countsAndTimesRows() throws Exception {
+    var tracker = tracker(PerformanceTracker.Report.HUMAN, false);
+    var input = tracker.timeInput(IntStream.range(0, 1000).boxed());
+    var rows = input.<Supplier<Integer>>map(i -> () -> i * 2);
+    assertEquals(999_000, tracker.trackRows(rows).mapToInt(Supplier::get).sum());
+    var writer = new StringWriter();
+    try (var out = tracker.timeOutput(writer)) {
+      out.write("0123456789");
+    }
+    assertEquals("0123456789", writer.toString());
+
+    var stats = tracker.stats();
+    assertEquals(1000, stats.items());
+    assertEquals(1000, LongStream.of(stats.histogram()).sum());
+    assertEquals(10, stats.outputBytes());
+    assertTrue(stats.inputNanos() >= 0 && stats.computeNanos() >= 0 && stats.formatNanos() >= 0);
+    assertTrue(
+        stats.inputNanos() + stats.computeNanos() + stats.outputNanos() <= stats.wallNanos());
+    assertTrue(stats.latencyQuantile(0.5) <= stats.latencyQuantile(0.99));
+    assertTrue(stats.latencyQuantile(0.99) <= stats.maxLatencyNanos());
+  }
+
+  @Test
+  void inputTimingClosesSource() {
+    var tracker = tracker(PerformanceTracker.Report.HUMAN, false);
+    var closed = new AtomicBoolean();
+    try (var timed = tracker.timeInput(Stream.of("a", "b").onClose(() -> closed.set(true)))) {
+      assertEquals(2, timed.count());
+    }
+    assertTrue(closed.get());
+  }
+
+  @Test
+  void reportsJson() {
+    var tracker = tracker(PerformanceTracker.Report.JSON, true);
+    tracker.trackRows(Stream.<Supplier<String>>of(() -> "x", () -> "y")).forEach(Supplier::get);
+
+    var err = new ByteArrayOutputStream();
+    tracker.printStats(new PrintStream(err, true, StandardCharsets.UTF_8));
+    var json = JsonParser.parseString(err.toString(StandardCharsets.UTF_8)).getAsJsonObject();
+
+    assertEquals(2, json.get("values").getAsLong());
+    assertTrue(json.getAsJsonObject("stages").get("formatNanos").isJsonNull()); // parallel
+    assertEquals(
+        2,
+        json.getAsJsonObject("computeLatencyNanos").getAsJsonArray("histogram").asList().stream()
+            .mapToLong(bucket -> bucket.getAsJsonArray().get(1).getAsLong())
+            .sum());
+    assertTrue(json.getAsJsonObject("gc").get("collections").getAsLong() >= 0);
+  }
+
+  @Test
+  void reportsText() {
+    var tracker = tracker(PerformanceTracker.Report.HUMAN, false);
+    tracker.trackRows(Stream.<Supplier<String>>of(() -> "x")).forEach(Supplier::get);
+
+    var text = tracker.stats().toText();
+    assertTrue(text.startsWith("Performance: 1 values in "), text);
+    for (var stage : new String[] {"input", "compute", "format", "output", "gc:", "memory:"}) {
+      assertTrue(text.contains("  " + stage), text);
+    }
+  }
+
+  @Test
+  void doesNotChangeCommandOutput() {
+    for (var parallel : new String[] {"--no-parallel", "--parallel"}) {
+      var args = new String[] {parallel, "--format=csv", "50:51:0.5", "10", "2024-06", "sunrise"};
+      var plain = TestUtil.run(args);
+      var err = System.err;
+      try {
+        System.setErr(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+        var perfArgs = Stream.concat(Stream.of("--perf"), Stream.of(args)).toArray(String[]::new);
+        assertEquals(plain, TestUtil.run(perfArgs), parallel);
+      } finally {
+        System.setErr(err);
+      }
+    }
+  }
+}
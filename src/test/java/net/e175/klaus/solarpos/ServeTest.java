@@ -0,0 +1,230 @@
+package net.e175.klaus.solarpos;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ServeTest {
+
+  /** A client connection that sends request lines and reads responses up to their status line. */
+  private record Client(SocketChannel channel, BufferedReader in, PrintWriter out)
+      implements AutoCloseable {
+
+    static Client connect(java.net.SocketAddress address) throws IOException {
+      var channel = SocketChannel.open(address);
+      return new Client(
+          channel,
+          new BufferedReader(
+              new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8)),
+          new PrintWriter(
+              new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8)));
+    }
+
+    List<String> request(String line) throws IOException {
+      out.print(line + "\n");
+      out.flush();
+      var lines = new ArrayList<String>();
+      String response;
+      while ((response = in.readLine()) != null) {
+        lines.add(response);
+        if (response.startsWith("# ")) {
+          return lines;
+        }
+      }
+      fail("connection closed after " + lines);
+      return lines;
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
+  private static void withServer(ServerSocketChannel server, ServerTest test) throws Exception {
+    var executor = Executors.newSingleThreadExecutor();
+    var serving =
+        executor.submit(
+            () -> {
+              ServeCommand.serve(server, Caches.forServer(1024));
+              return null;
+            });
+    try {
+      test.run(server.getLocalAddress());
+    } finally {
+      server.close();
+      try {
+        serving.get(10, TimeUnit.SECONDS);
+      } catch (ExecutionException | TimeoutException e) {
+        fail("server did not stop cleanly", e);
+      }
+      executor.shutdownNow();
+    }
+  }
+
+  private interface ServerTest {
+    void run(java.net.SocketAddress address) throws Exception;
+  }
+
+  private static List<String> expected(String... args) {
+    var result = TestUtil.run(args);
+    assertEquals(0, result.returnCode());
+    var lines = new ArrayList<>(result.output().lines().toList());
+    lines.add(ServeCommand.OK);
+    return lines;
+  }
+
+  @Test
+  void answersRequestsLikeTheCommandLine() throws Exception {
+    var server =
+        ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    withServer(
+        server,
+        address -> {
+          try (var client = Client.connect(address)) {
+            assertEquals(
+                expected("--format=csv", "52.0", "13.4", "2024-06-21T12:00Z", "position"),
+                client.request("--format=csv 52.0 13.4 2024-06-21T12:00Z position"));
+            assertEquals(
+                expected("--format=json", "52.0", "13.4", "2024-06", "sunrise", "--twilight"),
+                client.request("  --format=json 52.0\t13.4 2024-06 sunrise --twilight  "));
+            assertEquals(
+                expected("52.0", "13.4", "2024-06-21", "position", "--step=6h"),
+                client.request("52.0 13.4 2024-06-21 position --step=6h"));
+            // command lines are reused, without the options of earlier requests
+            assertEquals(
+                expected("52.0", "13.4", "2024-06", "sunrise"),
+                client.request("52.0 13.4 2024-06 sunrise"));
+            assertEquals(
+                expected("52.0", "13.4", "2024-06-21T12:00Z", "position"),
+                client.request("52.0 13.4 2024-06-21T12:00Z position"));
+          }
+        });
+  }
+
+  @Test
+  void reportsErrorsAndKeepsTheConnection() throws Exception {
+    var server =
+        ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    withServer(
+        server,
+        address -> {
+          try (var client = Client.connect(address)) {
+            assertEquals(
+                List.of(ServeCommand.ERROR + "Unknown option: '--bogus'"),
+                client.request("52.0 13.4 2024-06-21 position --bogus"));
+            assertTrue(client.request("@- position").get(0).startsWith(ServeCommand.ERROR));
+            assertTrue(client.request("serve").get(0).startsWith(ServeCommand.ERROR));
+            assertEquals(
+                expected("52.0", "13.4", "2024-06-21T12:00Z", "position"),
+                client.request("52.0 13.4 2024-06-21T12:00Z position"));
+          }
+        });
+  }
+
+  @Test
+  void rejectsFilesAndFileWritingCommands(@TempDir Path tempDir) throws Exception {
+    var coordinates = tempDir.resolve("coordinates.txt");
+    Files.writeString(coordinates, "secret 1\n");
+    var written = tempDir.resolve("written");
+    var requests =
+        List.of(
+            "--output=" + written + " 52.0 13.4 now position",
+            "--output " + written + " 52.0 13.4 now position",
+            "--out=" + written + " 52.0 13.4 now position",
+            "@" + coordinates + " 2024-06-21 sunrise",
+            "52.0 13.4 @" + coordinates + " sunrise",
+            "--timezone=@" + coordinates + " 52.0 13.4 now position",
+            "52.0 13.4 2024 sunrise --table=" + written,
+            "52.0 13.4 2024 sunrise --tab " + written,
+            "52.0 13.4 2024 precompute",
+            "@" + coordinates + " convert",
+            "serve");
+    var server =
+        ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    withServer(
+        server,
+        address -> {
+          try (var client = Client.connect(address)) {
+            for (var request : requests) {
+              var response = client.request(request);
+              assertEquals(1, response.size(), request);
+              assertTrue(response.get(0).startsWith(ServeCommand.ERROR), request);
+              assertFalse(response.get(0).contains("secret"), request);
+            }
+          }
+        });
+
+    try (var files = Files.list(tempDir)) {
+      assertEquals(List.of(coordinates), files.toList());
+    }
+  }
+
+  @Test
+  void servesConcurrentClientsOnUnixSocket(@TempDir Path tempDir) throws Exception {
+    var server =
+        ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+            .bind(UnixDomainSocketAddress.of(tempDir.resolve("solarpos.sock")));
+    withServer(
+        server,
+        address -> {
+          var clients = Executors.newFixedThreadPool(4);
+          try {
+            var results = new ArrayList<java.util.concurrent.Future<List<String>>>();
+            for (int i = 0; i < 8; i++) {
+              var latitude = Integer.toString(40 + i);
+              results.add(
+                  clients.submit(
+                      () -> {
+                        try (var client = Client.connect(address)) {
+                          return client.request(
+                              "--format=csv --show-inputs " + latitude + " 13.4 2024 sunrise");
+                        }
+                      }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+              assertEquals(
+                  expected(
+                      "--format=csv",
+                      "--show-inputs",
+                      Integer.toString(40 + i),
+                      "13.4",
+                      "2024",
+                      "sunrise"),
+                  results.get(i).get());
+            }
+          } finally {
+            clients.shutdownNow();
+          }
+        });
+  }
+
+  @Test
+  void serveNeedsNoInputs() {
+    assertArrayEquals(
+        new String[] {"0", "0", "now", "serve", "--port=7070"},
+        Main.preprocessCoordinateFileArgs(new String[] {"serve", "--port=7070"}));
+  }
+}
@@ -0,0 +1,159 @@
+package net.e175.klaus.solarpos;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import net.e175.klaus.solarpositioning.DeltaT;
+import net.e175.klaus.solarpositioning.SPA;
+import org.junit.jupiter.api.Test;
+
+class SpaBatchTest {
+
+  private static void assertMatchesLibrary(
+      ZonedDateTime dateTime,
+      double[] latitudes,
+      double[] longitudes,
+      double elevation,
+      double pressure,
+      double temperature) {
+    var time =
+        SPA.calculateSpaTimeDependentParts(dateTime, DeltaT.estimate(dateTime.toLocalDate()));
+    int offset = 3;
+    int length = latitudes.length - offset;
+    var azimuth = new double[length];
+    var zenith = new double[length];
+
+    SpaBatch.calculate(
+        time,
+        latitudes,
+        longitudes,
+        offset,
+        length,
+        elevation,
+        pressure,
+        temperature,
+        azimuth,
+        zenith);
+
+    for (int k = 0; k < length; k++) {
+      var expected =
+          SPA.calculateSolarPositionWithTimeDependentParts(
+              latitudes[offset + k],
+              longitudes[offset + k],
+              elevation,
+              pressure,
+              temperature,
+              time);
+      var where = dateTime + " at " + latitudes[offset + k] + "," + longitudes[offset + k];
+      assertEquals(expected.azimuth(), azimuth[k], 0.0, where);
+      assertEquals(expected.zenithAngle(), zenith[k], 0.0, where);
+    }
+  }
+
+  @Test
+  void matchesLibraryBitForBit() {
+    var random = new Random(7);
+    var start = ZonedDateTime.parse("1950-01-01T00:00Z");
+
+    for (int t = 0; t < 50; t++) {
+      var dateTime = start.plusMinutes(random.nextInt(100 * 365 * 24 * 60));
+      var latitudes = new double[500];
+      var longitudes = new double[500];
+      for (int i = 0; i < latitudes.length; i++) {
+        latitudes[i] = random.nextDouble() * 180.0 - 90.0;
+        longitudes[i] = random.nextDouble() * 360.0 - 180.0;
+      }
+      double elevation = random.nextDouble() * 4000.0;
+
+      assertMatchesLibrary(dateTime, latitudes, longitudes, elevation, 1013.0, 15.0);
+      assertMatchesLibrary(dateTime, latitudes, longitudes, elevation, Double.NaN, Double.NaN);
+    }
+  }
+
+  @Test
+  void matchesLibraryAtGridEdges() {
+    double[] latitudes = {0, 0, 0, -90, -90, 90, 90, 0, 45.5, -45.5};
+    double[] longitudes = {0, 0, 0, -180, 180, -180, 180, 0, 179.999, -179.999};
+
+    for (var dateTime :
+        new String[] {"2024-06-21T12:00Z", "2024-12-21T00:00+14:00", "2000-03-20T07:35-05:00"}) {
+      assertMatchesLibrary(ZonedDateTime.parse(dateTime), latitudes, longitudes, 0, 1013, 15);
+      assertMatchesLibrary(ZonedDateTime.parse(dateTime), latitudes, longitudes, 0, 2999, -50);
+    }
+  }
+
+  @Test
+  void rejectsOutOfRangeCoordinates() {
+    var time = SPA.calculateSpaTimeDependentParts(ZonedDateTime.parse("2024-06-21T12:00Z"), 69);
+    var out = new double[1];
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            SpaBatch.calculate(
+                time, new double[] {91}, new double[] {0}, 0, 1, 0, 1013, 15, out, out));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            SpaBatch.calculate(
+                time, new double[] {0}, new double[] {-181}, 0, 1, 0, 1013, 15, out, out));
+  }
+
+  @Test
+  void gridMatchesLibraryBitForBit() {
+    var latitudes = CoordinateRange.parse("-60:75:5");
+    var longitudes = CoordinateRange.parse("-180:180:7.5");
+    var coordinates =
+        new InputMode.CoordinateRanges(
+                latitudes, longitudes, java.time.Year.of(2024), Optional.empty())
+            .coordinates()
+            .toList();
+
+    for (double elevation : new double[] {0, 2500}) {
+      var grid = GridGeometry.of(latitudes, longitudes, elevation);
+      assertEquals(coordinates.size(), grid.size());
+
+      for (var dateTime : new String[] {"2024-03-20T06:00Z", "1987-11-02T17:45+01:00"}) {
+        var time = SPA.calculateSpaTimeDependentParts(ZonedDateTime.parse(dateTime), 69);
+        int firstRow = 4;
+        int rowCount = grid.rows() - 7;
+        int size = rowCount * grid.columns();
+        var azimuth = new double[size];
+        var zenith = new double[size];
+
+        SpaBatch.calculate(time, grid, firstRow, rowCount, 1013, 15, azimuth, zenith);
+
+        for (int k = 0; k < size; k++) {
+          int point = firstRow * grid.columns() + k;
+          var coordinate = coordinates.get(point);
+          assertEquals(coordinate.latitude(), grid.latitudeOf(point));
+          assertEquals(coordinate.longitude(), grid.longitudeOf(point));
+
+          var expected =
+              SPA.calculateSolarPositionWithTimeDependentParts(
+                  coordinate.latitude(), coordinate.longitude(), elevation, 1013, 15, time);
+          assertEquals(expected.azimuth(), azimuth[k], 0.0, coordinate + " " + dateTime);
+          assertEquals(expected.zenithAngle(), zenith[k], 0.0, coordinate + " " + dateTime);
+        }
+      }
+    }
+  }
+
+  @Test
+  void coordinateListKeepsOrder() {
+    var points =
+        List.of(
+            new CoordinatePair(10, 20), new CoordinatePair(-5, 170), new CoordinatePair(10, 21));
+    var grid = GridGeometry.of(points.stream(), 0);
+
+    assertEquals(3, grid.rows());
+    assertEquals(1, grid.columns());
+    for (int i = 0; i < points.size(); i++) {
+      assertEquals(points.get(i).latitude(), grid.latitudeOf(i));
+      assertEquals(points.get(i).longitude(), grid.longitudeOf(i));
+    }
+  }
+}
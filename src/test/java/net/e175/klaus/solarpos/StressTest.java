@@ -2,13 +2,28 @@ package net.e175.klaus.solarpos;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import net.e175.klaus.formatter.ByteSink;
+import net.e175.klaus.formatter.CsvFormatter;
+import net.e175.klaus.formatter.FieldDescriptor;
+import net.e175.klaus.formatter.SerializerRegistry;
+import net.e175.klaus.solarpositioning.DeltaT;
 import org.apache.commons.csv.CSVRecord;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
  * Stress tests for geographic sweep functionality.
@@ -171,4 +186,117 @@ final class StressTest {
     // Memory usage should be reasonable (less than 500MB for 10k calculations)
     assertTrue(memoryUsed < 500, "Memory usage should be reasonable");
   }
+
+  private record ExportRow(
+      double latitude, double longitude, ZonedDateTime dateTime, double azimuth, double zenith) {}
+
+  private static final List<FieldDescriptor<ExportRow>> EXPORT_FIELDS =
+      List.of(
+          FieldDescriptor.decimal("latitude", ExportRow::latitude, 5),
+          FieldDescriptor.decimal("longitude", ExportRow::longitude, 5),
+          new FieldDescriptor<>("dateTime", ExportRow::dateTime),
+          FieldDescriptor.decimal("azimuth", ExportRow::azimuth, 5),
+          FieldDescriptor.decimal("zenith", ExportRow::zenith, 5));
+
+  private static Stream<ExportRow> exportRows(int count) {
+    var start = ZonedDateTime.parse("2024-01-01T00:00:00+01:00");
+    return IntStream.range(0, count)
+        .mapToObj(
+            i ->
+                new ExportRow(
+                    40.0 + (i % 100) * 0.1,
+                    -5.0 + (i % 37) * 0.25,
+                    start.plusMinutes(i / 100),
+                    (i * 0.137) % 360.0,
+                    (i * 0.071) % 180.0));
+  }
+
+  private static long exportCsv(Path file, boolean byteSink, int rows) throws IOException {
+    var formatter = new CsvFormatter<ExportRow>(SerializerRegistry.forCsv(), true);
+    var names = EXPORT_FIELDS.stream().map(FieldDescriptor::name).toList();
+    var start = System.nanoTime();
+    if (byteSink) {
+      try (var out =
+          ByteSink.of(
+              FileChannel.open(
+                  file,
+                  StandardOpenOption.CREATE,
+                  StandardOpenOption.TRUNCATE_EXISTING,
+                  StandardOpenOption.WRITE),
+              true)) {
+        formatter.format(EXPORT_FIELDS, names, exportRows(rows), out);
+      }
+    } else {
+      try (var out = new PrintWriter(Files.newBufferedWriter(file))) {
+        formatter.format(EXPORT_FIELDS, names, exportRows(rows), out);
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  @Test
+  @Tag("stress")
+  @Tag("output")
+  void outputSinkThroughputOnLargeCsvExport(@TempDir Path tempDir) throws Exception {
+    final int rows = 10_000_000;
+    var viaWriter = tempDir.resolve("writer.csv");
+    var viaSink = tempDir.resolve("sink.csv");
+
+    exportCsv(viaWriter, false, rows / 10); // warm up both paths
+    exportCsv(viaSink, true, rows / 10);
+
+    long writerNanos = exportCsv(viaWriter, false, rows);
+    long sinkNanos = exportCsv(viaSink, true, rows);
+
+    System.out.printf(
+        "CSV export of %d rows (%d MB): PrintWriter %.2f s, ByteSink %.2f s (%.2fx)%n",
+        rows,
+        Files.size(viaSink) >> 20,
+        writerNanos / 1e9,
+        sinkNanos / 1e9,
+        (double) writerNanos / sinkNanos);
+
+    assertEquals(-1L, Files.mismatch(viaWriter, viaSink));
+    assertTrue(sinkNanos < writerNanos, "ByteSink should beat the PrintWriter stack");
+  }
+
+  @Test
+  @Tag("stress")
+  void deltaTCacheOnTenMinuteSeries() {
+    // one year of 10-minute steps, repeated as for a small grid
+    final int steps = 365 * 144;
+    final int repeats = 200;
+    var start = ZonedDateTime.parse("2024-01-01T00:00:00+01:00");
+    var times = IntStream.range(0, steps).mapToObj(i -> start.plusMinutes(10L * i)).toList();
+    var cache = new DeltaTCache();
+
+    double uncachedSum = 0;
+    double cachedSum = 0;
+    long uncachedNanos = 0;
+    long cachedNanos = 0;
+    for (int round = 0; round < 3; round++) { // the first round is warm-up
+      long t0 = System.nanoTime();
+      for (int r = 0; r < repeats; r++) {
+        for (var time : times) uncachedSum += DeltaT.estimate(time.toLocalDate());
+      }
+      long t1 = System.nanoTime();
+      for (int r = 0; r < repeats; r++) {
+        for (var time : times) cachedSum += cache.estimate(time.toLocalDate());
+      }
+      long t2 = System.nanoTime();
+      uncachedNanos = t1 - t0;
+      cachedNanos = t2 - t1;
+    }
+
+    double lookups = (double) steps * repeats;
+    System.out.printf(
+        "Delta T for %.0f lookups: estimate %.1f ns, cached %.1f ns (%.1fx)%n",
+        lookups,
+        uncachedNanos / lookups,
+        cachedNanos / lookups,
+        (double) uncachedNanos / cachedNanos);
+
+    assertEquals(uncachedSum, cachedSum, 0.0);
+    assertTrue(cachedNanos < uncachedNanos, "cache should beat recomputing the estimate");
+  }
 }
@@ -0,0 +1,146 @@
+package net.e175.klaus.solarpos;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import net.e175.klaus.solarpositioning.SPA;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SunriseCacheTest {
+  private static final SPA.Horizon[] HORIZONS = SunriseCommand.TWILIGHT_HORIZONS;
+
+  @Test
+  void matchesDirectCalculationAtAnyTimeOfDay() {
+    var cache = new SunriseCache(1024);
+    for (var zone : new String[] {"UTC", "Europe/Berlin", "America/Los_Angeles", "+13:00"}) {
+      // includes a day with a DST change in Berlin, which is only 23 hours long
+      var day = ZonedDateTime.of(2024, 3, 31, 0, 0, 0, 0, ZoneId.of(zone));
+      var lastMinute = day.plusDays(1).minusMinutes(1);
+      for (var dateTime : new ZonedDateTime[] {day, day.plusHours(13), lastMinute}) {
+        for (double latitude : new double[] {-80.0, 0.0, 52.0, 78.2}) {
+          assertEquals(
+              SPA.calculateSunriseTransitSet(dateTime, latitude, 13.4, 69.0, HORIZONS),
+              cache.calculate(dateTime, latitude, 13.4, 69.0, HORIZONS),
+              dateTime + " " + latitude);
+        }
+      }
+    }
+    var stats = cache.stats();
+    assertEquals(16, stats.misses());
+    assertEquals(32, stats.hits());
+  }
+
+  @Test
+  void distinguishesKeys() {
+    var cache = new SunriseCache(1024);
+    var dateTime = ZonedDateTime.of(2024, 6, 21, 12, 0, 0, 0, ZoneId.of("Europe/Berlin"));
+
+    cache.calculate(dateTime, 52.0, 13.4, 69.0, HORIZONS);
+    cache.calculate(dateTime, 52.0 + SunriseCache.QUANTUM / 4, 13.4, 69.0, HORIZONS);
+    assertEquals(1, cache.stats().misses());
+
+    cache.calculate(dateTime, 52.0 + SunriseCache.QUANTUM * 2, 13.4, 69.0, HORIZONS);
+    cache.calculate(dateTime, 52.0, 13.5, 69.0, HORIZONS);
+    cache.calculate(dateTime.plusDays(1), 52.0, 13.4, 69.0, HORIZONS);
+    cache.calculate(dateTime.withZoneSameLocal(ZoneId.of("UTC")), 52.0, 13.4, 69.0, HORIZONS);
+    cache.calculate(dateTime, 52.0, 13.4, 70.0, HORIZONS);
+    cache.calculate(dateTime, 52.0, 13.4, 69.0, SunriseCommand.BASIC_HORIZONS);
+    assertEquals(7, cache.stats().misses());
+    assertEquals(1, cache.stats().hits());
+  }
+
+  @Test
+  void evictsBeyondCapacity() {
+    var cache = new SunriseCache(64);
+    var day = ZonedDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneId.of("UTC"));
+    for (int i = 0; i < 1000; i++) {
+      cache.calculate(day.plusDays(i), 52.0, 13.4, 69.0, SunriseCommand.BASIC_HORIZONS);
+    }
+    assertTrue(cache.stats().size() <= 64, () -> "size " + cache.stats().size());
+    assertEquals(1000, cache.stats().misses());
+
+    // the most recent day is still there
+    cache.calculate(day.plusDays(999), 52.0, 13.4, 69.0, SunriseCommand.BASIC_HORIZONS);
+    assertEquals(1, cache.stats().hits());
+  }
+
+  @Test
+  void isSafeForConcurrentUse() {
+    var cache = new SunriseCache(256);
+    var day = ZonedDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneId.of("Europe/Berlin"));
+
+    IntStream.range(0, 20_000)
+        .parallel()
+        .forEach(
+            i -> {
+              var dateTime = day.plusDays(i % 500);
+              assertEquals(
+                  SPA.calculateSunriseTransitSet(dateTime, 60.0, 10.0, 69.0, HORIZONS),
+                  cache.calculate(dateTime, 60.0, 10.0, 69.0, HORIZONS));
+            });
+    assertEquals(20_000, cache.stats().hits() + cache.stats().misses());
+  }
+
+  @Test
+  void doesNotChangeCommandOutput() {
+    for (var parallel : new String[] {"--no-parallel", "--parallel"}) {
+      var args = List.of(parallel, "--format=csv", "50:51:0.5", "10", "2024", "sunrise");
+      var plain = TestUtil.run(with(args, "--twilight"));
+      var cached = TestUtil.run(with(args, "--twilight", "--cache=100"));
+      assertEquals(plain, cached, parallel);
+    }
+  }
+
+  @Test
+  void reportsHitsWithPerf(@TempDir Path tempDir) throws IOException {
+    var pairedFile = tempDir.resolve("paired.txt");
+    Files.writeString(
+        pairedFile,
+        String.join(
+            "",
+            IntStream.range(0, 100)
+                .mapToObj(i -> "52.0 13.4 2024-06-21T%02d:00+02:00\n".formatted(i % 24))
+                .toList()));
+
+    var err = System.err;
+    var captured = new ByteArrayOutputStream();
+    try {
+      System.setErr(new PrintStream(captured, true, StandardCharsets.UTF_8));
+      var result =
+          TestUtil.run(
+              "--perf",
+              "--perf-format=json",
+              "--format=csv",
+              "--no-headers",
+              "@" + pairedFile,
+              "sunrise",
+              "--cache=1000");
+      assertEquals(0, result.returnCode());
+      assertEquals(100, result.output().lines().count());
+    } finally {
+      System.setErr(err);
+    }
+
+    var json = JsonParser.parseString(captured.toString(StandardCharsets.UTF_8)).getAsJsonObject();
+    var stats = json.getAsJsonObject("sunriseCache");
+    assertEquals(99, stats.get("hits").getAsLong());
+    assertEquals(1, stats.get("misses").getAsLong());
+    assertEquals(1, stats.get("entries").getAsLong());
+  }
+
+  private static String[] with(List<String> args, String... more) {
+    return Stream.concat(args.stream(), Stream.of(more)).toArray(String[]::new);
+  }
+}
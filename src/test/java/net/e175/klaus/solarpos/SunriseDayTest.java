@@ -0,0 +1,145 @@
+package net.e175.klaus.solarpos;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+import net.e175.klaus.solarpositioning.SPA;
+import net.e175.klaus.solarpositioning.SunriseResult;
+import org.junit.jupiter.api.Test;
+
+class SunriseDayTest {
+  private static final Duration TOLERANCE = Duration.ofSeconds(1);
+
+  @Test
+  void matchesLibraryAcrossYearAndLatitudes() {
+    for (var zone : new String[] {"UTC", "Europe/Berlin", "Pacific/Auckland"}) {
+      var start = ZonedDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneId.of(zone));
+      for (int i = 0; i < 366; i += 7) {
+        var day = new SunriseDay(start.plusDays(i), 69.0);
+        for (double latitude = -60.0; latitude <= 60.0; latitude += 15.0) {
+          for (double longitude = -180.0; longitude < 180.0; longitude += 45.0) {
+            assertMatches(day, latitude, longitude, SunriseCommand.BASIC_HORIZONS);
+          }
+        }
+        for (double latitude = -45.0; latitude <= 45.0; latitude += 15.0) {
+          assertMatches(day, latitude, 13.4, SunriseCommand.TWILIGHT_HORIZONS);
+        }
+      }
+    }
+  }
+
+  @Test
+  void matchesLibraryInPolarDayAndNight() {
+    var zone = ZoneId.of("Europe/Oslo");
+    var june = new SunriseDay(ZonedDateTime.of(2024, 6, 21, 0, 0, 0, 0, zone), 69.0);
+    var december = new SunriseDay(ZonedDateTime.of(2024, 12, 21, 0, 0, 0, 0, zone), 69.0);
+
+    var polarDay = june.calculate(78.2, 15.6, SunriseCommand.TWILIGHT_HORIZONS);
+    assertInstanceOf(SunriseResult.AllDay.class, polarDay.get(SPA.Horizon.SUNRISE_SUNSET));
+    var polarNight = december.calculate(78.2, 15.6, SunriseCommand.TWILIGHT_HORIZONS);
+    assertInstanceOf(SunriseResult.AllNight.class, polarNight.get(SPA.Horizon.SUNRISE_SUNSET));
+
+    assertMatches(june, 78.2, 15.6, SunriseCommand.TWILIGHT_HORIZONS);
+    assertMatches(december, 78.2, 15.6, SunriseCommand.TWILIGHT_HORIZONS);
+  }
+
+  @Test
+  void followingDaysMatchLibraryOverLongRanges() {
+    var start = ZonedDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZoneId.of("Europe/Oslo"));
+    // polar day and night at 78.2 and 69.6, twilight only just reaching the horizons at 60 and
+    // 66.5,
+    // and the sun grazing the horizons for weeks at -84.9
+    for (double latitude : new double[] {78.2, 69.6, 66.5, 60.0, 0.0, -66.5, -84.9}) {
+      SunriseDay day = null;
+      for (int i = 0; i < 4 * 366; i++) {
+        var dateTime = start.plusDays(i);
+        day = new SunriseDay(dateTime, 69.0, day);
+        var fresh = new SunriseDay(dateTime, 69.0);
+        var horizons = SunriseCommand.TWILIGHT_HORIZONS;
+        assertEquals(
+            fresh.calculate(latitude, 15.6, horizons),
+            day.calculate(latitude, 15.6, horizons),
+            dateTime + " " + latitude);
+        assertMatches(day, latitude, 15.6, horizons);
+      }
+    }
+  }
+
+  @Test
+  void skipsPreviousDayUnlessConsecutive() {
+    var first = new SunriseDay(ZonedDateTime.of(2024, 3, 1, 12, 0, 0, 0, ZoneId.of("UTC")), 69.0);
+    first.calculate(52.0, 13.4, SunriseCommand.BASIC_HORIZONS);
+    var later = ZonedDateTime.of(2024, 3, 5, 12, 0, 0, 0, ZoneId.of("UTC"));
+    assertEquals(
+        new SunriseDay(later, 69.0).calculate(52.0, 13.4, SunriseCommand.BASIC_HORIZONS),
+        new SunriseDay(later, 69.0, first).calculate(52.0, 13.4, SunriseCommand.BASIC_HORIZONS));
+  }
+
+  @Test
+  void sunriseCommandOutputMatchesWithinTolerance() {
+    var args = List.of("--format=csv", "--no-headers", "40:70:5", "0:20:10", "2024", "sunrise");
+    var plain = TestUtil.run(args.toArray(String[]::new));
+    var shared =
+        TestUtil.run(
+            Stream.concat(args.stream(), Stream.of("--shared-day-terms")).toArray(String[]::new));
+
+    assertEquals(0, shared.returnCode());
+    var plainLines = plain.output().lines().toList();
+    var sharedLines = shared.output().lines().toList();
+    assertEquals(plainLines.size(), sharedLines.size());
+    for (int i = 0; i < plainLines.size(); i++) {
+      var expected = plainLines.get(i).split(",");
+      var actual = sharedLines.get(i).split(",");
+      assertEquals(expected.length, actual.length);
+      for (int j = 0; j < expected.length; j++) {
+        if (expected[j].matches("\\d{4}-\\d{2}-\\d{2}T.*")) {
+          assertWithin(
+              ZonedDateTime.parse(expected[j]), ZonedDateTime.parse(actual[j]), plainLines.get(i));
+        } else {
+          assertEquals(expected[j], actual[j], plainLines.get(i));
+        }
+      }
+    }
+  }
+
+  private static void assertMatches(
+      SunriseDay day, double latitude, double longitude, SPA.Horizon[] horizons) {
+    var expected =
+        SPA.calculateSunriseTransitSet(day.dateTime(), latitude, longitude, 69.0, horizons);
+    var actual = day.calculate(latitude, longitude, horizons);
+    var message = day.dateTime() + " " + latitude + " " + longitude;
+    assertEquals(expected.keySet(), actual.keySet(), message);
+    for (var horizon : horizons) {
+      var e = expected.get(horizon);
+      var a = actual.get(horizon);
+      assertEquals(e.getClass(), a.getClass(), message + " " + horizon);
+      assertWithin(transit(e), transit(a), message);
+      if (e instanceof SunriseResult.RegularDay(var sunrise, var transit, var sunset)) {
+        var regular = (SunriseResult.RegularDay) a;
+        assertWithin(sunrise, regular.sunrise(), message + " " + horizon);
+        assertWithin(sunset, regular.sunset(), message + " " + horizon);
+      }
+    }
+  }
+
+  private static ZonedDateTime transit(SunriseResult result) {
+    return switch (result) {
+      case SunriseResult.RegularDay(var sunrise, var transit, var sunset) -> transit;
+      case SunriseResult.AllDay(var transit) -> transit;
+      case SunriseResult.AllNight(var transit) -> transit;
+      default -> throw new IllegalStateException("Unexpected result: " + result);
+    };
+  }
+
+  private static void assertWithin(ZonedDateTime expected, ZonedDateTime actual, String message) {
+    assertEquals(expected.getZone(), actual.getZone(), message);
+    var difference = Duration.between(expected, actual).abs();
+    assertTrue(
+        difference.compareTo(TOLERANCE) <= 0,
+        () -> message + ": " + expected + " vs " + actual + " (" + difference + ")");
+  }
+}
@@ -0,0 +1,137 @@
+package net.e175.klaus.solarpos;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import net.e175.klaus.solarpositioning.SPA;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SunriseTableTest {
+  private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+
+  private static Path precompute(Path tempDir, String dates) throws IOException {
+    var sites = tempDir.resolve("sites.txt");
+    // includes a site with polar day and night
+    Files.writeString(sites, "52.0 13.4\n78.2 15.6\n-33.9 18.4\n52.0 13.4\n");
+    var table = tempDir.resolve("sun.tbl");
+    var result =
+        TestUtil.run(
+            "--output=" + table,
+            "--timezone=" + ZONE,
+            "--parallel",
+            "@" + sites,
+            dates,
+            "precompute");
+    assertEquals(0, result.returnCode());
+    return table;
+  }
+
+  @Test
+  void storesResultsOfAllHorizons(@TempDir Path tempDir) throws IOException {
+    var table = SunriseTable.open(precompute(tempDir, "2024"));
+
+    var header = table.header();
+    assertEquals(0.0, header.deltaT());
+    assertEquals(ZONE, header.zone());
+    assertEquals(LocalDate.of(2024, 1, 1), header.firstDay());
+    assertEquals(366, header.days());
+    assertEquals(
+        List.of(
+            new CoordinatePair(52.0, 13.4),
+            new CoordinatePair(78.2, 15.6),
+            new CoordinatePair(-33.9, 18.4)),
+        header.sites());
+
+    for (var site : header.sites()) {
+      for (var day = header.firstDay(); !day.isAfter(header.lastDay()); day = day.plusDays(1)) {
+        var dateTime = day.atTime(15, 0).atZone(ZONE);
+        for (var horizons :
+            List.of(SunriseCommand.BASIC_HORIZONS, SunriseCommand.TWILIGHT_HORIZONS)) {
+          assertEquals(
+              SPA.calculateSunriseTransitSet(
+                  dateTime, site.latitude(), site.longitude(), 0.0, horizons),
+              table.lookup(dateTime, site, horizons),
+              site + " " + dateTime);
+        }
+      }
+    }
+  }
+
+  @Test
+  void coversOnlyItsSitesDaysAndZone(@TempDir Path tempDir) throws IOException {
+    var table = SunriseTable.open(precompute(tempDir, "2024-06"));
+    var site = new CoordinatePair(52.0, 13.4);
+    var horizons = SunriseCommand.BASIC_HORIZONS;
+
+    assertNotNull(table.lookup(LocalDate.of(2024, 6, 1).atStartOfDay(ZONE), site, horizons));
+    assertNotNull(table.lookup(LocalDate.of(2024, 6, 30).atStartOfDay(ZONE), site, horizons));
+    assertNull(table.lookup(LocalDate.of(2024, 5, 31).atStartOfDay(ZONE), site, horizons));
+    assertNull(table.lookup(LocalDate.of(2024, 7, 1).atStartOfDay(ZONE), site, horizons));
+    var june = LocalDate.of(2024, 6, 1);
+    assertNull(table.lookup(june.atStartOfDay(ZoneId.of("UTC")), site, horizons));
+    assertNull(table.lookup(june.atStartOfDay(ZONE), new CoordinatePair(52.0, 13.5), horizons));
+  }
+
+  @Test
+  void sunriseAnswersFromTable(@TempDir Path tempDir) throws IOException {
+    var table = precompute(tempDir, "2024-06");
+    var sites = tempDir.resolve("sites.txt");
+
+    for (var dates : new String[] {"2024-06", "2024"}) { // partly covered
+      for (var format : new String[] {"--format=csv", "--format=json", "--format=human"}) {
+        var args = List.of(format, "--timezone=" + ZONE, "@" + sites, dates, "sunrise");
+        var computed = TestUtil.run(with(args, "--twilight"));
+        var fromTable = TestUtil.run(with(args, "--twilight", "--table=" + table));
+        assertEquals(0, fromTable.returnCode());
+        assertEquals(computed.output(), fromTable.output(), format + " " + dates);
+      }
+    }
+  }
+
+  @Test
+  void rejectsMismatchedDeltaT(@TempDir Path tempDir) throws IOException {
+    var table = precompute(tempDir, "2024-06");
+    var result =
+        TestUtil.run(
+            "--deltat=69",
+            "--timezone=" + ZONE,
+            "52.0",
+            "13.4",
+            "2024-06",
+            "sunrise",
+            "--table=" + table);
+    assertNotEquals(0, result.returnCode());
+  }
+
+  @Test
+  void rejectsInvalidInput(@TempDir Path tempDir) throws IOException {
+    var notATable = tempDir.resolve("not.tbl");
+    Files.writeString(notATable, "52.0 13.4 2024-06-21\n".repeat(10));
+    assertThrows(IllegalArgumentException.class, () -> SunriseTable.open(notATable));
+
+    var table = precompute(tempDir, "2024-06");
+    var truncated = tempDir.resolve("truncated.tbl");
+    Files.write(truncated, Arrays.copyOf(Files.readAllBytes(table), 200));
+    assertThrows(IllegalArgumentException.class, () -> SunriseTable.open(truncated));
+
+    assertNotEquals(0, TestUtil.run("52.0", "13.4", "2024", "precompute").returnCode());
+    var paired = tempDir.resolve("paired.txt");
+    Files.writeString(paired, "52.0 13.4 2024-06-21\n");
+    assertNotEquals(
+        0,
+        TestUtil.run("--output=" + tempDir.resolve("x.tbl"), "@" + paired, "precompute")
+            .returnCode());
+  }
+
+  private static String[] with(List<String> args, String... more) {
+    return Stream.concat(args.stream(), Stream.of(more)).toArray(String[]::new);
+  }
+}
@@ -0,0 +1,107 @@
+package net.e175.klaus.solarpos;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Random;
+import net.e175.klaus.solarpositioning.DeltaT;
+import net.e175.klaus.solarpositioning.Grena3;
+import net.e175.klaus.solarpositioning.SPA;
+import net.e175.klaus.solarpositioning.SolarPosition;
+import org.junit.jupiter.api.Test;
+
+class TimeContextTest {
+
+  private static void assertSame(SolarPosition expected, SolarPosition actual, String where) {
+    assertEquals(expected.azimuth(), actual.azimuth(), 0.0, where);
+    assertEquals(expected.zenithAngle(), actual.zenithAngle(), 0.0, where);
+  }
+
+  private static void assertMatchesLibrary(PositionCommand.Algorithm algorithm, long seed) {
+    var random = new Random(seed);
+    var start = ZonedDateTime.parse("1950-01-01T00:00Z");
+    var zones = new ZoneId[] {ZoneId.of("UTC"), ZoneId.of("Europe/Vienna"), ZoneId.of("+05:45")};
+
+    for (int t = 0; t < 50; t++) {
+      var dateTime =
+          start
+              .plusSeconds(random.nextLong(100L * 365 * 24 * 3600))
+              .withZoneSameInstant(zones[t % zones.length]);
+      double deltaT = DeltaT.estimate(dateTime.toLocalDate());
+      var context = new TimeContext(algorithm, dateTime, deltaT);
+
+      for (int i = 0; i < 200; i++) {
+        double latitude = random.nextDouble() * 180.0 - 90.0;
+        double longitude = random.nextDouble() * 360.0 - 180.0;
+        double elevation = random.nextDouble() * 4000.0;
+        var where = algorithm + " " + dateTime + " at " + latitude + "," + longitude;
+
+        var withRefraction =
+            switch (algorithm) {
+              case SPA ->
+                  SPA.calculateSolarPosition(
+                      dateTime, latitude, longitude, elevation, deltaT, 1013.0, 15.0);
+              case GRENA3 ->
+                  Grena3.calculateSolarPosition(
+                      dateTime, latitude, longitude, deltaT, 1013.0, 15.0);
+            };
+        assertSame(
+            withRefraction, context.position(latitude, longitude, elevation, 1013.0, 15.0), where);
+
+        var withoutRefraction =
+            switch (algorithm) {
+              case SPA ->
+                  SPA.calculateSolarPosition(dateTime, latitude, longitude, elevation, deltaT);
+              case GRENA3 -> Grena3.calculateSolarPosition(dateTime, latitude, longitude, deltaT);
+            };
+        assertSame(
+            withoutRefraction,
+            context.position(latitude, longitude, elevation, Double.NaN, Double.NaN),
+            where);
+      }
+    }
+  }
+
+  @Test
+  void spaMatchesLibraryBitForBit() {
+    assertMatchesLibrary(PositionCommand.Algorithm.SPA, 11);
+  }
+
+  @Test
+  void grena3MatchesLibraryBitForBit() {
+    assertMatchesLibrary(PositionCommand.Algorithm.GRENA3, 13);
+  }
+
+  @Test
+  void grena3MatchesLibraryAtEdges() {
+    var dateTime = ZonedDateTime.parse("2024-02-29T23:59:59+01:00");
+    var context = new TimeContext(PositionCommand.Algorithm.GRENA3, dateTime, 69.0);
+    double[][] points = {{0, 0}, {-90, -180}, {90, 180}, {-90, 180}, {90, -180}, {45.5, 179.999}};
+
+    for (double[] p : points) {
+      assertSame(
+          Grena3.calculateSolarPosition(dateTime, p[0], p[1], 69.0, 1013.0, 15.0),
+          context.position(p[0], p[1], 0.0, 1013.0, 15.0),
+          p[0] + "," + p[1]);
+    }
+  }
+
+  @Test
+  void rejectsOutOfRangeCoordinates() {
+    for (var algorithm : PositionCommand.Algorithm.values()) {
+      var context = new TimeContext(algorithm, ZonedDateTime.parse("2024-01-01T12:00Z"), 69.0);
+      assertThrows(IllegalArgumentException.class, () -> context.position(90.1, 0, 0, 1013, 15));
+      assertThrows(IllegalArgumentException.class, () -> context.position(0, -180.1, 0, 1013, 15));
+    }
+  }
+
+  @Test
+  void spaPartsOnlyForSpa() {
+    var dateTime = ZonedDateTime.parse("2024-01-01T12:00Z");
+    assertNotNull(new TimeContext(PositionCommand.Algorithm.SPA, dateTime, 69.0).spa());
+    assertThrows(
+        IllegalStateException.class,
+        () -> new TimeContext(PositionCommand.Algorithm.GRENA3, dateTime, 69.0).spa());
+  }
+}
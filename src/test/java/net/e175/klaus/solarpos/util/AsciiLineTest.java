@@ -0,0 +1,78 @@
+package net.e175.klaus.solarpos.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class AsciiLineTest {
+
+  private static AsciiLine line(String text) {
+    var bytes = ("xx" + text + "yy").getBytes(StandardCharsets.US_ASCII);
+    return new AsciiLine(ByteBuffer.wrap(bytes), 2, text.length());
+  }
+
+  private static double decimal(String text) {
+    return line(text).decimal(0, text.length());
+  }
+
+  @Test
+  void viewsBytesAsCharacters() {
+    var line = line("40.7, -74.0");
+    assertEquals(11, line.length());
+    assertEquals("40.7, -74.0", line.toString());
+    assertEquals("-74.0", line.subSequence(6, 11).toString());
+    assertEquals(4, line.separatorAt(0));
+    assertEquals(6, line.skipSeparators(4));
+    assertEquals(11, line.separatorAt(6));
+  }
+
+  @Test
+  void decimalsMatchParseDoubleBitForBit() {
+    var random = new Random(3);
+    for (int i = 0; i < 100_000; i++) {
+      var text =
+          switch (i % 4) {
+            case 0 -> Double.toString(random.nextDouble() * 360.0 - 180.0);
+            case 1 -> "%.5f".formatted(random.nextDouble() * 180.0 - 90.0);
+            case 2 -> Long.toString(random.nextLong() % 1_000_000_000_000_000L);
+            default -> "0.%015d".formatted(random.nextLong(1_000_000_000_000_000L));
+          };
+      double value = decimal(text);
+      if (!Double.isNaN(value)) {
+        assertEquals(Double.parseDouble(text), value, 0.0, text);
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"0", "-0", "+1", "1.", ".5", "-.5", "007.250", "123456789012345"})
+  void parsesPlainDecimals(String text) {
+    assertEquals(
+        Double.doubleToLongBits(Double.parseDouble(text)), Double.doubleToLongBits(decimal(text)));
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "",
+        "-",
+        ".",
+        "1e5",
+        "1.2.3",
+        "NaN",
+        "Infinity",
+        "0x1p3",
+        "12d",
+        "1 2",
+        "1234567890123456",
+        "0.0000000000000001"
+      })
+  void leavesOtherNumbersToParseDouble(String text) {
+    assertTrue(Double.isNaN(decimal(text)), text);
+  }
+}
@@ -2,13 +2,24 @@ package net.e175.klaus.solarpos.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.Year;
+import java.time.YearMonth;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAccessor;
+import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 import net.e175.klaus.solarpos.CoordinatePair;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -205,4 +216,63 @@ class DateTimeIteratorTest {
         RuntimeException.class,
         () -> DateTimeIterator.pairedDataFromFile(pairedFile, Optional.empty()).toList());
   }
+
+  @Test
+  void iteratesRangesLikeAddingSteps() {
+    // DST changes, at midnight in Sao Paulo 2018, by 30 minutes on Lord Howe, and no rules at all
+    var zones =
+        List.of(
+            "Europe/Berlin",
+            "Pacific/Auckland",
+            "America/Sao_Paulo",
+            "Australia/Lord_Howe",
+            "UTC",
+            "+05:45");
+    for (var zone : zones.stream().map(ZoneId::of).toList()) {
+      for (var step : List.of(Duration.ofHours(1), Duration.parse("PT7M13S"), Duration.ofDays(1))) {
+        assertIteratesLikeAddingSteps(Year.of(2018), zone, step, d -> d.getYear() == 2018);
+      }
+      for (var month : List.of(YearMonth.of(2018, 2), YearMonth.of(2018, 11))) {
+        assertIteratesLikeAddingSteps(
+            month, zone, Duration.ofMinutes(1), d -> d.getMonth() == month.getMonth());
+      }
+      for (var day : List.of(LocalDate.of(2018, 3, 25), LocalDate.of(2018, 11, 4))) {
+        for (var step : List.of(Duration.ofSeconds(1), Duration.parse("PT1.5S"))) {
+          assertIteratesLikeAddingSteps(
+              day, zone, step, d -> d.getDayOfMonth() == day.getDayOfMonth());
+        }
+      }
+    }
+  }
+
+  @Test
+  void rangesAreSizedAndSplittable() {
+    var zone = ZoneId.of("Europe/Berlin");
+    var step = Duration.ofMinutes(10);
+    var stream = DateTimeIterator.iterate(Year.of(2024), Optional.of(zone), step);
+    var spliterator = stream.spliterator();
+
+    // 2024 has 366 days, one of them 23 and one 25 hours long
+    assertEquals(366 * 24 * 6, spliterator.getExactSizeIfKnown());
+    assertTrue(spliterator.hasCharacteristics(Spliterator.SUBSIZED));
+    assertEquals(
+        DateTimeIterator.iterate(Year.of(2024), Optional.of(zone), step).toList(),
+        DateTimeIterator.iterate(Year.of(2024), Optional.of(zone), step).parallel().toList());
+  }
+
+  private static void assertIteratesLikeAddingSteps(
+      TemporalAccessor range, ZoneId zone, Duration step, Predicate<ZonedDateTime> inRange) {
+    var first =
+        switch (range) {
+          case Year y -> y.atDay(1);
+          case YearMonth ym -> ym.atDay(1);
+          default -> (LocalDate) range;
+        };
+    var start = ZonedDateTime.of(first, LocalTime.MIDNIGHT, zone);
+    var expected = Stream.iterate(start, inRange, d -> d.plus(step)).toList();
+    assertEquals(
+        expected,
+        DateTimeIterator.iterate(range, Optional.of(zone), step).toList(),
+        range + " " + zone + " " + step);
+  }
 }
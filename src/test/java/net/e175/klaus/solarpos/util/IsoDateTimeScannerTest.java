@@ -0,0 +1,142 @@
+package net.e175.klaus.solarpos.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class IsoDateTimeScannerTest {
+
+  private static final Optional<ZoneId> NO_OVERRIDE = Optional.empty();
+
+  /** Result of parsing {@code input}, or the type of the exception thrown. */
+  private static Object outcome(boolean scanner, String input, Optional<ZoneId> zoneId) {
+    try {
+      return scanner
+          ? DateTimeIterator.parseDateTime(
+              input, zoneId, DateTimeIterator.TimePrecision.DATE_SUFFICIENT)
+          : DateTimeIterator.parseDateTimeWithFormatters(
+              input, zoneId, DateTimeIterator.TimePrecision.DATE_SUFFICIENT);
+    } catch (RuntimeException e) {
+      return e.getClass();
+    }
+  }
+
+  private static void assertSameAsFormatters(String input) {
+    for (var zoneId : List.of(NO_OVERRIDE, Optional.of(ZoneId.of("America/New_York")))) {
+      assertEquals(outcome(false, input, zoneId), outcome(true, input, zoneId), input);
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "2024-01-15",
+        "2024-02-29",
+        "2024-01-15T12:30",
+        "2024-01-15T12:30:45",
+        "2024-01-15T12:30:45.1",
+        "2024-01-15T12:30:45.123456789+01:00",
+        "2024-01-15 12:30",
+        "2024-01-15 12:30:45.1",
+        "2024-01-15T12:30Z",
+        "2024-01-15T12:30:45+05:45",
+        "2024-01-15T12:30:45-03:00",
+        "2024-01-15T12:30:45+01:02:03",
+        "2024-01-15 12:30+01:00",
+        "2024-03-31T02:30+01:00[Europe/Vienna]",
+        "2024-10-27T02:30+02:00[Europe/Vienna]",
+        "2024-10-27T02:30+01:00[Europe/Vienna]",
+        "2024-06-21T12:00Z[UTC]"
+      })
+  void scansCommonShapesLikeFormatters(String input) {
+    assertNotNull(IsoDateTimeScanner.scan(input), input);
+    assertSameAsFormatters(input);
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "2024",
+        "2024-01",
+        "12:30",
+        "12:30:45+01:00",
+        "2024-02-30",
+        "2023-02-29",
+        "2024-13-01",
+        "2024-01-15T24:00",
+        "2024-01-15T12:60",
+        "2024-01-15T12:30:60",
+        "2024-01-15t12:30",
+        "2024-01-15T12:30:45.",
+        "2024-01-15T12:30:45.1234567890",
+        "2024-01-15 12:30:45.12",
+        "2024-01-15T12:30:45.123",
+        "2024-01-15 12:30+01:02:03",
+        "2024-01-15T12:30z",
+        "2024-01-15T12:30+1:00",
+        "2024-01-15T12:30+19:00",
+        "2024-01-15T12:30+01:00[Nowhere/Special]",
+        "2024-01-15T12:30+01:00[Europe/Vienna",
+        "2024-01-15T12:30[Europe/Vienna]",
+        "0000-01-01T00:00",
+        "+2024-01-15",
+        "2024-01-15T12:30 ",
+        "invalid time"
+      })
+  void leavesEverythingElseToFormatters(String input) {
+    assertNull(IsoDateTimeScanner.scan(input), input);
+    assertSameAsFormatters(input);
+  }
+
+  @Test
+  void matchesFormattersOnGeneratedInput() {
+    var random = new Random(42);
+    String[] offsets = {"", "Z", "+01:00", "-09:30", "+14:00", "+18:00", "-18:01", "+05:45:30"};
+    String[] zones = {"", "[UTC]", "[Europe/Vienna]", "[America/St_Johns]", "[Bad/Zone]"};
+    var inputs = new ArrayList<String>();
+
+    for (int i = 0; i < 5000; i++) {
+      var input =
+          new StringBuilder()
+              .append(
+                  "%04d-%02d-%02d"
+                      .formatted(
+                          1 + random.nextInt(2999), random.nextInt(14), 1 + random.nextInt(31)));
+      if (random.nextInt(8) > 0) {
+        input
+            .append(random.nextBoolean() ? 'T' : ' ')
+            .append("%02d:%02d".formatted(random.nextInt(25), random.nextInt(61)));
+        if (random.nextBoolean()) {
+          input.append(":%02d".formatted(random.nextInt(61)));
+          if (random.nextInt(3) == 0) {
+            input
+                .append('.')
+                .append(String.valueOf(random.nextLong()).substring(1, 2 + random.nextInt(10)));
+          }
+        }
+        var offset = offsets[random.nextInt(offsets.length)];
+        input.append(offset);
+        if (!offset.isEmpty()) {
+          input.append(zones[random.nextInt(zones.length)]);
+        }
+      }
+      inputs.add(input.toString());
+    }
+
+    int scanned = 0;
+    for (var input : inputs) {
+      if (IsoDateTimeScanner.scan(input) != null) {
+        scanned++;
+      }
+      assertSameAsFormatters(input);
+    }
+    assertTrue(scanned > inputs.size() / 4, "scanned only " + scanned);
+  }
+}
@@ -0,0 +1,168 @@
+package net.e175.klaus.solarpos.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class MappedLinesTest {
+
+  @TempDir Path tempDir;
+
+  /** Marks lines by the parser that handled them. */
+  private static List<String> read(Path file, int windowSize) {
+    try (var lines =
+        MappedLines.stream(
+            file,
+            windowSize,
+            line -> line.charAt(0) == '!' ? null : "fast " + line,
+            line -> "slow " + line)) {
+      return lines.toList();
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {1 << 20, 64, 25, 24})
+  void splitsTrimsAndFiltersLikeFilesLines(int windowSize) throws IOException {
+    var file = tempDir.resolve("lines.txt");
+    Files.writeString(
+        file,
+        "first\n"
+            + "  second\t\r\n"
+            + "\n"
+            + "# comment\n"
+            + "   # indented comment\r"
+            + "third\r"
+            + "\r\n"
+            + "!fallback\n"
+            + "grüß dich\n"
+            + "tab\u000bbed\n"
+            + "last",
+        StandardCharsets.UTF_8);
+
+    var expected =
+        List.of(
+            "fast first",
+            "fast second",
+            "fast third",
+            "slow !fallback",
+            "slow grüß dich",
+            "slow tab\u000bbed",
+            "fast last");
+    assertEquals(expected, read(file, windowSize));
+  }
+
+  @Test
+  void sameLinesAsFilesLinesForEveryWindowSize() throws IOException {
+    var file = tempDir.resolve("numbers.txt");
+    var content = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      content.append(i).append(i % 3 == 0 ? "\r\n" : i % 3 == 1 ? "\n" : "\r");
+    }
+    Files.writeString(file, content);
+
+    List<String> expected;
+    try (var lines = Files.lines(file)) {
+      expected = lines.map(String::trim).filter(l -> !l.isEmpty()).map(l -> "fast " + l).toList();
+    }
+    for (int windowSize = 5; windowSize < 40; windowSize++) {
+      assertEquals(expected, read(file, windowSize), "window size " + windowSize);
+    }
+  }
+
+  @Test
+  void chunksConcatenateToSameLines() throws IOException {
+    var file = tempDir.resolve("chunks.txt");
+    var content = new StringBuilder("# header\n");
+    for (int i = 0; i < 300; i++) {
+      content.append(i).append(i % 3 == 0 ? "\r\n" : i % 3 == 1 ? "\n" : "\r");
+    }
+    Files.writeString(file, content);
+
+    var expected = read(file, 1 << 20);
+    for (long chunkBytes : new long[] {1, 2, 3, 7, 100, 1 << 20}) {
+      List<List<String>> chunks;
+      try (var stream =
+          MappedLines.chunks(
+              file, chunkBytes, 16, line -> "fast " + line, line -> "slow " + line)) {
+        chunks = stream.map(Stream::toList).toList();
+      }
+      assertEquals(
+          expected, chunks.stream().flatMap(List::stream).toList(), "chunk size " + chunkBytes);
+      assertTrue(chunks.size() > 1 || chunkBytes > content.length(), "chunk size " + chunkBytes);
+    }
+  }
+
+  @Test
+  void emptyFileHasNoLines() throws IOException {
+    var file = tempDir.resolve("empty.txt");
+    Files.writeString(file, "");
+    assertEquals(List.of(), read(file, 16));
+  }
+
+  @Test
+  void rejectsLinesLongerThanWindow() throws IOException {
+    var file = tempDir.resolve("long.txt");
+    Files.writeString(file, "short\n" + "x".repeat(40) + "\n");
+    assertThrows(IllegalArgumentException.class, () -> read(file, 16));
+  }
+
+  @Test
+  void rejectsMalformedUtf8() throws IOException {
+    var file = tempDir.resolve("latin1.txt");
+    Files.write(file, "café\n".getBytes(StandardCharsets.ISO_8859_1));
+    assertThrows(UncheckedIOException.class, () -> read(file, 16));
+  }
+
+  @Test
+  void rejectsMissingFile() {
+    assertThrows(UncheckedIOException.class, () -> read(tempDir.resolve("missing.txt"), 16));
+  }
+
+  @Test
+  void fastAndSlowPathsParseFilesAlike() throws IOException {
+    var file = tempDir.resolve("paired.txt");
+    Files.writeString(
+        file,
+        """
+        40.7 -74.0 2023-06-21T12:00
+        37.7749,\t-122.4194 , 2023-07-15 14:30:15
+        +51.5074 -.1278 2023-08-10T10:00+01:00[Europe/London]
+        1e1 20 2023-08-10T10:00:00.5
+        -0 180 2023-08-10T10:00:00.125Z
+        0.000000000000000001 1 2023-08-10
+        """);
+
+    var parsed = DateTimeIterator.pairedDataFromFile(file, Optional.empty()).toList();
+    assertEquals(readFromStdin(file), parsed);
+    assertEquals(6, parsed.size());
+    assertEquals(-0.1278, parsed.get(2).coordinates().longitude());
+    assertEquals(10.0, parsed.get(3).coordinates().latitude());
+    assertEquals(
+        Double.doubleToLongBits(-0.0),
+        Double.doubleToLongBits(parsed.get(4).coordinates().latitude()));
+  }
+
+  /** Parses {@code file} through the String-based stdin path. */
+  private static List<DateTimeIterator.CoordinateTimePair> readFromStdin(Path file)
+      throws IOException {
+    var stdin = System.in;
+    try {
+      System.setIn(new ByteArrayInputStream(Files.readAllBytes(file)));
+      return DateTimeIterator.pairedDataFromFile(Path.of("-"), Optional.empty()).toList();
+    } finally {
+      System.setIn(stdin);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package net.e175.klaus.solarpos.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class PairedRecordsTest {
+
+  private static final String PAIRED_TEXT =
+      """
+      40.7 -74.0 2023-06-21T12:00
+      37.7749,-122.4194,2023-07-15 14:30:15
+      51.5074 -0.1278 2023-08-10T10:00+01:00[Europe/London]
+      -33.86 151.2 2023-08-10T10:00:00.125Z
+      35.68 139.69 2023-03-26T02:30:00+09:00
+      52.52 13.41 2023-03-26T03:30+02:00[Europe/Berlin]
+      -0.0 180 2023-08-10
+      10 20 2023-08-10T10:00+05:30
+      """;
+
+  @TempDir Path tempDir;
+
+  private Path text() throws IOException {
+    var file = tempDir.resolve("paired.txt");
+    Files.writeString(file, PAIRED_TEXT);
+    return file;
+  }
+
+  private Path convert(Path textFile) throws IOException {
+    var file = tempDir.resolve("paired.bin");
+    try (var out = Files.newOutputStream(file)) {
+      PairedRecords.write(
+          DateTimeIterator.pairedDataFromFile(textFile, Optional.empty()),
+          (bytes, length) -> out.write(bytes, 0, length));
+    }
+    return file;
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "America/New_York", "+03:00"})
+  void readsBackWhatTextParsingGives(String zone) throws IOException {
+    var textFile = text();
+    var binaryFile = convert(textFile);
+    Optional<ZoneId> zoneId = zone.isEmpty() ? Optional.empty() : Optional.of(ZoneId.of(zone));
+
+    var expected = DateTimeIterator.pairedDataFromFile(textFile, zoneId).toList();
+    assertTrue(PairedRecords.isBinary(binaryFile));
+    assertFalse(PairedRecords.isBinary(textFile));
+    assertEquals(expected, DateTimeIterator.pairedDataFromFile(binaryFile, zoneId).toList());
+    assertEquals(
+        Double.doubleToLongBits(-0.0),
+        Double.doubleToLongBits(expected.get(6).coordinates().latitude()));
+  }
+
+  @Test
+  void chunksAndSplitsKeepRecordOrder() throws IOException {
+    var binaryFile = convert(text());
+    var expected = PairedRecords.stream(binaryFile, Optional.empty()).toList();
+
+    for (int chunkRecords : new int[] {1, 3, 8, 1000}) {
+      List<List<DateTimeIterator.CoordinateTimePair>> chunks =
+          PairedRecords.chunks(binaryFile, Optional.empty(), chunkRecords)
+              .map(Stream::toList)
+              .toList();
+      assertEquals((expected.size() + chunkRecords - 1) / chunkRecords, chunks.size());
+      assertEquals(expected, chunks.stream().flatMap(List::stream).toList());
+    }
+    assertEquals(expected, PairedRecords.stream(binaryFile, Optional.empty()).parallel().toList());
+  }
+
+  @Test
+  void writesEmptyFiles() throws IOException {
+    var textFile = tempDir.resolve("empty.txt");
+    Files.writeString(textFile, "# nothing here\n");
+    var binaryFile = convert(textFile);
+
+    assertEquals(8 + 12, Files.size(binaryFile));
+    assertEquals(
+        List.of(), DateTimeIterator.pairedDataFromFile(binaryFile, Optional.empty()).toList());
+  }
+
+  @Test
+  void rejectsTruncatedFiles() throws IOException {
+    var binaryFile = convert(text());
+    var bytes = Files.readAllBytes(binaryFile);
+    Files.write(binaryFile, Arrays.copyOf(bytes, bytes.length - 20));
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> DateTimeIterator.pairedDataFromFile(binaryFile, Optional.empty()).toList());
+  }
+
+  @Test
+  void rejectsUnknownZoneIndex() throws IOException {
+    var binaryFile = convert(text());
+    var bytes = Files.readAllBytes(binaryFile);
+    // zone index of the first record
+    ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(8 + 28, 99);
+    Files.write(binaryFile, bytes);
+
+    var e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> DateTimeIterator.pairedDataFromFile(binaryFile, Optional.empty()).toList());
+    assertTrue(e.getMessage().contains("record 0"), e.getMessage());
+  }
+}